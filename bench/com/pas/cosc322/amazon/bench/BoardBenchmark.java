@@ -0,0 +1,104 @@
+package com.pas.cosc322.amazon.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonMoveValidator;
+import com.pas.cosc322.amazon.search.MoveStack;
+
+/**
+ * Applying and undoing actions, and validating moves, over the actions the
+ * search would consider in every position of a phase.  Half of the moves
+ * validated are made illegal by shooting the arrow at a queen.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark
+{
+	// actions per position
+	private static final int ACTIONS = 32;
+
+	@Param({Positions.OPENING, Positions.MIDGAME, Positions.ENDGAME, Positions.ENCLOSED})
+	public String phase;
+
+	private AmazonBoard[] corpus;
+	private int[][] actions;
+	private AmazonMove[][] moves;
+
+	@Setup
+	public void setUp ()
+	{
+		corpus = Positions.corpus(phase);
+		actions = new int[corpus.length][];
+		moves = new AmazonMove[corpus.length][];
+		MoveStack stack = new MoveStack();
+		for (int i = 0; i < corpus.length; i++)
+		{
+			stack.clear();
+			stack.push();
+			int count = corpus[i].actions(Positions.toMove(corpus[i]), stack, ACTIONS);
+			actions[i] = new int[count];
+			moves[i] = new AmazonMove[2 * count];
+			for (int j = 0; j < count; j++)
+			{
+				actions[i][j] = stack.action(stack.begin() + j);
+				moves[i][2 * j] = AmazonMove.unpack(actions[i][j]);
+				AmazonMove illegal = AmazonMove.unpack(actions[i][j]);
+				illegal.ar = illegal.qfr;
+				illegal.ac = illegal.qfc;
+				moves[i][2 * j + 1] = illegal;
+			}
+		}
+	}
+
+	@Benchmark
+	public long applyUndo ()
+	{
+		long hash = 0;
+		for (int i = 0; i < corpus.length; i++)
+		{
+			AmazonBoard board = corpus[i];
+			for (int action : actions[i])
+			{
+				board.applyAction(action);
+				hash ^= board.hashKey();
+				board.undoAction(action);
+			}
+		}
+		return hash;
+	}
+
+	@Benchmark
+	public int validateMove ()
+	{
+		int valid = 0;
+		for (int i = 0; i < corpus.length; i++)
+		{
+			for (AmazonMove move : moves[i])
+			{
+				if (AmazonMoveValidator.validateMove(corpus[i], move))
+				{
+					valid++;
+				}
+			}
+		}
+		return valid;
+	}
+}
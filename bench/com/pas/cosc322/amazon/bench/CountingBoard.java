@@ -0,0 +1,102 @@
+package com.pas.cosc322.amazon.bench;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.MoveStack;
+import com.pas.cosc322.amazon.search.PackedState;
+
+/**
+ * A board that counts the nodes a search visits, every action applied to
+ * it or to any of its clones.
+ */
+class CountingBoard implements PackedState<AmazonMove, AmazonRole>
+{
+	private final AmazonBoard board;
+	private final AtomicLong nodes;
+
+	/**
+	 * Constructor
+	 *
+	 * @param board the board to count the nodes of, owned by this
+	 * @param nodes the counter shared with the clones
+	 */
+	public CountingBoard (AmazonBoard board, AtomicLong nodes)
+	{
+		this.board = board;
+		this.nodes = nodes;
+	}
+
+	@Override
+	public Queue<AmazonMove> actions (AmazonRole minimaxPlayer)
+	{
+		return board.actions(minimaxPlayer);
+	}
+
+	@Override
+	public int actions (AmazonRole minimaxPlayer, MoveStack moves)
+	{
+		return board.actions(minimaxPlayer, moves);
+	}
+
+	@Override
+	public int actions (AmazonRole minimaxPlayer, MoveStack moves, int maxActions)
+	{
+		return board.actions(minimaxPlayer, moves, maxActions);
+	}
+
+	@Override
+	public CountingBoard applyAction (AmazonMove action)
+	{
+		nodes.incrementAndGet();
+		board.applyAction(action);
+		return this;
+	}
+
+	@Override
+	public CountingBoard undoAction (AmazonMove action)
+	{
+		board.undoAction(action);
+		return this;
+	}
+
+	@Override
+	public void applyAction (int action)
+	{
+		nodes.incrementAndGet();
+		board.applyAction(action);
+	}
+
+	@Override
+	public void undoAction (int action)
+	{
+		board.undoAction(action);
+	}
+
+	@Override
+	public AmazonMove unpack (int action)
+	{
+		return board.unpack(action);
+	}
+
+	@Override
+	public long hashKey ()
+	{
+		return board.hashKey();
+	}
+
+	@Override
+	public int evaluate (AmazonRole minimaxPlayer)
+	{
+		return board.evaluate(minimaxPlayer);
+	}
+
+	@Override
+	public CountingBoard clone ()
+	{
+		return new CountingBoard(board.clone(), nodes);
+	}
+}
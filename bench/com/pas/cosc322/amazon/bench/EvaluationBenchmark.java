@@ -0,0 +1,75 @@
+package com.pas.cosc322.amazon.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.board.AmazonEvaluationFunction;
+import com.pas.cosc322.amazon.main.ProjectConstants;
+import com.pas.cosc322.amazon.player.AmazonRole;
+
+/**
+ * The early and end game evaluations of every position of a phase, for
+ * both sides.  Which evaluation runs is forced through the end game
+ * turnover, so each can be measured at every phase.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark
+{
+	/** the evaluation used, early or end */
+	public static final String EARLY = "early";
+	public static final String END = "end";
+
+	@Param({Positions.OPENING, Positions.MIDGAME, Positions.ENDGAME, Positions.ENCLOSED})
+	public String phase;
+
+	@Param({EARLY, END})
+	public String evaluation;
+
+	private AmazonBoard[] corpus;
+	private AmazonEvaluationFunction function = new AmazonEvaluationFunction();
+	private byte turnOver;
+
+	@Setup
+	public void setUp ()
+	{
+		corpus = Positions.corpus(phase);
+		turnOver = ProjectConstants.endGameTurnOver;
+		ProjectConstants.endGameTurnOver = evaluation.equals(EARLY) ? Byte.MAX_VALUE : 0;
+	}
+
+	@TearDown
+	public void tearDown ()
+	{
+		ProjectConstants.endGameTurnOver = turnOver;
+	}
+
+	@Benchmark
+	public int evaluate ()
+	{
+		int sum = 0;
+		for (AmazonBoard board : corpus)
+		{
+			AmazonRole role = Positions.toMove(board);
+			sum += function.evaluate(board, role) - function.evaluate(board, role.other());
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,60 @@
+package com.pas.cosc322.amazon.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.search.MoveStack;
+
+/**
+ * Generating the ordered successor actions of every position of a phase,
+ * keeping as many as the alpha-beta and the Monte Carlo searches do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark
+{
+	@Param({Positions.OPENING, Positions.MIDGAME, Positions.ENDGAME, Positions.ENCLOSED})
+	public String phase;
+
+	/** actions kept per position, the deployed max-explorations and MonteCarloSearch.MAX_CHILDREN */
+	@Param({"10", "32"})
+	public int maxActions;
+
+	private AmazonBoard[] corpus;
+	private MoveStack moves = new MoveStack();
+
+	@Setup
+	public void setUp ()
+	{
+		corpus = Positions.corpus(phase);
+	}
+
+	@Benchmark
+	public int generateSuccessorActions ()
+	{
+		int actions = 0;
+		for (AmazonBoard board : corpus)
+		{
+			moves.clear();
+			moves.push();
+			actions += board.actions(Positions.toMove(board), moves, maxActions);
+		}
+		return actions;
+	}
+}
@@ -0,0 +1,128 @@
+package com.pas.cosc322.amazon.bench;
+
+import java.util.Random;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.main.ProjectConstants;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.MoveStack;
+
+/**
+ * The corpus of positions every benchmark runs over.
+ * <p>
+ * Each position is reached from the start by a seeded game in which both
+ * sides play one of their three best ordered actions at random, so the
+ * positions look like real games and are the same on every run.  There
+ * are a few positions for each phase of the game, the phases the
+ * evaluation and the searches treat differently.
+ */
+public final class Positions
+{
+	/** a few moves in, the branching factor is at its widest */
+	public static final String OPENING = "opening";
+	/** the last moves of the early game evaluation */
+	public static final String MIDGAME = "midgame";
+	/** well into the end game evaluation, the regions are forming */
+	public static final String ENDGAME = "endgame";
+	/** every queen is walled off from the other side */
+	public static final String ENCLOSED = "enclosed";
+
+	/** positions per phase */
+	public static final int CORPUS_SIZE = 8;
+
+	// actions each side chooses between
+	private static final int CHOICES = 3;
+	// the end game turnover the corpus is played with, as deployed
+	private static final byte END_GAME_TURNOVER = 20;
+
+	private Positions ()
+	{
+	}
+
+	/**
+	 * Plays the positions of a phase.
+	 *
+	 * @param phase OPENING, MIDGAME, ENDGAME or ENCLOSED
+	 * @return CORPUS_SIZE positions
+	 */
+	public static AmazonBoard[] corpus (String phase)
+	{
+		int plies;
+		if (phase.equals(OPENING))
+		{
+			plies = 4;
+		}
+		else if (phase.equals(MIDGAME))
+		{
+			plies = END_GAME_TURNOVER - 2;
+		}
+		else if (phase.equals(ENDGAME))
+		{
+			plies = 2 * END_GAME_TURNOVER;
+		}
+		else if (phase.equals(ENCLOSED))
+		{
+			plies = -1;
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown phase "+phase+"!");
+		}
+		// the actions played depend on the evaluation, fix it whatever a benchmark has set
+		byte turnOver = ProjectConstants.endGameTurnOver;
+		ProjectConstants.endGameTurnOver = END_GAME_TURNOVER;
+		try
+		{
+			AmazonBoard[] corpus = new AmazonBoard[CORPUS_SIZE];
+			for (int n = 0, seed = 0; n < CORPUS_SIZE; seed++)
+			{
+				AmazonBoard board = play(seed, plies);
+				if (board != null)
+				{
+					corpus[n++] = board;
+				}
+			}
+			return corpus;
+		}
+		finally
+		{
+			ProjectConstants.endGameTurnOver = turnOver;
+		}
+	}
+
+	/**
+	 * @param board a position
+	 * @return the role to move, WHITE moves first
+	 */
+	public static AmazonRole toMove (AmazonBoard board)
+	{
+		return board.getMarkedPos() % 2 == 0 ? AmazonRole.WHITE : AmazonRole.BLACK;
+	}
+
+	/**
+	 * Plays a seeded game.
+	 *
+	 * @param plies the moves to play, or -1 to play until the position is enclosed
+	 * @return the position, or null if the side to move has no moves
+	 */
+	private static AmazonBoard play (long seed, int plies)
+	{
+		Random random = new Random(seed);
+		AmazonBoard board = new AmazonBoard();
+		MoveStack moves = new MoveStack();
+		while (plies < 0 ? !board.isEnclosed() : board.getMarkedPos() < plies)
+		{
+			moves.clear();
+			moves.push();
+			int count = board.actions(toMove(board), moves, CHOICES);
+			if (count == 0)
+			{
+				return null;
+			}
+			board.applyAction(moves.action(moves.begin() + random.nextInt(count)));
+		}
+		moves.clear();
+		moves.push();
+		return board.actions(toMove(board), moves, 1) == 0 ? null : board;
+	}
+}
@@ -0,0 +1,144 @@
+package com.pas.cosc322.amazon.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.main.ProjectConstants;
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.MinimaxSearch;
+import com.pas.cosc322.amazon.search.TimeControl;
+
+/**
+ * A fixed-depth alpha-beta search of every position of a phase.  The
+ * transposition table is cleared before each search so every search does
+ * the same work.  Besides the searches per second, the nodes counter
+ * reports the nodes searched per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SearchBenchmark
+{
+	@Param({Positions.OPENING, Positions.MIDGAME, Positions.ENDGAME})
+	public String phase;
+
+	/** the search's cutoff depth, the root is at depth 1 */
+	@Param({"3", "4"})
+	public int cutoffDepth;
+
+	/** actions searched per node, as deployed */
+	@Param({"10"})
+	public int maxExplorations;
+
+	/** threads searching, including the calling thread */
+	@Param({"1", "4"})
+	public int threads;
+
+	private CountingBoard[] corpus;
+	private AmazonRole[] roles;
+	private AtomicLong visited = new AtomicLong();
+	private MinimaxSearch<CountingBoard, AmazonMove, AmazonRole> search;
+	private int explorations;
+
+	/**
+	 * The nodes searched, reported per second.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Nodes
+	{
+		public long nodes;
+
+		@Setup(Level.Iteration)
+		public void reset ()
+		{
+			nodes = 0;
+		}
+	}
+
+	@Setup
+	public void setUp ()
+	{
+		explorations = ProjectConstants.maxExplorations;
+		ProjectConstants.maxExplorations = maxExplorations;
+		AmazonBoard[] boards = Positions.corpus(phase);
+		corpus = new CountingBoard[boards.length];
+		roles = new AmazonRole[boards.length];
+		for (int i = 0; i < boards.length; i++)
+		{
+			corpus[i] = new CountingBoard(boards[i], visited);
+			roles[i] = Positions.toMove(boards[i]);
+		}
+		search = new MinimaxSearch<CountingBoard, AmazonMove, AmazonRole>(threads);
+		search.setTimeControl(new TimeControl()
+		{
+			// long enough never to cut a search off
+			private final long limit = TimeUnit.HOURS.toMillis(1);
+
+			@Override
+			public long hardLimit ()
+			{
+				return limit;
+			}
+
+			@Override
+			public long target ()
+			{
+				return limit;
+			}
+
+			@Override
+			public boolean nextIteration (int depth, int bestAction, long elapsed)
+			{
+				// only the iteration at the cutoff depth is searched
+				return false;
+			}
+		});
+	}
+
+	@TearDown
+	public void tearDown ()
+	{
+		ProjectConstants.maxExplorations = explorations;
+	}
+
+	@Setup(Level.Invocation)
+	public void clearTable ()
+	{
+		search.getTable().clear();
+	}
+
+	@Benchmark
+	public int search (Nodes nodes)
+	{
+		long start = visited.get();
+		int sum = 0;
+		for (int i = 0; i < corpus.length; i++)
+		{
+			search.setCutoffDepth(cutoffDepth);
+			sum += search.minimaxDecision(roles[i], roles[i].other(), corpus[i]).pack();
+		}
+		nodes.nodes += visited.get() - start;
+		return sum;
+	}
+}
@@ -0,0 +1,318 @@
+package com.pas.cosc322.amazon.arena;
+
+import static com.pas.cosc322.amazon.main.Main.debug;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonMoveValidator;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.MoveStack;
+import com.pas.cosc322.amazon.search.PackedAction;
+
+/**
+ * Plays games between two configurations of the engine, A and B, in this
+ * process with no game server, and tests which is stronger with the SPRT.
+ * <p>
+ * Games are played concurrently, each game thread with its own pair of
+ * engines.  Games come in pairs that start from the same opening, A
+ * playing white in the first and black in the second, so neither the
+ * opening nor the colour favours an engine.  Each opening is a few moves
+ * picked from the best OPENING_WIDTH, and no two pairs share one: the
+ * engines are deterministic, so a repeated opening would replay the same
+ * games and count them in the SPRT as new trials.  Enough opening moves
+ * are played to give every pair its own opening, and a match too long for
+ * MAX_OPENING_PLIES is cut short to the openings there are.  A side that
+ * can't move loses, and so does an engine that plays an illegal move or
+ * none at all.  The match stops once the SPRT accepts a hypothesis or the
+ * games run out.
+ */
+public class Arena
+{
+	/** the fewest opening moves played at the start of every game */
+	public static final int OPENING_PLIES = 2;
+	/** the most opening moves played at the start of every game */
+	public static final int MAX_OPENING_PLIES = 8;
+	/** the best moves an opening move is picked from, a power of 2 */
+	public static final int OPENING_WIDTH = 8;
+	/** games between progress reports */
+	public static final int REPORT_GAMES = 20;
+
+	// the bits of an opening that pick each of its moves
+	private static final int OPENING_BITS = Integer.numberOfTrailingZeros(OPENING_WIDTH);
+
+	private final ArenaEngine[] enginesA, enginesB;
+	private final Sprt sprt;
+	private final long seed;
+	private final AtomicInteger next = new AtomicInteger();
+	private final AtomicInteger forfeits = new AtomicInteger();
+	private final AtomicInteger plies = new AtomicInteger();
+	private int games;
+	private int openingPlies = OPENING_PLIES;
+
+	/**
+	 * Constructor
+	 *
+	 * @param engineA the spec of engine A, see ArenaEngine
+	 * @param engineB the spec of engine B
+	 * @param concurrency the number of games played at once, or 0 for one per core the engines' threads leave
+	 * @param sprt the test the results are added to
+	 * @param seed the seed that shuffles the openings
+	 * @throws IllegalArgumentException if a spec can't be read
+	 */
+	public Arena (String engineA, String engineB, int concurrency, Sprt sprt, long seed)
+	{
+		ArenaEngine a = new ArenaEngine(engineA), b = new ArenaEngine(engineB);
+		if (concurrency < 1)
+		{
+			concurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(a.threads(), b.threads()));
+		}
+		enginesA = new ArenaEngine[concurrency];
+		enginesB = new ArenaEngine[concurrency];
+		enginesA[0] = a;
+		enginesB[0] = b;
+		for (int i = 1; i < concurrency; i++)
+		{
+			enginesA[i] = new ArenaEngine(engineA);
+			enginesB[i] = new ArenaEngine(engineB);
+		}
+		this.sprt = sprt;
+		this.seed = seed;
+	}
+
+	/**
+	 * Plays the match, returning once the SPRT has decided or every game
+	 * is over.  Games already started when the SPRT decides are finished
+	 * and counted.
+	 *
+	 * @param games the most games to play, no more are played than there are openings for, see getGames
+	 * @return the test holding the results
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 */
+	public Sprt play (int games) throws InterruptedException
+	{
+		// every pair of games needs an opening of its own
+		openingPlies = OPENING_PLIES;
+		while (openingPlies < MAX_OPENING_PLIES && openings(openingPlies) < (games + 1) / 2)
+		{
+			openingPlies++;
+		}
+		this.games = (int) Math.min(games, 2 * openings(openingPlies));
+		Thread[] threads = new Thread[enginesA.length];
+		for (int t = 0; t < threads.length; t++)
+		{
+			final ArenaEngine a = enginesA[t], b = enginesB[t];
+			threads[t] = new Thread(new Runnable()
+			{
+				@Override
+				public void run ()
+				{
+					playGames(a, b);
+				}
+			}, "arena-"+t);
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+		{
+			thread.join();
+		}
+		return sprt;
+	}
+
+	/**
+	 * @return the number of games played at once
+	 */
+	public int getConcurrency ()
+	{
+		return enginesA.length;
+	}
+
+	/**
+	 * @return the most games the last match played, fewer than asked for if the openings ran out
+	 */
+	public int getGames ()
+	{
+		return games;
+	}
+
+	/**
+	 * @return the opening moves played at the start of every game of the last match
+	 */
+	public int getOpeningPlies ()
+	{
+		return openingPlies;
+	}
+
+	/**
+	 * @return the games lost by an illegal move or no move
+	 */
+	public int getForfeits ()
+	{
+		return forfeits.get();
+	}
+
+	/**
+	 * @return the mean length of a game in plies
+	 */
+	public double getMeanPlies ()
+	{
+		int played = sprt.getGames();
+		return played == 0 ? 0 : (double) plies.get() / played;
+	}
+
+	private void playGames (ArenaEngine a, ArenaEngine b)
+	{
+		MoveStack moves = new MoveStack();
+		int game;
+		while (sprt.decision() == Sprt.UNDECIDED && (game = next.getAndIncrement()) < games)
+		{
+			AmazonRole roleA = game % 2 == 0 ? AmazonRole.WHITE : AmazonRole.BLACK;
+			sprt.add(playGame(game, a, b, roleA, moves) == roleA);
+			if (sprt.getGames() % REPORT_GAMES == 0)
+			{
+				report(System.out);
+			}
+		}
+	}
+
+	/**
+	 * Plays one game.
+	 *
+	 * @param game the index of the game, pairs of games share an opening
+	 * @param a engine A
+	 * @param b engine B
+	 * @param roleA the role A plays
+	 * @param moves scratch space for move generation
+	 * @return the winner
+	 */
+	AmazonRole playGame (int game, ArenaEngine a, ArenaEngine b, AmazonRole roleA, MoveStack moves)
+	{
+		a.newGame();
+		b.newGame();
+		AmazonBoard board = new AmazonBoard();
+		AmazonRole role = AmazonRole.WHITE;
+		long opening = opening(game / 2);
+		int ply = 0;
+		while (true)
+		{
+			moves.push();
+			int count = board.actions(role, moves, ply < openingPlies ? OPENING_WIDTH : 1);
+			// each opening move is a digit of the opening, the best moves are many more than the width this early
+			int pick = count > 0 ? moves.action(moves.begin() + (int) (opening >>> ply * OPENING_BITS & (OPENING_WIDTH - 1)) % count) : PackedAction.NO_ACTION;
+			moves.pop();
+			if (count == 0)
+			{
+				break;
+			}
+			int action = ply < openingPlies ? pick : (role == roleA ? a : b).decide(board, role);
+			if (!isLegal(board, role, action))
+			{
+				forfeits.incrementAndGet();
+				if (debug.isLoggable(Level.WARNING))
+				{
+					debug.log(Level.WARNING, "Game {0}: {1} forfeits with move {2}", new Object[] {game, role == roleA ? a : b, action});
+				}
+				break;
+			}
+			board.applyAction(action);
+			role = role.other();
+			ply++;
+		}
+		plies.addAndGet(ply);
+		// the role to move could not, or played an illegal move
+		return role.other();
+	}
+
+	/**
+	 * @param plies the opening moves
+	 * @return the number of openings of that many moves
+	 */
+	static long openings (int plies)
+	{
+		return 1L << plies * OPENING_BITS;
+	}
+
+	/**
+	 * Numbers the opening of a pair of games, OPENING_BITS for each of its
+	 * moves.  The pairs are mapped one to one onto the openings, in an order
+	 * shuffled by the seed so that pairs played one after the other are not
+	 * alike.
+	 *
+	 * @param pair the index of the pair of games, less than the number of openings
+	 * @return the opening
+	 */
+	long opening (int pair)
+	{
+		int bits = openingPlies * OPENING_BITS;
+		long mask = openings(openingPlies) - 1;
+		// multiplying by an odd number, adding and xor shifting right each permute the numbers below 2^bits
+		long x = (pair * 0x9E3779B97F4A7C15L + seed) & mask;
+		x ^= x >>> (bits + 1) / 2;
+		x = (x * 0xBF58476D1CE4E5B9L) & mask;
+		return x ^ x >>> (bits + 1) / 2;
+	}
+
+	private static boolean isLegal (AmazonBoard board, AmazonRole role, int action)
+	{
+		return action != PackedAction.NO_ACTION && AmazonMove.role(action) == role && AmazonMoveValidator.validateMove(board, AmazonMove.unpack(action));
+	}
+
+	private void report (PrintStream out)
+	{
+		synchronized (out)
+		{
+			out.printf("games:%d wins:%d losses:%d score:%.3f elo:%+.1f +/- %.1f llr:%.2f (%.2f, %.2f) forfeits:%d plies:%.1f%n",
+				sprt.getGames(), sprt.getWins(), sprt.getLosses(), sprt.score(), sprt.elo(), sprt.eloError(),
+				sprt.llr(), sprt.lowerBound(), sprt.upperBound(), forfeits.get(), getMeanPlies());
+		}
+	}
+
+	/**
+	 * Plays a match between two engines.
+	 *
+	 * @param args games engine-a engine-b [concurrency] [elo0] [elo1] [seed]
+	 * @throws InterruptedException if interrupted while waiting for the games
+	 */
+	public static void main (String[] args) throws InterruptedException
+	{
+		if (args.length < 3)
+		{
+			System.out.println("Usage: Arena games engine-a engine-b [concurrency] [elo0] [elo1] [seed]");
+			System.out.println("  concurrency 0 plays one game per core the engines' threads leave");
+			System.out.println("  an engine is mode:threads:budget, mode is split, lazy-smp or montecarlo and budget is <n>n nodes or <t>ms per move");
+			return;
+		}
+		// the searches log every move, only problems are worth reading here
+		debug.setLevel(Level.WARNING);
+		int games = Integer.parseInt(args[0].trim());
+		String engineA = args[1].trim(), engineB = args[2].trim();
+		int concurrency = args.length > 3 ? Integer.parseInt(args[3].trim()) : 0;
+		double elo0 = args.length > 4 ? Double.parseDouble(args[4].trim()) : 0;
+		double elo1 = args.length > 5 ? Double.parseDouble(args[5].trim()) : 10;
+		long seed = args.length > 6 ? Long.parseLong(args[6].trim()) : 322;
+		Sprt sprt = new Sprt(elo0, elo1, 0.05, 0.05);
+		Arena arena = new Arena(engineA, engineB, concurrency, sprt, seed);
+		System.out.println("A:"+engineA+" B:"+engineB+" games:"+games+" concurrency:"+arena.getConcurrency()+" H0:"+elo0+" H1:"+elo1);
+		arena.play(games);
+		if (arena.getGames() < games)
+		{
+			System.out.println("Only "+openings(MAX_OPENING_PLIES)+" openings of "+MAX_OPENING_PLIES+" moves, the match was cut to "+arena.getGames()+" games");
+		}
+		arena.report(System.out);
+		switch (sprt.decision())
+		{
+			case Sprt.H1:
+				System.out.println("H1 accepted: A is at least "+elo1+" Elo stronger than B");
+				break;
+			case Sprt.H0:
+				System.out.println("H0 accepted: A is no more than "+elo0+" Elo stronger than B");
+				break;
+			default:
+				System.out.println("Undecided after "+sprt.getGames()+" games");
+		}
+		System.exit(0);
+	}
+}
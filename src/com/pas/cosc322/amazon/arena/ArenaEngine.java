@@ -0,0 +1,182 @@
+package com.pas.cosc322.amazon.arena;
+
+import static com.pas.cosc322.amazon.main.ProjectConstants.SEARCH_MODE_LAZY_SMP;
+import static com.pas.cosc322.amazon.main.ProjectConstants.SEARCH_MODE_SPLIT;
+import static com.pas.cosc322.amazon.main.ProjectConstants.initialDepth;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.board.AmazonEndgame;
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.AdversarialSearch;
+import com.pas.cosc322.amazon.search.LazySmpSearch;
+import com.pas.cosc322.amazon.search.MinimaxSearch;
+import com.pas.cosc322.amazon.search.MonteCarloSearch;
+import com.pas.cosc322.amazon.search.PackedAction;
+import com.pas.cosc322.amazon.search.SearchMetrics;
+import com.pas.cosc322.amazon.search.TimeControl;
+import com.pas.cosc322.amazon.search.TranspositionTable;
+
+/**
+ * One configuration of the engine playing in the arena, decided by a spec
+ * of the form mode:threads:budget, for example split:1:20000n or
+ * lazy-smp:2:200ms.  The mode is a search mode of the player or montecarlo,
+ * and the budget is a number of nodes (n) or a time in ms (ms) per move.
+ * <p>
+ * Like the player, an engine solves enclosed positions with the endgame
+ * solver, and searches them only if the solver runs out of time.
+ */
+class ArenaEngine
+{
+	/** search mode that plays every move with Monte Carlo Tree Search */
+	static final String SEARCH_MODE_MONTE_CARLO = "montecarlo";
+
+	// the time (in ms) a search with a node budget may take, in case the budget is never spent
+	private static final long NODE_SEARCH_TIME = 60000;
+	// the time (in ms) the endgame solver is given when the budget is in nodes
+	private static final long ENDGAME_TIME = 1000;
+	// every game thread has two engines, keep their tables small
+	private static final int TABLE_BITS = 18;
+	private static final int MEMO_BITS = 16;
+
+	private final String spec;
+	private final int threads;
+	private final long nodes;
+	private final long time;
+	private final AdversarialSearch<BudgetBoard, AmazonMove, AmazonRole> search;
+	private final AmazonEndgame endgame;
+	private final BudgetBoard.Budget budget;
+
+	/**
+	 * Constructor
+	 *
+	 * @param spec mode:threads:budget, see the class comment
+	 * @throws IllegalArgumentException if the spec can't be read
+	 */
+	public ArenaEngine (String spec)
+	{
+		this.spec = spec;
+		String[] fields = spec.trim().split(":");
+		if (fields.length != 3)
+		{
+			throw new IllegalArgumentException("engine must be mode:threads:budget, not "+spec+"!");
+		}
+		String mode = fields[0];
+		threads = Integer.parseInt(fields[1]);
+		String amount = fields[2].toLowerCase();
+		if (amount.endsWith("ms"))
+		{
+			time = Long.parseLong(amount.substring(0, amount.length() - 2));
+			nodes = 0;
+		}
+		else if (amount.endsWith("n"))
+		{
+			nodes = Long.parseLong(amount.substring(0, amount.length() - 1));
+			time = 0;
+		}
+		else
+		{
+			throw new IllegalArgumentException("budget must be nodes (n) or a time in ms (ms), not "+fields[2]+"!");
+		}
+		if (threads < 1 || time < 0 || nodes < 0 || time + nodes == 0)
+		{
+			throw new IllegalArgumentException("threads and budget must be > 0, not "+spec+"!");
+		}
+		TranspositionTable table = new TranspositionTable(TABLE_BITS);
+		if (mode.equals(SEARCH_MODE_SPLIT))
+		{
+			search = new MinimaxSearch<BudgetBoard, AmazonMove, AmazonRole>(threads, table);
+		}
+		else if (mode.equals(SEARCH_MODE_LAZY_SMP))
+		{
+			search = new LazySmpSearch<BudgetBoard, AmazonMove, AmazonRole>(threads, table);
+		}
+		else if (mode.equals(SEARCH_MODE_MONTE_CARLO))
+		{
+			search = new MonteCarloSearch<BudgetBoard, AmazonMove, AmazonRole>(threads, table);
+		}
+		else
+		{
+			throw new IllegalArgumentException("mode must be "+SEARCH_MODE_SPLIT+", "+SEARCH_MODE_LAZY_SMP+" or "+SEARCH_MODE_MONTE_CARLO+", not "+mode+"!");
+		}
+		// the engines of every game search at once, their iterations must not count each other's nodes
+		search.setMetrics(new SearchMetrics());
+		// a fixed budget per move, the search runs until it is spent
+		final long searchTime = time > 0 ? time : NODE_SEARCH_TIME;
+		search.setTimeControl(new TimeControl()
+		{
+			@Override
+			public long hardLimit ()
+			{
+				return searchTime;
+			}
+
+			@Override
+			public long target ()
+			{
+				return searchTime;
+			}
+
+			@Override
+			public boolean nextIteration (int depth, int bestAction, long elapsed)
+			{
+				return true;
+			}
+		});
+		endgame = new AmazonEndgame(threads, MEMO_BITS);
+		budget = new BudgetBoard.Budget(nodes, search);
+	}
+
+	/**
+	 * Forgets everything learned in the last game.
+	 */
+	public void newGame ()
+	{
+		search.getTable().clear();
+		search.setCutoffDepth(initialDepth);
+	}
+
+	/**
+	 * Decides a move.
+	 *
+	 * @param board the position, it is not changed
+	 * @param role the role to move
+	 * @return the packed move, or NO_ACTION if the engine found none
+	 */
+	public int decide (AmazonBoard board, AmazonRole role)
+	{
+		if (board.isEnclosed())
+		{
+			int action = endgame.decide(board, role, time > 0 ? time : ENDGAME_TIME);
+			if (action != PackedAction.NO_ACTION)
+			{
+				return action;
+			}
+		}
+		budget.reset();
+		AmazonMove move = search.minimaxDecision(role, role.other(), new BudgetBoard(board.clone(), budget));
+		return move == null ? PackedAction.NO_ACTION : move.pack();
+	}
+
+	/**
+	 * @return the threads each search runs on
+	 */
+	public int threads ()
+	{
+		return threads;
+	}
+
+	/**
+	 * @return the nodes spent by the last search
+	 */
+	public long spent ()
+	{
+		return budget.spent();
+	}
+
+	@Override
+	public String toString ()
+	{
+		return spec;
+	}
+}
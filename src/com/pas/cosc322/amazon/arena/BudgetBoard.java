@@ -0,0 +1,162 @@
+package com.pas.cosc322.amazon.arena;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.AdversarialSearch;
+import com.pas.cosc322.amazon.search.MoveStack;
+import com.pas.cosc322.amazon.search.PackedState;
+
+/**
+ * A board that spends a node budget, aborting the search once it has
+ * applied a fixed number of actions to the board and its clones.  Each
+ * clone belongs to one search thread and adds its nodes to the budget in
+ * batches, so the threads don't contend on the shared total.
+ */
+class BudgetBoard implements PackedState<AmazonMove, AmazonRole>
+{
+	// nodes a clone counts before adding them to the budget
+	private static final int BATCH = 64;
+
+	private final AmazonBoard board;
+	private final Budget budget;
+	private int pending;
+
+	/**
+	 * Constructor
+	 *
+	 * @param board the board to search, owned by this
+	 * @param budget the budget shared with the clones
+	 */
+	public BudgetBoard (AmazonBoard board, Budget budget)
+	{
+		this.board = board;
+		this.budget = budget;
+	}
+
+	private void spend ()
+	{
+		if (++pending == BATCH)
+		{
+			budget.spend(pending);
+			pending = 0;
+		}
+	}
+
+	@Override
+	public Queue<AmazonMove> actions (AmazonRole minimaxPlayer)
+	{
+		return board.actions(minimaxPlayer);
+	}
+
+	@Override
+	public int actions (AmazonRole minimaxPlayer, MoveStack moves)
+	{
+		return board.actions(minimaxPlayer, moves);
+	}
+
+	@Override
+	public int actions (AmazonRole minimaxPlayer, MoveStack moves, int maxActions)
+	{
+		return board.actions(minimaxPlayer, moves, maxActions);
+	}
+
+	@Override
+	public BudgetBoard applyAction (AmazonMove action)
+	{
+		spend();
+		board.applyAction(action);
+		return this;
+	}
+
+	@Override
+	public BudgetBoard undoAction (AmazonMove action)
+	{
+		board.undoAction(action);
+		return this;
+	}
+
+	@Override
+	public void applyAction (int action)
+	{
+		spend();
+		board.applyAction(action);
+	}
+
+	@Override
+	public void undoAction (int action)
+	{
+		board.undoAction(action);
+	}
+
+	@Override
+	public AmazonMove unpack (int action)
+	{
+		return board.unpack(action);
+	}
+
+	@Override
+	public long hashKey ()
+	{
+		return board.hashKey();
+	}
+
+	@Override
+	public int evaluate (AmazonRole minimaxPlayer)
+	{
+		return board.evaluate(minimaxPlayer);
+	}
+
+	@Override
+	public BudgetBoard clone ()
+	{
+		return new BudgetBoard(board.clone(), budget);
+	}
+
+	/**
+	 * The nodes left to one search.
+	 */
+	static class Budget
+	{
+		private final AtomicLong spent = new AtomicLong();
+		private final long limit;
+		private final AdversarialSearch<?, ?, ?> search;
+
+		/**
+		 * Constructor
+		 *
+		 * @param limit the nodes the search may visit, 0 for no limit
+		 * @param search the search to abort when they are spent
+		 */
+		public Budget (long limit, AdversarialSearch<?, ?, ?> search)
+		{
+			this.limit = limit;
+			this.search = search;
+		}
+
+		/** refills the budget for the next search */
+		public void reset ()
+		{
+			spent.set(0);
+		}
+
+		/**
+		 * @return the nodes spent since the last reset, give or take a batch per thread
+		 */
+		public long spent ()
+		{
+			return spent.get();
+		}
+
+		private void spend (int nodes)
+		{
+			if (spent.addAndGet(nodes) >= limit && limit > 0)
+			{
+				search.abort();
+			}
+		}
+	}
+}
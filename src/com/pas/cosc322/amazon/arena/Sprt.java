@@ -0,0 +1,162 @@
+package com.pas.cosc322.amazon.arena;
+
+/**
+ * The results of a match between two engines, A and B, with the Elo
+ * difference they measure and a sequential probability ratio test.
+ * <p>
+ * Amazons has no draws, so each game is a Bernoulli trial won by A with
+ * the probability the logistic Elo model gives their difference.  The test
+ * weighs H0, that A is elo0 stronger than B, against H1, that A is elo1
+ * stronger, with the exact log likelihood ratio of the wins and losses,
+ * and accepts one of them once the ratio leaves the bounds set by the
+ * error rates alpha and beta.
+ */
+public class Sprt
+{
+	/** the test has not decided yet */
+	public static final int UNDECIDED = 0;
+	/** the test accepted H0, A is no more than elo0 stronger */
+	public static final int H0 = -1;
+	/** the test accepted H1, A is at least elo1 stronger */
+	public static final int H1 = 1;
+
+	// the normal quantile of a 95% confidence interval
+	private static final double Z95 = 1.959964;
+
+	private final double p0, p1;
+	private final double lower, upper;
+	private int wins, losses;
+
+	/**
+	 * Constructor
+	 *
+	 * @param elo0 the Elo difference of H0
+	 * @param elo1 the Elo difference of H1, greater than elo0
+	 * @param alpha the chance of accepting H1 when H0 is true
+	 * @param beta the chance of accepting H0 when H1 is true
+	 */
+	public Sprt (double elo0, double elo1, double alpha, double beta)
+	{
+		if (elo1 <= elo0 || alpha <= 0 || alpha >= 1 || beta <= 0 || beta >= 1)
+		{
+			throw new IllegalArgumentException("elo1 must be > elo0 and alpha and beta must be between 0 and 1!");
+		}
+		p0 = score(elo0);
+		p1 = score(elo1);
+		lower = Math.log(beta / (1 - alpha));
+		upper = Math.log((1 - beta) / alpha);
+	}
+
+	/**
+	 * Adds the result of a game.
+	 *
+	 * @param won if A won the game
+	 */
+	public synchronized void add (boolean won)
+	{
+		if (won)
+		{
+			wins++;
+		}
+		else
+		{
+			losses++;
+		}
+	}
+
+	public synchronized int getWins ()
+	{
+		return wins;
+	}
+
+	public synchronized int getLosses ()
+	{
+		return losses;
+	}
+
+	public synchronized int getGames ()
+	{
+		return wins + losses;
+	}
+
+	/**
+	 * @return the fraction of the games A won
+	 */
+	public synchronized double score ()
+	{
+		return wins + losses == 0 ? 0.5 : (double) wins / (wins + losses);
+	}
+
+	/**
+	 * @return the Elo difference of A over B the score measures, infinite if one engine won every game
+	 */
+	public synchronized double elo ()
+	{
+		return elo(score());
+	}
+
+	/**
+	 * @return the half width of the 95% confidence interval of the Elo difference, infinite until each engine has won a game
+	 */
+	public synchronized double eloError ()
+	{
+		int games = wins + losses;
+		if (wins == 0 || losses == 0)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		double s = score(), error = Z95 * Math.sqrt(s * (1 - s) / games);
+		return (elo(Math.min(1, s + error)) - elo(Math.max(0, s - error))) / 2;
+	}
+
+	/**
+	 * @return the log likelihood ratio of H1 over H0
+	 */
+	public synchronized double llr ()
+	{
+		return wins * Math.log(p1 / p0) + losses * Math.log((1 - p1) / (1 - p0));
+	}
+
+	/**
+	 * @return the ratio below which H0 is accepted
+	 */
+	public double lowerBound ()
+	{
+		return lower;
+	}
+
+	/**
+	 * @return the ratio above which H1 is accepted
+	 */
+	public double upperBound ()
+	{
+		return upper;
+	}
+
+	/**
+	 * @return H0, H1 or UNDECIDED
+	 */
+	public synchronized int decision ()
+	{
+		double llr = llr();
+		return llr <= lower ? H0 : llr >= upper ? H1 : UNDECIDED;
+	}
+
+	/**
+	 * @param elo the Elo difference of A over B
+	 * @return the chance A wins a game
+	 */
+	public static double score (double elo)
+	{
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * @param score the chance A wins a game
+	 * @return the Elo difference of A over B
+	 */
+	public static double elo (double score)
+	{
+		return -400 * Math.log10(1 / score - 1);
+	}
+}
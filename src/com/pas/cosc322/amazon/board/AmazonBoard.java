@@ -3,11 +3,14 @@ package com.pas.cosc322.amazon.board;
 import static com.pas.cosc322.amazon.player.AmazonRole.WHITE;
 
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.Queue;
+import java.util.Random;
 
 import com.pas.cosc322.amazon.player.AmazonMove;
 import com.pas.cosc322.amazon.player.AmazonRole;
-import com.pas.cosc322.amazon.search.State;
+import com.pas.cosc322.amazon.search.MoveStack;
+import com.pas.cosc322.amazon.search.PackedState;
 
 /**
  * Amazon board representation.
@@ -16,7 +19,7 @@ import com.pas.cosc322.amazon.search.State;
  * @author Andrew
  * @author Sam
  */
-public class AmazonBoard implements State<AmazonMove, AmazonRole>
+public class AmazonBoard implements PackedState<AmazonMove, AmazonRole>
 {
 	public static final byte NUM_ROWS = 10;
 	public static final byte NUM_COLS = 10;
@@ -28,16 +31,76 @@ public class AmazonBoard implements State<AmazonMove, AmazonRole>
 	public static final byte BLACK_QUEEN = 2;
 	public static final byte ARROW = 3;
 	
+	/** squares reachable from a square in each direction of dirs, nearest first: rays[dir][square] */
+	public static final byte[][][] rays = new byte[dirs.length][NUM_ROWS * NUM_COLS][];
+	
+	/** the squares one king step away from each square: neighbours[square] */
+	public static final BitBoard[] neighbours = new BitBoard[NUM_ROWS * NUM_COLS];
+	
+	static
+	{
+		for (int sq = 0; sq < NUM_ROWS * NUM_COLS; sq++)
+		{
+			neighbours[sq] = new BitBoard();
+		}
+		byte[] ray = new byte[Math.max(NUM_ROWS, NUM_COLS)];
+		for (int d = 0; d < dirs.length; d++)
+		{
+			for (int sq = 0; sq < NUM_ROWS * NUM_COLS; sq++)
+			{
+				int length = 0;
+				int r = sq / NUM_COLS + dirs[d][0], c = sq % NUM_COLS + dirs[d][1];
+				while (r >= 0 && r < NUM_ROWS && c >= 0 && c < NUM_COLS)
+				{
+					ray[length++] = (byte) (r * NUM_COLS + c);
+					r += dirs[d][0];
+					c += dirs[d][1];
+				}
+				rays[d][sq] = Arrays.copyOf(ray, length);
+				if (length > 0)
+				{
+					neighbours[sq].set(ray[0]);
+				}
+			}
+		}
+	}
+	
+	/** Zobrist keys for each marker at each square: zobrist[marker - 1][square] */
+	private static final long[][] zobrist = new long[ARROW][NUM_ROWS * NUM_COLS];
+	
+	static
+	{
+		// a fixed seed keeps hash keys stable between runs
+		Random random = new Random(322);
+		for (long[] keys : zobrist)
+		{
+			for (int sq = 0; sq < keys.length; sq++)
+			{
+				keys[sq] = random.nextLong();
+			}
+		}
+	}
+	
 	protected byte[][] whiteQueens = new byte[4][2];
 	protected byte[][] blackQueens = new byte[4][2];
 	
-	protected byte[][] board = new byte[NUM_ROWS][NUM_COLS];
+	// occupancy layers, the occupied layer is the union of the other three
+	protected BitBoard whiteBits = new BitBoard();
+	protected BitBoard blackBits = new BitBoard();
+	protected BitBoard arrowBits = new BitBoard();
+	protected BitBoard occupiedBits = new BitBoard();
 	
 	private byte markedPos = 0;
 	
+	private long hash = 0;
+	
 	private AmazonSuccessorFunction successors = new AmazonSuccessorFunction();
 	private AmazonEvaluationFunction eval = new AmazonEvaluationFunction();
-	private AmazonCutoffTest cutoff = new AmazonCutoffTest();
+	private AmazonMobility mobility = new AmazonMobility();
+	private AmazonRegions regions = new AmazonRegions();
+	
+	// scratch stack for the Queue based actions method
+	private MoveStack legacyMoves;
 	
 	private AmazonBoard (boolean cloned)
 	{
@@ -71,15 +134,27 @@ public class AmazonBoard implements State<AmazonMove, AmazonRole>
 		blackQueens[3][0] = 6;
 		blackQueens[3][1] = 9;
 		
-		board[whiteQueens[0][0]][whiteQueens[0][1]] = WHITE_QUEEN;
-		board[whiteQueens[1][0]][whiteQueens[1][1]] = WHITE_QUEEN;
-		board[whiteQueens[2][0]][whiteQueens[2][1]] = WHITE_QUEEN;
-		board[whiteQueens[3][0]][whiteQueens[3][1]] = WHITE_QUEEN;
-		
-		board[blackQueens[0][0]][blackQueens[0][1]] = BLACK_QUEEN;
-		board[blackQueens[1][0]][blackQueens[1][1]] = BLACK_QUEEN;
-		board[blackQueens[2][0]][blackQueens[2][1]] = BLACK_QUEEN;
-		board[blackQueens[3][0]][blackQueens[3][1]] = BLACK_QUEEN;
+		for (byte q = 0; q < 4; q++)
+		{
+			whiteBits.set(square(whiteQueens[q][0], whiteQueens[q][1]));
+			blackBits.set(square(blackQueens[q][0], blackQueens[q][1]));
+			hash ^= zobrist[WHITE_QUEEN - 1][square(whiteQueens[q][0], whiteQueens[q][1])];
+			hash ^= zobrist[BLACK_QUEEN - 1][square(blackQueens[q][0], blackQueens[q][1])];
+		}
+		occupiedBits.lo = whiteBits.lo | blackBits.lo;
+		occupiedBits.hi = whiteBits.hi | blackBits.hi;
+		mobility.init(this);
+		regions.init(this);
+	}
+	
+	/**
+	 * @param row the row
+	 * @param col the column
+	 * @return the row-major square index of the position
+	 */
+	public static int square (int row, int col)
+	{
+		return row * NUM_COLS + col;
 	}
 	
 	/**
@@ -90,6 +165,12 @@ public class AmazonBoard implements State<AmazonMove, AmazonRole>
 		return markedPos;
 	}
 	
+	@Override
+	public long hashKey ()
+	{
+		return hash;
+	}
+	
 	/**
 	 * @param row the row
 	 * @param col the column
@@ -97,7 +178,16 @@ public class AmazonBoard implements State<AmazonMove, AmazonRole>
 	 */
 	public boolean posFree (byte row, byte col)
 	{
-		return board[row][col] == FREE;
+		return !occupiedBits.get(row * NUM_COLS + col);
+	}
+	
+	/**
+	 * @param sq the row-major square index
+	 * @return if there is no queen or arrow at that square
+	 */
+	public boolean posFree (int sq)
+	{
+		return !occupiedBits.get(sq);
 	}
 	
 	/**
@@ -108,7 +198,7 @@ public class AmazonBoard implements State<AmazonMove, AmazonRole>
 	 */
 	public boolean queenAt (AmazonRole role, byte row, byte col)
 	{
-		return board[row][col] == getMarker(role);
+		return getQueenBits(role).get(row * NUM_COLS + col);
 	}
 	
 	/**
@@ -118,7 +208,16 @@ public class AmazonBoard implements State<AmazonMove, AmazonRole>
 	 */
 	public byte markAt (byte row, byte col)
 	{
-		return board[row][col];
+		int sq = row * NUM_COLS + col;
+		if (!occupiedBits.get(sq))
+		{
+			return FREE;
+		}
+		if (arrowBits.get(sq))
+		{
+			return ARROW;
+		}
+		return whiteBits.get(sq) ? WHITE_QUEEN : BLACK_QUEEN;
 	}
 	
 	/**
@@ -134,6 +233,41 @@ public class AmazonBoard implements State<AmazonMove, AmazonRole>
 		return blackQueens;
 	}
 	
+	/**
+	 * The returned mask is the board's own layer and must not be modified.
+	 * 
+	 * @param role the player role
+	 * @return the occupancy layer of the queens owned by role
+	 */
+	public BitBoard getQueenBits (AmazonRole role)
+	{
+		if (role == WHITE)
+		{
+			return whiteBits;
+		}
+		return blackBits;
+	}
+	
+	/**
+	 * The returned mask is the board's own layer and must not be modified.
+	 * 
+	 * @return the occupancy layer of the arrows
+	 */
+	public BitBoard getArrowBits ()
+	{
+		return arrowBits;
+	}
+	
+	/**
+	 * The returned mask is the board's own layer and must not be modified.
+	 * 
+	 * @return the occupancy layer of every queen and arrow
+	 */
+	public BitBoard getOccupiedBits ()
+	{
+		return occupiedBits;
+	}
+	
 	/**
 	 * @param role the player role
 	 * @return the queen marker for role
@@ -160,84 +294,131 @@ public class AmazonBoard implements State<AmazonMove, AmazonRole>
 	@Override
 	public Queue<AmazonMove> actions (AmazonRole minimaxPlayer)
 	{
-		return successors.generateSuccessorActions(this, minimaxPlayer);
+		if (legacyMoves == null)
+		{
+			legacyMoves = new MoveStack(1, 1 << 12);
+		}
+		legacyMoves.push();
+		successors.generateSuccessorActions(this, minimaxPlayer, legacyMoves);
+		Queue<AmazonMove> actions = new LinkedList<AmazonMove>();
+		for (int i = legacyMoves.begin(); i < legacyMoves.end(); i++)
+		{
+			actions.add(AmazonMove.unpack(legacyMoves.action(i)));
+		}
+		legacyMoves.pop();
+		return actions;
+	}
+	
+	@Override
+	public int actions (AmazonRole minimaxPlayer, MoveStack moves)
+	{
+		return successors.generateSuccessorActions(this, minimaxPlayer, moves);
+	}
+	
+	@Override
+	public int actions (AmazonRole minimaxPlayer, MoveStack moves, int maxActions)
+	{
+		return successors.generateSuccessorActions(this, minimaxPlayer, moves, maxActions);
 	}
 
 	@Override
 	public AmazonBoard applyAction (AmazonMove action)
 	{
-		byte[][] queens = getQueens(action.role);
-		byte marker = getMarker(action.role);
-		
-		for (byte[] queen : queens)
-		{
-			if (queen[0] == action.qr && queen[1] == action.qc)
-			{
-				queen[0] = action.qfr;
-				queen[1] = action.qfc;
-				break;
-			}
-		}
-		
-		board[action.qr][action.qc] = FREE;
-		board[action.qfr][action.qfc] = marker;
-		board[action.ar][action.ac] = ARROW;
-		
-		markedPos++;
-		
+		applyAction(action.pack());
 		return this;
 	}
 
 	@Override
 	public AmazonBoard undoAction (AmazonMove action)
 	{
-		byte[][] queens = getQueens(action.role);
-		byte marker = getMarker(action.role);
-		
-		for (byte[] queen : queens)
+		undoAction(action.pack());
+		return this;
+	}
+	
+	@Override
+	public void applyAction (int action)
+	{
+		AmazonRole role = AmazonMove.role(action);
+		int from = AmazonMove.from(action), to = AmazonMove.to(action), arrow = AmazonMove.arrow(action);
+		int queen = moveQueen(getQueens(role), from, to);
+		xorAction(role, from, to, arrow);
+		mobility.apply(this, role, queen, from, to, arrow, markedPos);
+		regions.apply(this, from, to, arrow, markedPos);
+		markedPos++;
+	}
+	
+	@Override
+	public void undoAction (int action)
+	{
+		AmazonRole role = AmazonMove.role(action);
+		int from = AmazonMove.from(action), to = AmazonMove.to(action);
+		moveQueen(getQueens(role), to, from);
+		xorAction(role, from, to, AmazonMove.arrow(action));
+		markedPos--;
+		mobility.undo(markedPos);
+		regions.undo(this, markedPos);
+	}
+	
+	@Override
+	public AmazonMove unpack (int action)
+	{
+		return AmazonMove.unpack(action);
+	}
+	
+	private static int moveQueen (byte[][] queens, int from, int to)
+	{
+		for (int q = 0; q < queens.length; q++)
 		{
-			if (queen[0] == action.qfr && queen[1] == action.qfc)
+			if (square(queens[q][0], queens[q][1]) == from)
 			{
-				queen[0] = action.qr;
-				queen[1] = action.qc;
-				break;
+				queens[q][0] = (byte) (to / NUM_COLS);
+				queens[q][1] = (byte) (to % NUM_COLS);
+				return q;
 			}
 		}
-		
-		board[action.qfr][action.qfc] = FREE;
-		board[action.ar][action.ac] = FREE;
-		board[action.qr][action.qc] = marker;
-		
-		markedPos--;
-		
-		return this;
+		return -1;
 	}
 	
-	@Override
-	public int evaluate (AmazonRole role)
+	private void xorAction (AmazonRole role, int from, int to, int arrow)
 	{
-		return eval.evaluate(this, role);
+		// an action is its own inverse on the occupancy layers; note the arrow may land
+		// where the queen started, in which case those two bits cancel in the occupied layer
+		long fromLo = BitBoard.loBit(from), toLo = BitBoard.loBit(to), arrowLo = BitBoard.loBit(arrow);
+		long fromHi = BitBoard.hiBit(from), toHi = BitBoard.hiBit(to), arrowHi = BitBoard.hiBit(arrow);
+		BitBoard queens = getQueenBits(role);
+		queens.lo ^= fromLo ^ toLo;
+		queens.hi ^= fromHi ^ toHi;
+		arrowBits.lo ^= arrowLo;
+		arrowBits.hi ^= arrowHi;
+		occupiedBits.lo ^= fromLo ^ toLo ^ arrowLo;
+		occupiedBits.hi ^= fromHi ^ toHi ^ arrowHi;
+		long[] queenKeys = zobrist[getMarker(role) - 1];
+		hash ^= queenKeys[from] ^ queenKeys[to] ^ zobrist[ARROW - 1][arrow];
 	}
 	
 	@Override
-	public boolean cutoffTest (int depth, long startTime)
+	public int evaluate (AmazonRole role)
 	{
-		return cutoff.cutoffTest(this, depth, startTime);
+		return eval.evaluate(this, role);
 	}
 	
 	@Override
 	public AmazonBoard clone ()
 	{
 		AmazonBoard newBoard = new AmazonBoard(true);
-		for (byte row = 0; row < board.length; row++)
-		{
-			newBoard.board[row] = Arrays.copyOf(board[row], board[row].length); 
-		}
+		newBoard.whiteBits.copy(whiteBits);
+		newBoard.blackBits.copy(blackBits);
+		newBoard.arrowBits.copy(arrowBits);
+		newBoard.occupiedBits.copy(occupiedBits);
 		for (byte queen = 0; queen < whiteQueens.length; queen++)
 		{
 			newBoard.whiteQueens[queen] = Arrays.copyOf(whiteQueens[queen], whiteQueens[queen].length);
 			newBoard.blackQueens[queen] = Arrays.copyOf(blackQueens[queen], blackQueens[queen].length);
 		}
+		newBoard.markedPos = markedPos;
+		newBoard.hash = hash;
+		newBoard.mobility.copy(mobility, markedPos);
+		newBoard.regions.copy(regions, markedPos);
 		return newBoard;
 	}
 	
@@ -248,18 +429,103 @@ public class AmazonBoard implements State<AmazonMove, AmazonRole>
 		if (o instanceof AmazonBoard)
 		{
 			AmazonBoard other = (AmazonBoard) o;
-			equal = Arrays.deepEquals(board, other.board);
+			equal = whiteBits.equals(other.whiteBits);
+			equal &= blackBits.equals(other.blackBits);
+			equal &= arrowBits.equals(other.arrowBits);
 			equal &= Arrays.deepEquals(whiteQueens, other.whiteQueens);
 			equal &= Arrays.deepEquals(blackQueens, other.blackQueens);
 		}
 		return equal;
 	}
 	
+	@Override
+	public int hashCode ()
+	{
+		return (int) (hash ^ (hash >>> 32));
+	}
+	
+	/**
+	 * @return the incrementally maintained mobility of the queens on this board
+	 */
+	AmazonMobility getMobility ()
+	{
+		return mobility;
+	}
+	
+	/**
+	 * @param role the role
+	 * @return the number of squares role's queens can move to, counted once per queen
+	 */
+	public int queenMoves (AmazonRole role)
+	{
+		return mobility.mobility(this, role);
+	}
+	
+	/**
+	 * The maps are shared with this board's evaluation function and are only
+	 * valid until the next evaluation or change to the board.
+	 * 
+	 * @return the queen-move and king-move distances of both sides
+	 */
+	public DistanceMaps getDistances ()
+	{
+		DistanceMaps distances = eval.getDistances();
+		distances.compute(this);
+		return distances;
+	}
+	
 	/**
 	 * @return if there is no contested territory (all queens are enclosed from opposing queens)
 	 */
 	public boolean isEnclosed ()
 	{
-		return eval.isEnclosed(this);
+		return regions.isEnclosed(this, markedPos);
+	}
+	
+	/**
+	 * @return the number of regions, the king-connected areas of free squares
+	 */
+	public int regionCount ()
+	{
+		return regions.count(markedPos);
+	}
+	
+	/**
+	 * @param region the index of the region, less than regionCount()
+	 * @return the number of free squares in the region
+	 */
+	public int regionSize (int region)
+	{
+		return regions.size(markedPos, region);
+	}
+	
+	/**
+	 * @param region the index of the region, less than regionCount()
+	 * @param squares receives the free squares of the region
+	 */
+	void regionSquares (int region, BitBoard squares)
+	{
+		regions.squares(markedPos, region, squares);
+	}
+	
+	/**
+	 * @param region the index of the region, less than regionCount()
+	 * @param role the role
+	 * @return the mask of role's queens next to the region, bit i for getQueens(role)[i]
+	 */
+	public int regionOwners (int region, AmazonRole role)
+	{
+		return regions.owners(this, markedPos, region) >>> AmazonRegions.slot(role, 0) & 0x0F;
+	}
+	
+	/**
+	 * @param role the role of the queen
+	 * @param queen the index of the queen in getQueens(role)
+	 * @param other the role of the queens to look for
+	 * @return the mask of other's queens sharing a region with the queen, bit i for getQueens(other)[i]
+	 */
+	public int sharingQueens (AmazonRole role, int queen, AmazonRole other)
+	{
+		return regions.sharing(this, markedPos, AmazonRegions.slot(role, queen)) >>> AmazonRegions.slot(other, 0) & 0x0F;
 	}
 }
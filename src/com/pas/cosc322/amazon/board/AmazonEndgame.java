@@ -0,0 +1,477 @@
+package com.pas.cosc322.amazon.board;
+
+import static com.pas.cosc322.amazon.board.BitBoard.DELTA;
+import static com.pas.cosc322.amazon.board.BitBoard.HI_MASK;
+import static com.pas.cosc322.amazon.board.BitBoard.LANDING_HI;
+import static com.pas.cosc322.amazon.board.BitBoard.LANDING_LO;
+import static com.pas.cosc322.amazon.board.BitBoard.hiBit;
+import static com.pas.cosc322.amazon.board.BitBoard.loBit;
+import static com.pas.cosc322.amazon.board.BitBoard.shiftHi;
+import static com.pas.cosc322.amazon.board.BitBoard.shiftLo;
+import static com.pas.cosc322.amazon.main.Main.debug;
+import static com.pas.cosc322.amazon.main.ProjectConstants.minMemory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Level;
+
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.PackedAction;
+import com.pas.cosc322.amazon.search.SearchDeadline;
+
+/**
+ * Solves enclosed positions region by region.
+ * <p>
+ * Once no square is reachable by both players, each player simply makes
+ * as many moves as they can.  The king-connected regions of free squares
+ * (and our queens) never interact, so the moves we can make are the sum of
+ * the most moves we can make in each region.  A region is solved exactly by
+ * a search that splits it again whenever a move cuts it in two, remembers
+ * every region it solves by its squares translated to the corner of the
+ * board, and stops as soon as a region is filled completely.  Positions
+ * later in the game are mostly regions solved before, so they are found
+ * in the memo, a fixed-size table that keeps the latest region to land
+ * in each slot.  Regions small enough to be in the tablebase, if one is
+ * loaded, are not searched at all (see AmazonTablebase).
+ * <p>
+ * The regions are solved in parallel.  Any move that keeps its region's
+ * value is optimal, so the move is taken from any solved region that
+ * still has moves; if none is solved in time the caller must fall back to
+ * another search.
+ */
+public class AmazonEndgame
+{
+	/** default number of regions the memo holds, as a power of two */
+	public static final int DEFAULT_MEMO_BITS = 18;
+
+	// value of a region whose search was aborted
+	private static final int UNKNOWN = -1;
+	// every action marks a square, so no line of play is deeper
+	private static final int MAX_DEPTH = BitBoard.SIZE;
+
+	/** the squares of each column: COLUMNS_LO[col], COLUMNS_HI[col] */
+	private static final long[] COLUMNS_LO = new long[AmazonBoard.NUM_COLS];
+	private static final long[] COLUMNS_HI = new long[AmazonBoard.NUM_COLS];
+
+	static
+	{
+		for (int sq = 0; sq < BitBoard.SIZE; sq++)
+		{
+			COLUMNS_LO[sq % AmazonBoard.NUM_COLS] |= loBit(sq);
+			COLUMNS_HI[sq % AmazonBoard.NUM_COLS] |= hiBit(sq);
+		}
+	}
+
+	private ForkJoinPool pool;
+	private RegionMemo memo;
+	private SearchDeadline deadline = new SearchDeadline();
+
+	/**
+	 * Constructor.  Creates a memo with the default number of slots.
+	 *
+	 * @param maxThreads the number of regions solved at once
+	 */
+	public AmazonEndgame (int maxThreads)
+	{
+		this(maxThreads, DEFAULT_MEMO_BITS);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxThreads the number of regions solved at once
+	 * @param memoBits the memo will hold 2^memoBits regions, 40 bytes each
+	 */
+	public AmazonEndgame (int maxThreads, int memoBits)
+	{
+		if (memoBits < 1 || memoBits > 24)
+		{
+			throw new IllegalArgumentException("memoBits must be between 1 and 24!");
+		}
+		pool = new ForkJoinPool(maxThreads);
+		memo = new RegionMemo(memoBits);
+	}
+
+	/**
+	 * Finds an optimal move for role in an enclosed position.
+	 *
+	 * @param board an enclosed board
+	 * @param role the role to move
+	 * @param searchTime the time (in ms) after which unsolved regions are given up
+	 * @return the packed move, or NO_ACTION if there is none or no region with moves was solved in time
+	 */
+	public int decide (AmazonBoard board, AmazonRole role, long searchTime)
+	{
+		long startTime = System.currentTimeMillis();
+		deadline.start(searchTime, minMemory);
+		long freeLo = ~board.getOccupiedBits().lo, freeHi = ~board.getOccupiedBits().hi & HI_MASK;
+		BitBoard queens = board.getQueenBits(role);
+		// one task per region holding our queens
+		List<RegionTask> tasks = new ArrayList<RegionTask>();
+		BitBoard region = new BitBoard();
+		long restLo = queens.lo, restHi = queens.hi;
+		while ((restLo | restHi) != 0)
+		{
+			int sq = restLo != 0 ? Long.numberOfTrailingZeros(restLo) : 64 + Long.numberOfTrailingZeros(restHi);
+			fill(sq, freeLo | queens.lo, freeHi | queens.hi, region);
+			tasks.add(new RegionTask(role, freeLo & region.lo, freeHi & region.hi, queens.lo & region.lo, queens.hi & region.hi));
+			restLo &= ~region.lo;
+			restHi &= ~region.hi;
+		}
+		for (RegionTask task : tasks)
+		{
+			pool.execute(task);
+		}
+		int best = PackedAction.NO_ACTION, total = 0;
+		boolean solved = true;
+		for (RegionTask task : tasks)
+		{
+			int value = task.join();
+			if (value == UNKNOWN)
+			{
+				solved = false;
+				continue;
+			}
+			total += value;
+			if (value > 0 && best == PackedAction.NO_ACTION)
+			{
+				best = task.best;
+			}
+		}
+		deadline.stop();
+		if (debug.isLoggable(Level.INFO))
+		{
+			debug.logp(Level.INFO, "AmazonEndgame", "decide", "Solve took:{0} regions:{1} moves left:{2}{3}",
+					new Object[] {System.currentTimeMillis()-startTime, tasks.size(), solved ? "" : "at least ", total});
+		}
+		return best;
+	}
+
+	/**
+	 * Solves one region on the calling thread, with no time limit.  The
+	 * tablebase generator solves every region it stores with this.
+	 *
+	 * @param role the role of the region's queens
+	 * @param freeLo the free squares of the region, low word
+	 * @param freeHi the free squares of the region, high word
+	 * @param queensLo the queens in the region, low word
+	 * @param queensHi the queens in the region, high word
+	 * @return the most moves the queens can make in bits 0-31, and the packed move that makes them in bits 32-63
+	 */
+	long solveRegion (AmazonRole role, long freeLo, long freeHi, long queensLo, long queensHi)
+	{
+		RegionTask task = new RegionTask(role, freeLo, freeHi, queensLo, queensHi);
+		int value = task.compute();
+		return (long) task.best << 32 | value;
+	}
+
+	/**
+	 * Fills the king-connected component of sq within a mask.
+	 *
+	 * @param sq the seed square, in the mask
+	 * @param lo the low word of the mask
+	 * @param hi the high word of the mask
+	 * @param component receives the component
+	 */
+	static void fill (int sq, long lo, long hi, BitBoard component)
+	{
+		long fillLo = loBit(sq), fillHi = hiBit(sq);
+		while (true)
+		{
+			long nextLo = fillLo, nextHi = fillHi;
+			for (int dir = 0; dir < DELTA.length; dir++)
+			{
+				nextLo |= shiftLo(fillLo, fillHi, DELTA[dir]) & LANDING_LO[dir];
+				nextHi |= shiftHi(fillLo, fillHi, DELTA[dir]) & LANDING_HI[dir];
+			}
+			nextLo &= lo;
+			nextHi &= hi;
+			if (nextLo == fillLo && nextHi == fillHi)
+			{
+				break;
+			}
+			fillLo = nextLo;
+			fillHi = nextHi;
+		}
+		component.lo = fillLo;
+		component.hi = fillHi;
+	}
+
+	private static boolean isSet (long lo, long hi, int sq)
+	{
+		return sq < 64 ? (lo & 1L << sq) != 0 : (hi & 1L << (sq - 64)) != 0;
+	}
+
+	/**
+	 * Solves one region and remembers its best move.
+	 */
+	private class RegionTask extends RecursiveTask<Integer>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private AmazonRole role;
+		private long freeLo, freeHi, queensLo, queensHi;
+		private AmazonTablebase tablebase = AmazonTablebase.get();
+		// one scratch component per depth, the recursion reuses them
+		private BitBoard[] components = new BitBoard[MAX_DEPTH + 1];
+
+		/** the best packed move of the region, valid when it has a value above 0 */
+		private int best = PackedAction.NO_ACTION;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param role our role
+		 * @param freeLo the free squares of the region, low word
+		 * @param freeHi the free squares of the region, high word
+		 * @param queensLo our queens in the region, low word
+		 * @param queensHi our queens in the region, high word
+		 */
+		public RegionTask (AmazonRole role, long freeLo, long freeHi, long queensLo, long queensHi)
+		{
+			this.role = role;
+			this.freeLo = freeLo;
+			this.freeHi = freeHi;
+			this.queensLo = queensLo;
+			this.queensHi = queensHi;
+			for (int i = 0; i < components.length; i++)
+			{
+				components[i] = new BitBoard();
+			}
+		}
+
+		@Override
+		protected Integer compute ()
+		{
+			return solve(freeLo, freeHi, queensLo, queensHi, 0);
+		}
+
+		/**
+		 * The most moves our queens can make in several regions.
+		 */
+		private int value (long freeLo, long freeHi, long queensLo, long queensHi, int depth)
+		{
+			int total = 0;
+			BitBoard component = components[depth];
+			long restLo = queensLo, restHi = queensHi;
+			// regions without queens are worth nothing, so split from each queen
+			while ((restLo | restHi) != 0)
+			{
+				int sq = restLo != 0 ? Long.numberOfTrailingZeros(restLo) : 64 + Long.numberOfTrailingZeros(restHi);
+				fill(sq, freeLo | queensLo, freeHi | queensHi, component);
+				long lo = component.lo, hi = component.hi;
+				int value = solve(freeLo & lo, freeHi & hi, queensLo & lo, queensHi & hi, depth);
+				if (value == UNKNOWN)
+				{
+					return UNKNOWN;
+				}
+				total += value;
+				restLo &= ~lo;
+				restHi &= ~hi;
+			}
+			return total;
+		}
+
+		/**
+		 * The most moves our queens can make in one region.
+		 */
+		private int solve (long freeLo, long freeHi, long queensLo, long queensHi, int depth)
+		{
+			if (deadline.isAborted())
+			{
+				return UNKNOWN;
+			}
+			// a small region is known exactly, wherever it is on the board
+			if (tablebase != null)
+			{
+				int data = tablebase.probe(freeLo, freeHi, queensLo, queensHi);
+				if (data != AmazonTablebase.MISSING)
+				{
+					if (depth == 0)
+					{
+						best = AmazonTablebase.action(data, role);
+					}
+					return AmazonTablebase.value(data);
+				}
+			}
+			// the memo knows a region by its squares translated to the corner, the whole region is needed for the best move
+			long keyFreeLo = 0, keyFreeHi = 0, keyQueensLo = 0, keyQueensHi = 0;
+			if (depth > 0)
+			{
+				int shift = cornerShift(freeLo | queensLo, freeHi | queensHi);
+				keyFreeLo = shiftRightLo(freeLo, freeHi, shift);
+				keyFreeHi = shiftRightHi(freeHi, shift);
+				keyQueensLo = shiftRightLo(queensLo, queensHi, shift);
+				keyQueensHi = shiftRightHi(queensHi, shift);
+				int known = memo.probe(keyFreeLo, keyFreeHi, keyQueensLo, keyQueensHi);
+				if (known != UNKNOWN)
+				{
+					return known;
+				}
+			}
+			// every move marks one more square, the region can give no more moves than it has free squares
+			int bound = Long.bitCount(freeLo) + Long.bitCount(freeHi);
+			int v = 0;
+			long restLo = queensLo, restHi = queensHi;
+			search:
+			while ((restLo | restHi) != 0)
+			{
+				int from = restLo != 0 ? Long.numberOfTrailingZeros(restLo) : 64 + Long.numberOfTrailingZeros(restHi);
+				restLo &= ~loBit(from);
+				restHi &= ~hiBit(from);
+				// the queen's square is free once it moves
+				long openLo = freeLo | loBit(from), openHi = freeHi | hiBit(from);
+				for (byte[][] ray : AmazonBoard.rays)
+				{
+					for (byte to : ray[from])
+					{
+						if (!isSet(freeLo, freeHi, to))
+						{
+							break;
+						}
+						long movedLo = openLo & ~loBit(to), movedHi = openHi & ~hiBit(to);
+						long nextQueensLo = queensLo ^ loBit(from) ^ loBit(to), nextQueensHi = queensHi ^ hiBit(from) ^ hiBit(to);
+						for (byte[][] arrowRay : AmazonBoard.rays)
+						{
+							for (byte arrow : arrowRay[to])
+							{
+								if (!isSet(movedLo, movedHi, arrow))
+								{
+									break;
+								}
+								int value = value(movedLo & ~loBit(arrow), movedHi & ~hiBit(arrow), nextQueensLo, nextQueensHi, depth + 1);
+								if (value == UNKNOWN)
+								{
+									return UNKNOWN;
+								}
+								if (value + 1 > v)
+								{
+									v = value + 1;
+									if (depth == 0)
+									{
+										best = AmazonMove.pack(role, from, to, arrow);
+									}
+									// the region is filled, no move can do better
+									if (v == bound)
+									{
+										break search;
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+			if (depth > 0)
+			{
+				memo.store(keyFreeLo, keyFreeHi, keyQueensLo, keyQueensHi, v);
+			}
+			return v;
+		}
+	}
+
+	/**
+	 * The shift that translates a region to the top left corner of the board,
+	 * so that regions of the same shape share a memo entry wherever they are.
+	 *
+	 * @param lo the squares of the region, low word
+	 * @param hi the squares of the region, high word
+	 * @return the number of squares to shift the region right by
+	 */
+	private static int cornerShift (long lo, long hi)
+	{
+		int first = lo != 0 ? Long.numberOfTrailingZeros(lo) : 64 + Long.numberOfTrailingZeros(hi);
+		int col = 0;
+		while ((lo & COLUMNS_LO[col]) == 0 && (hi & COLUMNS_HI[col]) == 0)
+		{
+			col++;
+		}
+		// no square lies left of col, so the shift never wraps a row
+		return first / AmazonBoard.NUM_COLS * AmazonBoard.NUM_COLS + col;
+	}
+
+	private static long shiftRightLo (long lo, long hi, int shift)
+	{
+		if (shift == 0)
+		{
+			return lo;
+		}
+		if (shift >= 64)
+		{
+			return hi >>> (shift - 64);
+		}
+		return (lo >>> shift) | (hi << (64 - shift));
+	}
+
+	private static long shiftRightHi (long hi, int shift)
+	{
+		return shift >= 64 ? 0 : hi >>> shift;
+	}
+
+	/**
+	 * A fixed-size, lock-free table of solved regions shared by the region
+	 * tasks.  Each slot holds the four words of a translated region, each
+	 * XOR'd with the data, then the data: the region's value plus one, so an
+	 * empty slot holds 0.  A region always replaces the one in its slot, and
+	 * a slot torn by a concurrent write fails the key check on probe.
+	 */
+	private static final class RegionMemo
+	{
+		// longs per slot
+		private static final int SLOT = 5;
+
+		private final long[] table;
+		private final int mask;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param sizeBits the table will hold 2^sizeBits regions
+		 */
+		public RegionMemo (int sizeBits)
+		{
+			table = new long[SLOT << sizeBits];
+			mask = (1 << sizeBits) - 1;
+		}
+
+		/**
+		 * @return the value of the region, or UNKNOWN if it is not in the table
+		 */
+		public int probe (long freeLo, long freeHi, long queensLo, long queensHi)
+		{
+			int slot = slot(freeLo, freeHi, queensLo, queensHi);
+			long data = table[slot + 4];
+			if (data != 0 && (table[slot] ^ data) == freeLo && (table[slot + 1] ^ data) == freeHi
+					&& (table[slot + 2] ^ data) == queensLo && (table[slot + 3] ^ data) == queensHi)
+			{
+				return (int) data - 1;
+			}
+			return UNKNOWN;
+		}
+
+		/**
+		 * Remembers the value of a region.
+		 */
+		public void store (long freeLo, long freeHi, long queensLo, long queensHi, int value)
+		{
+			int slot = slot(freeLo, freeHi, queensLo, queensHi);
+			long data = value + 1;
+			table[slot] = freeLo ^ data;
+			table[slot + 1] = freeHi ^ data;
+			table[slot + 2] = queensLo ^ data;
+			table[slot + 3] = queensHi ^ data;
+			table[slot + 4] = data;
+		}
+
+		private int slot (long freeLo, long freeHi, long queensLo, long queensHi)
+		{
+			long h = freeLo * 0x9E3779B97F4A7C15L + freeHi;
+			h = h * 0x9E3779B97F4A7C15L + queensLo;
+			h = h * 0x9E3779B97F4A7C15L + queensHi;
+			return ((int) (h ^ (h >>> 32)) & mask) * SLOT;
+		}
+	}
+}
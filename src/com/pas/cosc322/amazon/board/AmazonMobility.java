@@ -0,0 +1,170 @@
+package com.pas.cosc322.amazon.board;
+
+import static com.pas.cosc322.amazon.board.AmazonBoard.rays;
+import static com.pas.cosc322.amazon.board.BitBoard.SIZE;
+
+import com.pas.cosc322.amazon.player.AmazonRole;
+
+/**
+ * Incrementally maintained mobility of every queen on a board.
+ * <p>
+ * For each queen the attack mask holds the free squares the queen can move
+ * to plus the first occupied square in each direction.  An action only
+ * changes three squares, so only the moved queen and the queens whose
+ * attacks include one of those squares need their masks recomputed.  The
+ * masks a ply replaces are kept on an undo stack indexed by the number of
+ * marked positions, so undoing an action simply restores them.
+ */
+class AmazonMobility
+{
+	private static final int QUEENS = 8;
+
+	// attack masks per queen slot, slots 0-3 are the white queens and 4-7 the black queens,
+	// matching the order of AmazonBoard.getQueens
+	private final long[] attacksLo = new long[QUEENS];
+	private final long[] attacksHi = new long[QUEENS];
+
+	// per ply: the slots that were recomputed and their previous masks
+	private final int[] changed = new int[SIZE];
+	private final long[] savedLo = new long[SIZE * QUEENS];
+	private final long[] savedHi = new long[SIZE * QUEENS];
+
+	/**
+	 * Recomputes the mask of every queen from scratch.
+	 *
+	 * @param board the board
+	 */
+	void init (AmazonBoard board)
+	{
+		for (int slot = 0; slot < QUEENS; slot++)
+		{
+			byte[] queen = board.getQueens(slot < 4 ? AmazonRole.WHITE : AmazonRole.BLACK)[slot & 3];
+			attack(board, slot, AmazonBoard.square(queen[0], queen[1]));
+		}
+	}
+
+	/**
+	 * Updates the masks after an action was applied to the board's occupancy layers.
+	 *
+	 * @param board the board, already holding the action
+	 * @param role the role that made the action
+	 * @param queen the index of the moved queen in the role's queens
+	 * @param from the queen's starting square
+	 * @param to the queen's final square
+	 * @param arrow the arrow's square
+	 * @param ply the number of marked positions before the action
+	 */
+	void apply (AmazonBoard board, AmazonRole role, int queen, int from, int to, int arrow, int ply)
+	{
+		int moved = role == AmazonRole.WHITE ? queen : queen + 4;
+		long touchedLo = BitBoard.loBit(from) | BitBoard.loBit(to) | BitBoard.loBit(arrow);
+		long touchedHi = BitBoard.hiBit(from) | BitBoard.hiBit(to) | BitBoard.hiBit(arrow);
+		int mask = 0;
+		for (int slot = 0; slot < QUEENS; slot++)
+		{
+			if (slot == moved || (attacksLo[slot] & touchedLo) != 0 || (attacksHi[slot] & touchedHi) != 0)
+			{
+				mask |= 1 << slot;
+				savedLo[ply * QUEENS + slot] = attacksLo[slot];
+				savedHi[ply * QUEENS + slot] = attacksHi[slot];
+			}
+		}
+		changed[ply] = mask;
+		for (int slot = 0; slot < QUEENS; slot++)
+		{
+			if ((mask & (1 << slot)) != 0)
+			{
+				byte[] q = board.getQueens(slot < 4 ? AmazonRole.WHITE : AmazonRole.BLACK)[slot & 3];
+				attack(board, slot, AmazonBoard.square(q[0], q[1]));
+			}
+		}
+	}
+
+	/**
+	 * Restores the masks replaced by the action applied at ply.
+	 *
+	 * @param ply the number of marked positions before the action
+	 */
+	void undo (int ply)
+	{
+		int mask = changed[ply];
+		for (int slot = 0; slot < QUEENS; slot++)
+		{
+			if ((mask & (1 << slot)) != 0)
+			{
+				attacksLo[slot] = savedLo[ply * QUEENS + slot];
+				attacksHi[slot] = savedHi[ply * QUEENS + slot];
+			}
+		}
+	}
+
+	/**
+	 * Copies the masks and the undo stack up to ply.
+	 *
+	 * @param other the instance to copy
+	 * @param ply the number of marked positions of the board
+	 */
+	void copy (AmazonMobility other, int ply)
+	{
+		System.arraycopy(other.attacksLo, 0, attacksLo, 0, QUEENS);
+		System.arraycopy(other.attacksHi, 0, attacksHi, 0, QUEENS);
+		System.arraycopy(other.changed, 0, changed, 0, ply);
+		System.arraycopy(other.savedLo, 0, savedLo, 0, ply * QUEENS);
+		System.arraycopy(other.savedHi, 0, savedHi, 0, ply * QUEENS);
+	}
+
+	/**
+	 * @param board the board
+	 * @param role the role
+	 * @return the number of moves available to role's queens
+	 */
+	int mobility (AmazonBoard board, AmazonRole role)
+	{
+		long freeLo = ~board.getOccupiedBits().lo, freeHi = ~board.getOccupiedBits().hi;
+		int first = role == AmazonRole.WHITE ? 0 : 4, mobility = 0;
+		for (int slot = first; slot < first + 4; slot++)
+		{
+			mobility += Long.bitCount(attacksLo[slot] & freeLo) + Long.bitCount(attacksHi[slot] & freeHi);
+		}
+		return mobility;
+	}
+
+	/**
+	 * @param board the board
+	 * @param role the role
+	 * @param oneHop the mask to store the squares role's queens can move to in one move
+	 * @return oneHop
+	 */
+	BitBoard oneHop (AmazonBoard board, AmazonRole role, BitBoard oneHop)
+	{
+		int first = role == AmazonRole.WHITE ? 0 : 4;
+		long lo = 0, hi = 0;
+		for (int slot = first; slot < first + 4; slot++)
+		{
+			lo |= attacksLo[slot];
+			hi |= attacksHi[slot];
+		}
+		oneHop.lo = lo & ~board.getOccupiedBits().lo;
+		oneHop.hi = hi & ~board.getOccupiedBits().hi;
+		return oneHop;
+	}
+
+	private void attack (AmazonBoard board, int slot, int sq)
+	{
+		long lo = 0, hi = 0;
+		for (byte[][] ray : rays)
+		{
+			for (byte target : ray[sq])
+			{
+				lo |= BitBoard.loBit(target);
+				hi |= BitBoard.hiBit(target);
+				if (!board.posFree(target))
+				{
+					break;
+				}
+			}
+		}
+		attacksLo[slot] = lo;
+		attacksHi[slot] = hi;
+	}
+}
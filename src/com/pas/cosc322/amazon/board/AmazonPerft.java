@@ -0,0 +1,322 @@
+package com.pas.cosc322.amazon.board;
+
+import static com.pas.cosc322.amazon.board.BitBoard.hiBit;
+import static com.pas.cosc322.amazon.board.BitBoard.loBit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+
+/**
+ * Counts every legal line of play to a fixed depth (perft).
+ * <p>
+ * Unlike the successor function nothing is ordered, evaluated or cut, so
+ * the count measures the raw speed of move generation and of applying and
+ * undoing actions, and checks both against the known counts: 2176 moves
+ * from the start and 4,307,152 lines two moves deep.  Moves are generated
+ * either by the legacy path, stepping through rows and columns with the
+ * board's byte array accessors, or from the ray tables and the occupancy
+ * bitboard as the successor function does.  The last move of a line is
+ * only counted, never made.
+ * <p>
+ * The root actions are searched in parallel, each on its own clone of the
+ * board.  Lines that transpose into a position already counted can be
+ * found in an optional cache, shared without locks by the threads like the
+ * transposition table.
+ * <p>
+ * Usage: AmazonPerft depth [legacy|bitboard] [threads] [cache-bits]
+ */
+public class AmazonPerft
+{
+	/** steps through rows and columns with the board's byte array accessors */
+	public static final String LEGACY = "legacy";
+	/** walks the ray tables against the occupancy bitboard */
+	public static final String BITBOARD = "bitboard";
+
+	// more actions than any position has: 4 queens, at most 35 squares to move to and shoot from each
+	private static final int MAX_ACTIONS = 1 << 13;
+	// mix the remaining depth and the role to move into a cache key
+	private static final long DEPTH_KEY = 0x9E3779B97F4A7C15L;
+	private static final long BLACK_KEY = 0xBF58476D1CE4E5B9L;
+
+	private final boolean legacy;
+	private final ForkJoinPool pool;
+	private final long[] cache;
+	private final int cacheMask;
+
+	// each worker thread reuses the action buffers of one counter for every task it runs
+	private final ThreadLocal<Counter> counters = new ThreadLocal<Counter>()
+	{
+		@Override
+		protected Counter initialValue ()
+		{
+			return new Counter();
+		}
+	};
+
+	/**
+	 * Constructor
+	 *
+	 * @param generator LEGACY or BITBOARD
+	 * @param maxThreads the number of root actions counted at once
+	 * @param cacheBits the cache holds 2^cacheBits positions, 0 for no cache
+	 */
+	public AmazonPerft (String generator, int maxThreads, int cacheBits)
+	{
+		if (!generator.equals(LEGACY) && !generator.equals(BITBOARD))
+		{
+			throw new IllegalArgumentException("generator must be "+LEGACY+" or "+BITBOARD+"!");
+		}
+		if (cacheBits < 0 || cacheBits > 28)
+		{
+			throw new IllegalArgumentException("cacheBits must be between 0 and 28!");
+		}
+		legacy = generator.equals(LEGACY);
+		pool = new ForkJoinPool(maxThreads);
+		cache = cacheBits == 0 ? null : new long[2 << cacheBits];
+		cacheMask = (1 << cacheBits) - 1;
+	}
+
+	/**
+	 * Counts the lines of play.
+	 *
+	 * @param board the position, it is not changed
+	 * @param role the role to move
+	 * @param depth the number of moves in a line, at least 1
+	 * @return the number of lines
+	 */
+	public long perft (AmazonBoard board, AmazonRole role, int depth)
+	{
+		if (depth <= 1)
+		{
+			return counters.get().count(board, role);
+		}
+		int[] actions = new int[MAX_ACTIONS];
+		int count = counters.get().generate(board, role, actions);
+		// one task per root action, the pool splits them between the threads
+		List<PerftTask> tasks = new ArrayList<PerftTask>(count);
+		for (int i = 0; i < count; i++)
+		{
+			PerftTask task = new PerftTask(board, role, actions[i], depth);
+			pool.execute(task);
+			tasks.add(task);
+		}
+		long nodes = 0;
+		for (PerftTask task : tasks)
+		{
+			nodes += task.join();
+		}
+		return nodes;
+	}
+
+	/**
+	 * Counts the lines below one root action.
+	 */
+	private class PerftTask extends RecursiveTask<Long>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private AmazonBoard board;
+		private AmazonRole role;
+		private int action;
+		private int depth;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param board the root position, cloned when the task runs
+		 * @param role the role to move at the root
+		 * @param action the packed root action
+		 * @param depth the depth of the whole count
+		 */
+		public PerftTask (AmazonBoard board, AmazonRole role, int action, int depth)
+		{
+			this.board = board;
+			this.role = role;
+			this.action = action;
+			this.depth = depth;
+		}
+
+		@Override
+		protected Long compute ()
+		{
+			AmazonBoard state = board.clone();
+			state.applyAction(action);
+			return counters.get().perft(state, role.other(), depth - 1);
+		}
+	}
+
+	/**
+	 * Generates and counts moves with one set of action buffers.
+	 */
+	private class Counter
+	{
+		// one buffer per remaining depth above the last
+		private int[][] buffers = new int[0][];
+
+		private long perft (AmazonBoard board, AmazonRole role, int depth)
+		{
+			if (depth == 1)
+			{
+				return count(board, role);
+			}
+			long key = board.hashKey() ^ depth * DEPTH_KEY ^ (role == AmazonRole.WHITE ? 0 : BLACK_KEY);
+			int slot = (int) key & cacheMask;
+			if (cache != null)
+			{
+				// an entry torn by another thread fails the check
+				long nodes = cache[2 * slot + 1];
+				if ((cache[2 * slot] ^ nodes) == key)
+				{
+					return nodes;
+				}
+			}
+			if (buffers.length < depth)
+			{
+				int[][] grown = new int[depth][];
+				System.arraycopy(buffers, 0, grown, 0, buffers.length);
+				for (int i = buffers.length; i < depth; i++)
+				{
+					grown[i] = new int[MAX_ACTIONS];
+				}
+				buffers = grown;
+			}
+			int[] actions = buffers[depth - 1];
+			int count = generate(board, role, actions);
+			long nodes = 0;
+			for (int i = 0; i < count; i++)
+			{
+				board.applyAction(actions[i]);
+				nodes += perft(board, role.other(), depth - 1);
+				board.undoAction(actions[i]);
+			}
+			if (cache != null)
+			{
+				cache[2 * slot] = key ^ nodes;
+				cache[2 * slot + 1] = nodes;
+			}
+			return nodes;
+		}
+
+		private int generate (AmazonBoard board, AmazonRole role, int[] actions)
+		{
+			return legacy ? legacyMoves(board, role, actions) : bitboardMoves(board, role, actions);
+		}
+
+		private int count (AmazonBoard board, AmazonRole role)
+		{
+			return legacy ? legacyMoves(board, role, null) : bitboardMoves(board, role, null);
+		}
+
+		/**
+		 * @param actions filled with the packed actions, or null to only count them
+		 * @return the number of actions
+		 */
+		private int legacyMoves (AmazonBoard board, AmazonRole role, int[] actions)
+		{
+			int count = 0;
+			for (byte[] queen : board.getQueens(role))
+			{
+				byte qr = queen[0], qc = queen[1];
+				for (byte[] dir : AmazonBoard.dirs)
+				{
+					for (byte r = (byte) (qr + dir[0]), c = (byte) (qc + dir[1]); board.inBounds(r, c) && board.posFree(r, c); r += dir[0], c += dir[1])
+					{
+						for (byte[] arrowDir : AmazonBoard.dirs)
+						{
+							// the queen's starting square is free once it has moved
+							for (byte ar = (byte) (r + arrowDir[0]), ac = (byte) (c + arrowDir[1]);
+									board.inBounds(ar, ac) && (board.posFree(ar, ac) || (ar == qr && ac == qc)); ar += arrowDir[0], ac += arrowDir[1])
+							{
+								if (actions != null)
+								{
+									actions[count] = AmazonMove.pack(role, AmazonBoard.square(qr, qc), AmazonBoard.square(r, c), AmazonBoard.square(ar, ac));
+								}
+								count++;
+							}
+						}
+					}
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * @param actions filled with the packed actions, or null to only count them
+		 * @return the number of actions
+		 */
+		private int bitboardMoves (AmazonBoard board, AmazonRole role, int[] actions)
+		{
+			int count = 0;
+			long occupiedLo = board.getOccupiedBits().lo, occupiedHi = board.getOccupiedBits().hi;
+			BitBoard queens = board.getQueenBits(role);
+			long restLo = queens.lo, restHi = queens.hi;
+			while ((restLo | restHi) != 0)
+			{
+				int from = restLo != 0 ? Long.numberOfTrailingZeros(restLo) : 64 + Long.numberOfTrailingZeros(restHi);
+				restLo &= ~loBit(from);
+				restHi &= ~hiBit(from);
+				for (byte[][] ray : AmazonBoard.rays)
+				{
+					for (byte to : ray[from])
+					{
+						if (isSet(occupiedLo, occupiedHi, to))
+						{
+							break;
+						}
+						// occupancy once the queen has moved
+						long movedLo = occupiedLo ^ loBit(from) ^ loBit(to), movedHi = occupiedHi ^ hiBit(from) ^ hiBit(to);
+						for (byte[][] arrowRay : AmazonBoard.rays)
+						{
+							for (byte arrow : arrowRay[to])
+							{
+								if (isSet(movedLo, movedHi, arrow))
+								{
+									break;
+								}
+								if (actions != null)
+								{
+									actions[count] = AmazonMove.pack(role, from, to, arrow);
+								}
+								count++;
+							}
+						}
+					}
+				}
+			}
+			return count;
+		}
+
+		private boolean isSet (long lo, long hi, int sq)
+		{
+			return sq < 64 ? (lo & 1L << sq) != 0 : (hi & 1L << (sq - 64)) != 0;
+		}
+	}
+
+	public static void main (String[] args)
+	{
+		if (args.length < 1)
+		{
+			System.out.println("Usage: AmazonPerft depth [legacy|bitboard] [threads] [cache-bits]");
+			return;
+		}
+		int depth = Integer.parseInt(args[0].trim());
+		String generator = args.length > 1 ? args[1].trim() : BITBOARD;
+		int threads = args.length > 2 ? Integer.parseInt(args[2].trim()) : Runtime.getRuntime().availableProcessors();
+		int cacheBits = args.length > 3 ? Integer.parseInt(args[3].trim()) : 0;
+		AmazonPerft perft = new AmazonPerft(generator, threads, cacheBits);
+		AmazonBoard board = new AmazonBoard();
+		for (int d = 1; d <= depth; d++)
+		{
+			long start = System.nanoTime();
+			long nodes = perft.perft(board, AmazonRole.WHITE, d);
+			long time = System.nanoTime() - start;
+			System.out.println("depth:"+d+" nodes:"+nodes+" time:"+time / 1000000+"ms nodes/s:"+(long) (nodes / Math.max(time / 1e9, 1e-9)));
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,388 @@
+package com.pas.cosc322.amazon.board;
+
+import static com.pas.cosc322.amazon.board.BitBoard.HI_MASK;
+import static com.pas.cosc322.amazon.board.BitBoard.hiBit;
+import static com.pas.cosc322.amazon.board.BitBoard.loBit;
+
+import java.util.Arrays;
+
+import com.pas.cosc322.amazon.player.AmazonRole;
+
+/**
+ * Incrementally maintained regions of a board: the king-connected
+ * components of free squares, each owned by the queens next to it.
+ * <p>
+ * An action frees the queen's starting square, which joins the regions
+ * around it, and fills the queen's and the arrow's squares, which may split
+ * their regions.  A filled square can only split its region if its free
+ * neighbours are not connected around it, and only then is the region
+ * flood filled again; the rest are carried over.  The regions of every ply
+ * since the board was created (or cloned) are kept in layers, so undoing
+ * an action simply drops back a layer.  Each layer also keeps the answers
+ * to the questions the search asks, worked out once when first asked.
+ */
+class AmazonRegions
+{
+	private static final int QUEENS = 8;
+	// under king connectivity a 10x10 board holds at most 25 regions
+	private static final int REGIONS = 32;
+	// layers allocated at first, a search rarely goes deeper from a clone
+	private static final int INITIAL_LAYERS = 16;
+	// the squares around a square, in order around it
+	private static final int RING = 8;
+	private static final int[][] RING_STEPS = {{-1, 0}, {-1, 1}, {0, 1}, {1, 1}, {1, 0}, {1, -1}, {0, -1}, {-1, -1}};
+
+	/** the ring around each square, -1 off the board: rings[square][i] */
+	private static final int[][] rings = new int[BitBoard.SIZE][RING];
+	/** if the set squares of an 8 bit ring pattern are all king-connected within the ring */
+	private static final boolean[] RING_JOINED = new boolean[1 << RING];
+
+	static
+	{
+		for (int sq = 0; sq < BitBoard.SIZE; sq++)
+		{
+			for (int i = 0; i < RING; i++)
+			{
+				int r = sq / AmazonBoard.NUM_COLS + RING_STEPS[i][0], c = sq % AmazonBoard.NUM_COLS + RING_STEPS[i][1];
+				rings[sq][i] = r >= 0 && r < AmazonBoard.NUM_ROWS && c >= 0 && c < AmazonBoard.NUM_COLS ? AmazonBoard.square(r, c) : -1;
+			}
+		}
+		for (int pattern = 0; pattern < RING_JOINED.length; pattern++)
+		{
+			// grow a group from the lowest set cell until it stops changing
+			int group = pattern & -pattern, previous;
+			do
+			{
+				previous = group;
+				for (int i = 0; i < RING; i++)
+				{
+					for (int j = 0; j < RING; j++)
+					{
+						if ((previous & 1 << i) != 0 && (pattern & 1 << j) != 0
+								&& Math.abs(RING_STEPS[i][0] - RING_STEPS[j][0]) <= 1 && Math.abs(RING_STEPS[i][1] - RING_STEPS[j][1]) <= 1)
+						{
+							group |= 1 << j;
+						}
+					}
+				}
+			}
+			while (group != previous);
+			RING_JOINED[pattern] = group == pattern;
+		}
+	}
+
+	// the ply of layer 0
+	private int base;
+
+	// per layer: the number of regions and per region its squares, size and queen slot mask,
+	// slots 0-3 are the white queens and 4-7 the black queens, matching the order of AmazonBoard.getQueens
+	private int[] counts = new int[INITIAL_LAYERS];
+	private long[] regionsLo = new long[INITIAL_LAYERS * REGIONS];
+	private long[] regionsHi = new long[INITIAL_LAYERS * REGIONS];
+	private int[] sizes = new int[INITIAL_LAYERS * REGIONS];
+	private int[] owners = new int[INITIAL_LAYERS * REGIONS];
+
+	// per layer: the queens sharing a region with each queen, and if no region is shared by both sides
+	private int[] sharing = new int[INITIAL_LAYERS * QUEENS];
+	private boolean[] enclosed = new boolean[INITIAL_LAYERS];
+	// most nodes never ask, so the answers are only worked out on the first question
+	private boolean[] summarized = new boolean[INITIAL_LAYERS];
+
+	// scratch space of split and summarize
+	private final BitBoard component = new BitBoard();
+	private final long[] aroundLo = new long[QUEENS];
+	private final long[] aroundHi = new long[QUEENS];
+
+	/**
+	 * Computes the regions of the board from scratch.
+	 *
+	 * @param board the board
+	 */
+	void init (AmazonBoard board)
+	{
+		base = board.getMarkedPos();
+		counts[0] = 0;
+		split(0, ~board.getOccupiedBits().lo, ~board.getOccupiedBits().hi & HI_MASK);
+		summarized[0] = false;
+	}
+
+	/**
+	 * Updates the regions after an action was applied to the board's occupancy layers.
+	 *
+	 * @param board the board, already holding the action
+	 * @param from the queen's starting square
+	 * @param to the queen's final square
+	 * @param arrow the arrow's square
+	 * @param ply the number of marked positions before the action
+	 */
+	void apply (AmazonBoard board, int from, int to, int arrow, int ply)
+	{
+		int last = ply - base, next = last + 1;
+		ensureLayers(next + 1);
+		counts[next] = counts[last];
+		System.arraycopy(regionsLo, last * REGIONS, regionsLo, next * REGIONS, counts[last]);
+		System.arraycopy(regionsHi, last * REGIONS, regionsHi, next * REGIONS, counts[last]);
+		System.arraycopy(sizes, last * REGIONS, sizes, next * REGIONS, counts[last]);
+		// an arrow shot back to the starting square leaves it filled
+		if (from != arrow)
+		{
+			free(next, from);
+			fill(next, arrow);
+		}
+		fill(next, to);
+		summarized[next] = false;
+	}
+
+	// joins the regions around a freed square into one
+	private void free (int layer, int sq)
+	{
+		BitBoard around = AmazonBoard.neighbours[sq];
+		long lo = loBit(sq), hi = hiBit(sq);
+		int first = layer * REGIONS;
+		for (int r = first; r < first + counts[layer]; r++)
+		{
+			if ((regionsLo[r] & around.lo) != 0 || (regionsHi[r] & around.hi) != 0)
+			{
+				lo |= regionsLo[r];
+				hi |= regionsHi[r];
+				remove(layer, r--);
+			}
+		}
+		int r = first + counts[layer]++;
+		regionsLo[r] = lo;
+		regionsHi[r] = hi;
+		sizes[r] = Long.bitCount(lo) + Long.bitCount(hi);
+	}
+
+	// takes a filled square out of its region, splitting the region if the square may have joined its parts
+	private void fill (int layer, int sq)
+	{
+		long bitLo = loBit(sq), bitHi = hiBit(sq);
+		int r = layer * REGIONS;
+		while ((regionsLo[r] & bitLo) == 0 && (regionsHi[r] & bitHi) == 0)
+		{
+			r++;
+		}
+		long lo = regionsLo[r] & ~bitLo, hi = regionsHi[r] & ~bitHi;
+		// paths through the square can go around it, unless its free neighbours are apart
+		int ring = 0;
+		for (int i = 0; i < RING; i++)
+		{
+			int neighbour = rings[sq][i];
+			if (neighbour >= 0 && ((lo & loBit(neighbour)) != 0 || (hi & hiBit(neighbour)) != 0))
+			{
+				ring |= 1 << i;
+			}
+		}
+		if (RING_JOINED[ring])
+		{
+			regionsLo[r] = lo;
+			regionsHi[r] = hi;
+			if (--sizes[r] == 0)
+			{
+				remove(layer, r);
+			}
+			return;
+		}
+		remove(layer, r);
+		split(layer, lo, hi);
+	}
+
+	// removes a region, moving the last region of the layer into its place
+	private void remove (int layer, int r)
+	{
+		int last = layer * REGIONS + --counts[layer];
+		regionsLo[r] = regionsLo[last];
+		regionsHi[r] = regionsHi[last];
+		sizes[r] = sizes[last];
+	}
+
+	/**
+	 * Drops the regions of the action applied at ply.
+	 *
+	 * @param board the board, the action already undone
+	 * @param ply the number of marked positions before the action
+	 */
+	void undo (AmazonBoard board, int ply)
+	{
+		// a clone has no layers from before it was made
+		if (ply < base)
+		{
+			init(board);
+		}
+	}
+
+	/**
+	 * Copies the current regions, without the layers of earlier plies.
+	 *
+	 * @param other the instance to copy
+	 * @param ply the number of marked positions of the board
+	 */
+	void copy (AmazonRegions other, int ply)
+	{
+		int layer = ply - other.base;
+		base = ply;
+		counts[0] = other.counts[layer];
+		System.arraycopy(other.regionsLo, layer * REGIONS, regionsLo, 0, counts[0]);
+		System.arraycopy(other.regionsHi, layer * REGIONS, regionsHi, 0, counts[0]);
+		System.arraycopy(other.sizes, layer * REGIONS, sizes, 0, counts[0]);
+		System.arraycopy(other.owners, layer * REGIONS, owners, 0, counts[0]);
+		System.arraycopy(other.sharing, layer * QUEENS, sharing, 0, QUEENS);
+		enclosed[0] = other.enclosed[layer];
+		summarized[0] = other.summarized[layer];
+	}
+
+	/**
+	 * @param board the board
+	 * @param ply the number of marked positions of the board
+	 * @return if no region is next to queens of both sides
+	 */
+	boolean isEnclosed (AmazonBoard board, int ply)
+	{
+		return enclosed[summary(board, ply)];
+	}
+
+	/**
+	 * @param ply the number of marked positions of the board
+	 * @return the number of regions
+	 */
+	int count (int ply)
+	{
+		return counts[ply - base];
+	}
+
+	/**
+	 * @param ply the number of marked positions of the board
+	 * @param region the index of the region, less than count(ply)
+	 * @return the number of free squares in the region
+	 */
+	int size (int ply, int region)
+	{
+		return sizes[(ply - base) * REGIONS + region];
+	}
+
+	/**
+	 * @param ply the number of marked positions of the board
+	 * @param region the index of the region, less than count(ply)
+	 * @param squares receives the free squares of the region
+	 */
+	void squares (int ply, int region, BitBoard squares)
+	{
+		squares.lo = regionsLo[(ply - base) * REGIONS + region];
+		squares.hi = regionsHi[(ply - base) * REGIONS + region];
+	}
+
+	/**
+	 * @param board the board
+	 * @param ply the number of marked positions of the board
+	 * @param region the index of the region, less than count(ply)
+	 * @return the slot mask of the queens next to the region
+	 */
+	int owners (AmazonBoard board, int ply, int region)
+	{
+		return owners[summary(board, ply) * REGIONS + region];
+	}
+
+	/**
+	 * @param board the board
+	 * @param ply the number of marked positions of the board
+	 * @param slot the queen's slot
+	 * @return the slot mask of the queens sharing a region with the queen, itself included if it has a region
+	 */
+	int sharing (AmazonBoard board, int ply, int slot)
+	{
+		return sharing[summary(board, ply) * QUEENS + slot];
+	}
+
+	/**
+	 * @param role the role
+	 * @param queen the index of the queen in the role's queens
+	 * @return the queen's slot
+	 */
+	static int slot (AmazonRole role, int queen)
+	{
+		return role == AmazonRole.WHITE ? queen : queen + 4;
+	}
+
+	// appends the king-connected components of the given free squares to the layer
+	private void split (int layer, long lo, long hi)
+	{
+		int r = layer * REGIONS + counts[layer];
+		while ((lo | hi) != 0)
+		{
+			int sq = lo != 0 ? Long.numberOfTrailingZeros(lo) : 64 + Long.numberOfTrailingZeros(hi);
+			AmazonEndgame.fill(sq, lo, hi, component);
+			regionsLo[r] = component.lo;
+			regionsHi[r] = component.hi;
+			sizes[r] = Long.bitCount(component.lo) + Long.bitCount(component.hi);
+			r++;
+			lo &= ~component.lo;
+			hi &= ~component.hi;
+		}
+		counts[layer] = r - layer * REGIONS;
+	}
+
+	// the layer of ply, its owners and what follows from them worked out
+	private int summary (AmazonBoard board, int ply)
+	{
+		int layer = ply - base;
+		if (!summarized[layer])
+		{
+			summarize(board, layer);
+			summarized[layer] = true;
+		}
+		return layer;
+	}
+
+	// works out the owners of every region of the layer, and what follows from them
+	private void summarize (AmazonBoard board, int layer)
+	{
+		for (int slot = 0; slot < QUEENS; slot++)
+		{
+			byte[] q = board.getQueens(slot < 4 ? AmazonRole.WHITE : AmazonRole.BLACK)[slot & 3];
+			BitBoard around = AmazonBoard.neighbours[AmazonBoard.square(q[0], q[1])];
+			aroundLo[slot] = around.lo;
+			aroundHi[slot] = around.hi;
+		}
+		Arrays.fill(sharing, layer * QUEENS, (layer + 1) * QUEENS, 0);
+		boolean isEnclosed = true;
+		for (int r = layer * REGIONS, end = r + counts[layer]; r < end; r++)
+		{
+			int mask = 0;
+			for (int slot = 0; slot < QUEENS; slot++)
+			{
+				if ((regionsLo[r] & aroundLo[slot]) != 0 || (regionsHi[r] & aroundHi[slot]) != 0)
+				{
+					mask |= 1 << slot;
+				}
+			}
+			owners[r] = mask;
+			for (int slot = 0; slot < QUEENS; slot++)
+			{
+				if ((mask & (1 << slot)) != 0)
+				{
+					sharing[layer * QUEENS + slot] |= mask;
+				}
+			}
+			isEnclosed &= (mask & 0x0F) == 0 || (mask & 0xF0) == 0;
+		}
+		enclosed[layer] = isEnclosed;
+	}
+
+	private void ensureLayers (int layers)
+	{
+		if (layers <= counts.length)
+		{
+			return;
+		}
+		int length = Math.max(layers, counts.length * 2);
+		counts = Arrays.copyOf(counts, length);
+		regionsLo = Arrays.copyOf(regionsLo, length * REGIONS);
+		regionsHi = Arrays.copyOf(regionsHi, length * REGIONS);
+		sizes = Arrays.copyOf(sizes, length * REGIONS);
+		owners = Arrays.copyOf(owners, length * REGIONS);
+		sharing = Arrays.copyOf(sharing, length * QUEENS);
+		enclosed = Arrays.copyOf(enclosed, length);
+		summarized = Arrays.copyOf(summarized, length);
+	}
+}
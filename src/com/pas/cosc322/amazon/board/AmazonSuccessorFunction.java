@@ -2,18 +2,20 @@ package com.pas.cosc322.amazon.board;
 
 import static com.pas.cosc322.amazon.main.ProjectConstants.maxExplorations;
 
-import java.util.LinkedList;
-import java.util.PriorityQueue;
-import java.util.Queue;
-
 import com.pas.cosc322.amazon.player.AmazonMove;
 import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.MoveStack;
 
 /**
  * Generates the successor actions for a given board and role.
  * This function only returns a portion of all possible actions;
  * it was found that 'bad' moves generally do not turn out to be 'good'
  * moves in Amazons.
+ * <p>
+ * Actions are ordered in stages: the hash action from the transposition
+ * table first, then the killer actions of the ply, then the rest by history
+ * score plus a cheap local heuristic.  Only a short list of the best cheaply
+ * ordered actions get a full evaluation before the final cut.
  * 
  * @author Paul
  * @author Sam
@@ -21,68 +23,154 @@ import com.pas.cosc322.amazon.player.AmazonRole;
  */
 class AmazonSuccessorFunction
 {
+	/** ordering score of the hash action */
+	private static final int HASH_SCORE = Integer.MAX_VALUE;
+	/** ordering score of a killer action (plus one for the newest killer) */
+	private static final int KILLER_SCORE = 1 << 29;
+	/** actions given a full evaluation, as a multiple of the actions kept */
+	private static final int SHORTLIST_FACTOR = 2;
+	
 	private AmazonBoard board;
 	private AmazonRole role;
+	private MoveStack moves;
+	
+	private int hashAction;
+	private long occupiedLo, occupiedHi, ownLo, ownHi, oppLo, oppHi;
 	
-	private PriorityQueue<AmazonMove> actions = new PriorityQueue<AmazonMove>();
+	/**
+	 * Fills the (empty) top frame of moves with the best maxExplorations actions for role, best first.
+	 * 
+	 * @param board the board
+	 * @param role the role to generate actions for
+	 * @param moves the move stack to fill
+	 * @return the number of actions appended
+	 */
+	public int generateSuccessorActions (AmazonBoard board, AmazonRole role, MoveStack moves)
+	{
+		return generateSuccessorActions(board, role, moves, maxExplorations);
+	}
 	
-	public Queue<AmazonMove> generateSuccessorActions (AmazonBoard board, AmazonRole role)
+	/**
+	 * Fills the (empty) top frame of moves with the best maxActions actions for role, best first.
+	 * 
+	 * @param board the board
+	 * @param role the role to generate actions for
+	 * @param moves the move stack to fill
+	 * @param maxActions the most actions to keep
+	 * @return the number of actions appended
+	 */
+	public int generateSuccessorActions (AmazonBoard board, AmazonRole role, MoveStack moves, int maxActions)
 	{
+		MoveGenerationEvent event = new MoveGenerationEvent();
+		event.begin();
 		this.board = board;
 		this.role = role;
+		this.moves = moves;
+		hashAction = moves.hashAction();
+		occupiedLo = board.getOccupiedBits().lo;
+		occupiedHi = board.getOccupiedBits().hi;
+		ownLo = board.getQueenBits(role).lo;
+		ownHi = board.getQueenBits(role).hi;
+		oppLo = board.getQueenBits(role.other()).lo;
+		oppHi = board.getQueenBits(role.other()).hi;
 		// calculate each queens possible moves
 		for (byte[] queen : board.getQueens(role))
 		{
-			for (byte[] dir : AmazonBoard.dirs)
+			int from = AmazonBoard.square(queen[0], queen[1]);
+			for (byte[][] ray : AmazonBoard.rays)
 			{
-				calculateQueenMoves(queen, dir[0], dir[1]);
+				calculateQueenMoves(from, ray[from]);
 			}
 		}
-		// to save time and memory, only return a portion of the actions
-		Queue<AmazonMove> toReturn = new LinkedList<AmazonMove>();
-		for (int i = 0; i < maxExplorations; i++)
+		// only the short list of cheaply ordered actions are worth a full evaluation
+		moves.keepBest((int) Math.min(Integer.MAX_VALUE, (long) maxActions * SHORTLIST_FACTOR));
+		for (int i = moves.begin(); i < moves.end(); i++)
 		{
-			if (actions.isEmpty())
+			if (moves.score(i) < KILLER_SCORE)
 			{
-				break;
+				int move = moves.action(i);
+				board.applyAction(move);
+				moves.setScore(i, board.evaluate(role));
+				board.undoAction(move);
 			}
-			toReturn.add(actions.remove());
 		}
-		actions.clear();
+		// to save time and memory, only keep a portion of the actions
+		moves.keepBest(maxActions);
+		this.moves = null;
 		this.role = null;
 		this.board = null;
-		return toReturn;
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.role = role.toString();
+			event.turn = board.getMarkedPos();
+			event.maxActions = maxActions;
+			event.actions = moves.size();
+			event.commit();
+		}
+		return moves.size();
 	}
 	
-	private void calculateQueenMoves (byte[] queen, byte dr, byte dc)
+	private void calculateQueenMoves (int from, byte[] ray)
 	{
-		byte row = (byte) (queen[0] + dr), col = (byte) (queen[1] + dc);
 		// calculate the possible arrow shots
-		while (board.inBounds(row, col) && board.posFree(row, col))
+		for (byte to : ray)
 		{
-			for (byte[] dir : AmazonBoard.dirs)
+			if (!board.posFree(to))
+			{
+				break;
+			}
+			for (byte[][] arrowRay : AmazonBoard.rays)
 			{
-				calculateArrowShots(queen, row, col, dir[0], dir[1]);
+				calculateArrowShots(from, to, arrowRay[to]);
 			}
-			row += dr;
-			col += dc;
 		}
 	}
 	
-	private void calculateArrowShots (byte[] queen, byte qfr, byte qfc, byte dr, byte dc)
+	private void calculateArrowShots (int from, int to, byte[] ray)
 	{
-		byte row = (byte) (qfr + dr), col = (byte) (qfc + dc);
-		// the last condition is for the special case where a queen an arrow to where it was initially
-		while (board.inBounds(row, col) && (board.posFree(row, col) || (row == queen[0] && col == queen[1])))
+		// occupancy once the queen has moved
+		long movedLo = BitBoard.loBit(from) ^ BitBoard.loBit(to), movedHi = BitBoard.hiBit(from) ^ BitBoard.hiBit(to);
+		long occLo = occupiedLo ^ movedLo, occHi = occupiedHi ^ movedHi;
+		long queensLo = ownLo ^ movedLo, queensHi = ownHi ^ movedHi;
+		BitBoard around = AmazonBoard.neighbours[to];
+		// the second condition is for the special case where a queen shoots an arrow to where it was initially
+		for (byte arrow : ray)
 		{
-			// evaluate the actions v value for comparison purposes.  This way the search evaluates better moves first.
-			AmazonMove move = new AmazonMove(role, queen[0], queen[1], qfr, qfc, row, col);
-			board.applyAction(move);
-			move.v = board.evaluate(role);
-			board.undoAction(move);
-			actions.add(move);
-			row += dr;
-			col += dc;
+			if (!board.posFree(arrow) && arrow != from)
+			{
+				break;
+			}
+			int move = AmazonMove.pack(role, from, to, arrow);
+			int score;
+			if (move == hashAction)
+			{
+				score = HASH_SCORE;
+			}
+			else
+			{
+				int killer = moves.killer(move);
+				if (killer > 0)
+				{
+					score = KILLER_SCORE + killer;
+				}
+				else
+				{
+					score = moves.history(move) + localScore(around, AmazonBoard.neighbours[arrow],
+							occLo | BitBoard.loBit(arrow), occHi | BitBoard.hiBit(arrow), queensLo, queensHi);
+				}
+			}
+			moves.add(move, score);
 		}
 	}
+	
+	private int localScore (BitBoard aroundQueen, BitBoard aroundArrow, long occLo, long occHi, long queensLo, long queensHi)
+	{
+		// room for the moved queen to breathe
+		int free = Long.bitCount(aroundQueen.lo & ~occLo) + Long.bitCount(aroundQueen.hi & ~occHi);
+		// arrows that hem in opposing queens are good, ones that hem in our own are not
+		int opp = Long.bitCount(aroundArrow.lo & oppLo) + Long.bitCount(aroundArrow.hi & oppHi);
+		int own = Long.bitCount(aroundArrow.lo & queensLo) + Long.bitCount(aroundArrow.hi & queensHi);
+		return 4 * free + 6 * opp - 4 * own;
+	}
 }
@@ -0,0 +1,407 @@
+package com.pas.cosc322.amazon.board;
+
+import static com.pas.cosc322.amazon.board.BitBoard.HI_MASK;
+import static com.pas.cosc322.amazon.board.BitBoard.hiBit;
+import static com.pas.cosc322.amazon.board.BitBoard.loBit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.PackedAction;
+
+/**
+ * A read-only tablebase of small regions, mapped into memory from its file.
+ * <p>
+ * A region is a king-connected group of free squares holding one player's
+ * queens, walled off from the other player.  What it is worth (the most
+ * moves the queens can make in it) depends only on its shape, so every
+ * region up to a few free squares is solved offline (see
+ * AmazonTablebaseGenerator) and stored once for all its translations,
+ * rotations and reflections.  A region is looked up by turning it into its
+ * canonical form, the least of its eight symmetric images moved to the
+ * corner of the board, and hashing that into an open addressing table.
+ * Each entry holds the whole canonical form, so distinct regions whose
+ * hashes collide are told apart, with the region's value and a best move
+ * in canonical squares, which is mapped back onto the board.
+ * <p>
+ * The file is big-endian:
+ * <pre>
+ * header int magic, int version, int max squares, int max queens, int slots, int entries
+ * slots  long squares lo, long squares hi, long queens lo, long queens hi, int data    (squares lo 0 is an empty slot)
+ * </pre>
+ * The data packs the value (bits 0-6) and the best move's queen start
+ * (bits 7-13), queen end (bits 14-20) and arrow (bits 21-27) squares.
+ * A canonical form always holds the corner square, so its squares lo word
+ * is never 0.
+ */
+public class AmazonTablebase
+{
+	/** "AMZT" */
+	public static final int MAGIC = 0x414D5A54;
+	public static final int VERSION = 2;
+	/** probe result of a region that is not in the tablebase */
+	public static final int MISSING = -1;
+
+	static final int HEADER_SIZE = 24;
+	static final int SLOT_SIZE = 36;
+
+	private static final int SQUARE_MASK = (1 << 7) - 1;
+	private static final int LAST = AmazonBoard.NUM_ROWS - 1;
+
+	// the tablebase the endgame and the evaluation probe, if one was loaded
+	private static volatile AmazonTablebase loaded;
+
+	private final MappedByteBuffer buffer;
+	private final int maxSquares;
+	private final int maxQueens;
+	private final int mask;
+	private final int entries;
+
+	// each thread reuses one canonical form and one region for every probe
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>()
+	{
+		@Override
+		protected Scratch initialValue ()
+		{
+			return new Scratch();
+		}
+	};
+
+	/**
+	 * Constructor.  Maps the tablebase, the file is not locked or written.
+	 *
+	 * @param file the tablebase
+	 * @throws IOException if the file can't be read or is not a tablebase
+	 */
+	public AmazonTablebase (File file) throws IOException
+	{
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try
+		{
+			// the mapping outlives the channel
+			FileChannel channel = in.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			in.close();
+		}
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+		{
+			throw new IOException(file+" is not a version "+VERSION+" tablebase!");
+		}
+		maxSquares = buffer.getInt(8);
+		maxQueens = buffer.getInt(12);
+		int slots = buffer.getInt(16);
+		entries = buffer.getInt(20);
+		if (slots <= 0 || Integer.bitCount(slots) != 1 || buffer.capacity() != HEADER_SIZE + (long) slots * SLOT_SIZE)
+		{
+			throw new IOException(file+" is truncated!");
+		}
+		mask = slots - 1;
+	}
+
+	/**
+	 * Loads the tablebase probed by every endgame solve and evaluation.
+	 *
+	 * @param file the tablebase
+	 * @throws IOException if the file can't be read or is not a tablebase
+	 */
+	public static void load (File file) throws IOException
+	{
+		loaded = new AmazonTablebase(file);
+	}
+
+	/**
+	 * @return the loaded tablebase, or null if there is none
+	 */
+	public static AmazonTablebase get ()
+	{
+		return loaded;
+	}
+
+	/**
+	 * @return the most free squares of a region in the tablebase
+	 */
+	public int getMaxSquares ()
+	{
+		return maxSquares;
+	}
+
+	/**
+	 * @return the most queens of a region in the tablebase
+	 */
+	public int getMaxQueens ()
+	{
+		return maxQueens;
+	}
+
+	/**
+	 * @return the number of regions in the tablebase
+	 */
+	public int size ()
+	{
+		return entries;
+	}
+
+	/**
+	 * Looks up a region.
+	 *
+	 * @param freeLo the free squares of the region, low word
+	 * @param freeHi the free squares of the region, high word
+	 * @param queensLo the queens in the region, low word
+	 * @param queensHi the queens in the region, high word
+	 * @return the region's data with its move on the board's squares, or MISSING
+	 */
+	public int probe (long freeLo, long freeHi, long queensLo, long queensHi)
+	{
+		if (Long.bitCount(freeLo) + Long.bitCount(freeHi) > maxSquares || Long.bitCount(queensLo) + Long.bitCount(queensHi) > maxQueens)
+		{
+			return MISSING;
+		}
+		long[] form = scratch.get().form;
+		int symmetry = canonicalize(freeLo | queensLo, freeHi | queensHi, queensLo, queensHi, form);
+		for (int slot = (int) key(form) & mask; ; slot = (slot + 1) & mask)
+		{
+			int offset = HEADER_SIZE + slot * SLOT_SIZE;
+			long stored = buffer.getLong(offset);
+			if (stored == 0)
+			{
+				return MISSING;
+			}
+			if (stored == form[0] && buffer.getLong(offset + 8) == form[1]
+					&& buffer.getLong(offset + 16) == form[2] && buffer.getLong(offset + 24) == form[3])
+			{
+				int data = buffer.getInt(offset + 32);
+				if (value(data) == 0)
+				{
+					return data;
+				}
+				return data(value(data), restore(symmetry, from(data)), restore(symmetry, to(data)), restore(symmetry, arrow(data)));
+			}
+		}
+	}
+
+	/**
+	 * The most moves a role can make in an enclosed position, if every
+	 * region holding its queens is in the tablebase.
+	 *
+	 * @param board an enclosed board
+	 * @param role the role
+	 * @return the number of moves, or MISSING
+	 */
+	public int moves (AmazonBoard board, AmazonRole role)
+	{
+		long freeLo = ~board.getOccupiedBits().lo, freeHi = ~board.getOccupiedBits().hi & HI_MASK;
+		BitBoard queens = board.getQueenBits(role);
+		BitBoard region = scratch.get().region;
+		int total = 0;
+		long restLo = queens.lo, restHi = queens.hi;
+		while ((restLo | restHi) != 0)
+		{
+			int sq = restLo != 0 ? Long.numberOfTrailingZeros(restLo) : 64 + Long.numberOfTrailingZeros(restHi);
+			AmazonEndgame.fill(sq, freeLo | queens.lo, freeHi | queens.hi, region);
+			int data = probe(freeLo & region.lo, freeHi & region.hi, queens.lo & region.lo, queens.hi & region.hi);
+			if (data == MISSING)
+			{
+				return MISSING;
+			}
+			total += value(data);
+			restLo &= ~region.lo;
+			restHi &= ~region.hi;
+		}
+		return total;
+	}
+
+	/**
+	 * @param data a region's data
+	 * @return the most moves that can be made in the region
+	 */
+	public static int value (int data)
+	{
+		return data & SQUARE_MASK;
+	}
+
+	/**
+	 * @param data a region's data
+	 * @param role the role of the region's queens
+	 * @return the packed best move, or NO_ACTION if the region has no moves
+	 */
+	public static int action (int data, AmazonRole role)
+	{
+		return value(data) == 0 ? PackedAction.NO_ACTION : AmazonMove.pack(role, from(data), to(data), arrow(data));
+	}
+
+	static int data (int value, int from, int to, int arrow)
+	{
+		return value | from << 7 | to << 14 | arrow << 21;
+	}
+
+	private static int from (int data)
+	{
+		return data >>> 7 & SQUARE_MASK;
+	}
+
+	private static int to (int data)
+	{
+		return data >>> 14 & SQUARE_MASK;
+	}
+
+	private static int arrow (int data)
+	{
+		return data >>> 21 & SQUARE_MASK;
+	}
+
+	/**
+	 * The hash of a canonical form, which picks its first slot.
+	 */
+	static long key (long[] form)
+	{
+		long h = form[0] * 0x9E3779B97F4A7C15L + form[1];
+		h = (h ^ (h >>> 29)) * 0xBF58476D1CE4E5B9L + form[2];
+		h = (h ^ (h >>> 32)) * 0x94D049BB133111EBL + form[3];
+		return h ^ (h >>> 31);
+	}
+
+	/**
+	 * Finds the canonical form of a region: the least of its eight rotations
+	 * and reflections, each moved to the top left corner of the board.
+	 *
+	 * @param squaresLo the squares of the region, queens included, low word
+	 * @param squaresHi the squares of the region, queens included, high word
+	 * @param queensLo the queens in the region, low word
+	 * @param queensHi the queens in the region, high word
+	 * @param form receives the canonical squares and queens, low and high words
+	 * @return the symmetry and the corner it was moved from, to give to restore
+	 */
+	static int canonicalize (long squaresLo, long squaresHi, long queensLo, long queensHi, long[] form)
+	{
+		int best = -1;
+		for (int symmetry = 0; symmetry < 8; symmetry++)
+		{
+			// the transformed region's top row and left column
+			int top = LAST, left = LAST;
+			for (int sq = next(squaresLo, squaresHi, 0); sq >= 0; sq = next(squaresLo, squaresHi, sq + 1))
+			{
+				int moved = transform(symmetry, sq);
+				top = Math.min(top, moved / AmazonBoard.NUM_COLS);
+				left = Math.min(left, moved % AmazonBoard.NUM_COLS);
+			}
+			int shift = top * AmazonBoard.NUM_COLS + left;
+			long lo = 0, hi = 0, qLo = 0, qHi = 0;
+			for (int sq = next(squaresLo, squaresHi, 0); sq >= 0; sq = next(squaresLo, squaresHi, sq + 1))
+			{
+				int moved = transform(symmetry, sq) - shift;
+				lo |= loBit(moved);
+				hi |= hiBit(moved);
+				if ((queensLo & loBit(sq)) != 0 || (queensHi & hiBit(sq)) != 0)
+				{
+					qLo |= loBit(moved);
+					qHi |= hiBit(moved);
+				}
+			}
+			if (best < 0 || less(lo, hi, qLo, qHi, form))
+			{
+				form[0] = lo;
+				form[1] = hi;
+				form[2] = qLo;
+				form[3] = qHi;
+				best = symmetry | shift << 3;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Maps a square of a canonical form back onto the board.
+	 *
+	 * @param symmetry the result of canonicalize
+	 * @param sq the canonical square
+	 * @return the board's square
+	 */
+	static int restore (int symmetry, int sq)
+	{
+		int moved = sq + (symmetry >>> 3);
+		int row = moved / AmazonBoard.NUM_COLS, col = moved % AmazonBoard.NUM_COLS;
+		// undo the reflections, then the transposition
+		if ((symmetry & 1) != 0)
+		{
+			row = LAST - row;
+		}
+		if ((symmetry & 2) != 0)
+		{
+			col = LAST - col;
+		}
+		return (symmetry & 4) != 0 ? AmazonBoard.square(col, row) : AmazonBoard.square(row, col);
+	}
+
+	private static int transform (int symmetry, int sq)
+	{
+		int row = sq / AmazonBoard.NUM_COLS, col = sq % AmazonBoard.NUM_COLS;
+		// transpose, then reflect the rows and the columns
+		if ((symmetry & 4) != 0)
+		{
+			int swap = row;
+			row = col;
+			col = swap;
+		}
+		if ((symmetry & 1) != 0)
+		{
+			row = LAST - row;
+		}
+		if ((symmetry & 2) != 0)
+		{
+			col = LAST - col;
+		}
+		return AmazonBoard.square(row, col);
+	}
+
+	private static boolean less (long lo, long hi, long qLo, long qHi, long[] form)
+	{
+		if (hi != form[1])
+		{
+			return Long.compareUnsigned(hi, form[1]) < 0;
+		}
+		if (lo != form[0])
+		{
+			return Long.compareUnsigned(lo, form[0]) < 0;
+		}
+		if (qHi != form[3])
+		{
+			return Long.compareUnsigned(qHi, form[3]) < 0;
+		}
+		return Long.compareUnsigned(qLo, form[2]) < 0;
+	}
+
+	/**
+	 * @return the first set square at or after sq, or -1
+	 */
+	private static int next (long lo, long hi, int sq)
+	{
+		if (sq < 64)
+		{
+			long rest = lo & (-1L << sq);
+			if (rest != 0)
+			{
+				return Long.numberOfTrailingZeros(rest);
+			}
+			sq = 64;
+		}
+		long rest = sq - 64 < 64 ? hi & (-1L << (sq - 64)) : 0;
+		return rest != 0 ? 64 + Long.numberOfTrailingZeros(rest) : -1;
+	}
+
+	/**
+	 * The buffers a thread probes with.
+	 */
+	private static final class Scratch
+	{
+		final long[] form = new long[4];
+		final BitBoard region = new BitBoard();
+	}
+}
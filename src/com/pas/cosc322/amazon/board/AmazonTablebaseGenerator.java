@@ -0,0 +1,283 @@
+package com.pas.cosc322.amazon.board;
+
+import static com.pas.cosc322.amazon.board.BitBoard.hiBit;
+import static com.pas.cosc322.amazon.board.BitBoard.loBit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+
+/**
+ * Generates the tablebase of small regions offline.
+ * <p>
+ * Every shape of king-connected squares is grown a square at a time from a
+ * single square, keeping one canonical form per shape.  Each shape is then
+ * given every placement of one to a few queens with no more than the
+ * largest number of free squares left over, and each canonical region
+ * found is solved exactly by the endgame solver.  The regions are written
+ * into an open addressing table at most half full, see AmazonTablebase.
+ * <p>
+ * Usage: AmazonTablebaseGenerator file max-squares max-queens
+ */
+public class AmazonTablebaseGenerator
+{
+	private static final int[][] KING_STEPS = {{-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}};
+
+	private int maxSquares;
+	private int maxQueens;
+	private AmazonEndgame endgame = new AmazonEndgame(1);
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxSquares the most free squares of a region
+	 * @param maxQueens the most queens in a region
+	 */
+	public AmazonTablebaseGenerator (int maxSquares, int maxQueens)
+	{
+		this.maxSquares = maxSquares;
+		this.maxQueens = maxQueens;
+	}
+
+	/**
+	 * Solves every region.
+	 *
+	 * @return the data of each canonical region, see AmazonTablebase
+	 */
+	public Map<Form, Integer> generate ()
+	{
+		Map<Form, Integer> regions = new LinkedHashMap<Form, Integer>();
+		long[] form = new long[4];
+		// the shapes of one size, grown from the shapes of the size before
+		Set<Form> shapes = new LinkedHashSet<Form>();
+		AmazonTablebase.canonicalize(loBit(0), hiBit(0), 0, 0, form);
+		shapes.add(new Form(form));
+		for (int size = 1; size <= maxSquares + maxQueens; size++)
+		{
+			for (Form shape : shapes)
+			{
+				int[] squares = shape.squares();
+				// the leftover squares are free, there must not be too many of them
+				for (int queens = Math.max(1, size - maxSquares); queens <= Math.min(maxQueens, size); queens++)
+				{
+					place(squares, shape, queens, 0, 0, 0, regions, form);
+				}
+			}
+			if (size < maxSquares + maxQueens)
+			{
+				shapes = grow(shapes, form);
+			}
+			System.out.println("squares:"+size+" shapes:"+shapes.size()+" regions:"+regions.size());
+		}
+		return regions;
+	}
+
+	private void place (int[] squares, Form shape, int queens, int start, long queensLo, long queensHi, Map<Form, Integer> regions, long[] form)
+	{
+		if (queens == 0)
+		{
+			// the shape is canonical but a placement of queens on it may not be
+			AmazonTablebase.canonicalize(shape.lo, shape.hi, queensLo, queensHi, form);
+			Form region = new Form(form);
+			if (!regions.containsKey(region))
+			{
+				long result = endgame.solveRegion(AmazonRole.WHITE, region.lo & ~region.queensLo, region.hi & ~region.queensHi, region.queensLo, region.queensHi);
+				int value = (int) result, action = (int) (result >>> 32);
+				regions.put(region, value == 0 ? 0 : AmazonTablebase.data(value, AmazonMove.from(action), AmazonMove.to(action), AmazonMove.arrow(action)));
+			}
+			return;
+		}
+		for (int i = start; i < squares.length; i++)
+		{
+			place(squares, shape, queens - 1, i + 1, queensLo | loBit(squares[i]), queensHi | hiBit(squares[i]), regions, form);
+		}
+	}
+
+	private Set<Form> grow (Set<Form> shapes, long[] form)
+	{
+		Set<Form> grown = new LinkedHashSet<Form>();
+		int[] rows = new int[BitBoard.SIZE], cols = new int[BitBoard.SIZE];
+		for (Form shape : shapes)
+		{
+			int[] squares = shape.squares();
+			for (int sq : squares)
+			{
+				for (int[] step : KING_STEPS)
+				{
+					int row = sq / AmazonBoard.NUM_COLS + step[0], col = sq % AmazonBoard.NUM_COLS + step[1];
+					if (row >= 0 && col >= 0 && row < AmazonBoard.NUM_ROWS && col < AmazonBoard.NUM_COLS
+							&& shape.contains(AmazonBoard.square(row, col)))
+					{
+						continue;
+					}
+					// the new square may lie above or left of the corner, move the shape down and right to fit it
+					int n = 0, top = row, left = col, bottom = row, right = col;
+					for (int other : squares)
+					{
+						rows[n] = other / AmazonBoard.NUM_COLS;
+						cols[n] = other % AmazonBoard.NUM_COLS;
+						top = Math.min(top, rows[n]);
+						left = Math.min(left, cols[n]);
+						bottom = Math.max(bottom, rows[n]);
+						right = Math.max(right, cols[n]);
+						n++;
+					}
+					if (bottom - top >= AmazonBoard.NUM_ROWS || right - left >= AmazonBoard.NUM_COLS)
+					{
+						continue;
+					}
+					long lo = 0, hi = 0;
+					rows[n] = row;
+					cols[n] = col;
+					for (int i = 0; i <= n; i++)
+					{
+						int moved = AmazonBoard.square(rows[i] - top, cols[i] - left);
+						lo |= loBit(moved);
+						hi |= hiBit(moved);
+					}
+					AmazonTablebase.canonicalize(lo, hi, 0, 0, form);
+					grown.add(new Form(form));
+				}
+			}
+		}
+		return grown;
+	}
+
+	/**
+	 * Writes a tablebase.
+	 *
+	 * @param file the tablebase to write, replaced if it exists
+	 * @param regions the data of each canonical region
+	 * @throws IOException if the file can't be written
+	 */
+	public void write (File file, Map<Form, Integer> regions) throws IOException
+	{
+		int slots = Integer.highestOneBit(Math.max(1, regions.size())) << 2;
+		ByteBuffer out = ByteBuffer.allocate(AmazonTablebase.HEADER_SIZE + slots * AmazonTablebase.SLOT_SIZE);
+		out.putInt(AmazonTablebase.MAGIC).putInt(AmazonTablebase.VERSION).putInt(maxSquares).putInt(maxQueens).putInt(slots).putInt(regions.size());
+		long[] form = new long[4];
+		for (Map.Entry<Form, Integer> region : regions.entrySet())
+		{
+			region.getKey().copyTo(form);
+			int slot = (int) AmazonTablebase.key(form) & (slots - 1);
+			// linear probing, the same as the lookup, every region is distinct so the first empty slot is its own
+			while (out.getLong(AmazonTablebase.HEADER_SIZE + slot * AmazonTablebase.SLOT_SIZE) != 0)
+			{
+				slot = (slot + 1) & (slots - 1);
+			}
+			int offset = AmazonTablebase.HEADER_SIZE + slot * AmazonTablebase.SLOT_SIZE;
+			out.putLong(offset, form[0]).putLong(offset + 8, form[1]).putLong(offset + 16, form[2]).putLong(offset + 24, form[3])
+				.putInt(offset + 32, region.getValue());
+		}
+		// the slots were filled in place, write the whole buffer
+		out.rewind();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			while (out.hasRemaining())
+			{
+				channel.write(out);
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	public static void main (String[] args) throws IOException
+	{
+		if (args.length < 3)
+		{
+			System.out.println("Usage: AmazonTablebaseGenerator file max-squares max-queens");
+			return;
+		}
+		File file = new File(args[0]);
+		int maxSquares = Integer.parseInt(args[1].trim());
+		int maxQueens = Integer.parseInt(args[2].trim());
+		if (maxSquares < 1 || maxQueens < 1 || maxQueens > 4)
+		{
+			throw new IllegalArgumentException("max-squares must be > 0 and max-queens must be between 1 and 4!");
+		}
+		long start = System.currentTimeMillis();
+		AmazonTablebaseGenerator generator = new AmazonTablebaseGenerator(maxSquares, maxQueens);
+		Map<Form, Integer> regions = generator.generate();
+		generator.write(file, regions);
+		System.out.println("Wrote "+regions.size()+" regions to "+file+" in "+(System.currentTimeMillis()-start)+"ms");
+		System.exit(0);
+	}
+
+	/**
+	 * A canonical region, or shape when it has no queens.
+	 */
+	static final class Form
+	{
+		private final long lo, hi, queensLo, queensHi;
+
+		public Form (long[] form)
+		{
+			lo = form[0];
+			hi = form[1];
+			queensLo = form[2];
+			queensHi = form[3];
+		}
+
+		void copyTo (long[] form)
+		{
+			form[0] = lo;
+			form[1] = hi;
+			form[2] = queensLo;
+			form[3] = queensHi;
+		}
+
+		boolean contains (int sq)
+		{
+			return (lo & loBit(sq)) != 0 || (hi & hiBit(sq)) != 0;
+		}
+
+		int[] squares ()
+		{
+			int[] squares = new int[Long.bitCount(lo) + Long.bitCount(hi)];
+			int n = 0;
+			for (int sq = 0; sq < BitBoard.SIZE; sq++)
+			{
+				if (contains(sq))
+				{
+					squares[n++] = sq;
+				}
+			}
+			return squares;
+		}
+
+		@Override
+		public boolean equals (Object o)
+		{
+			if (!(o instanceof Form))
+			{
+				return false;
+			}
+			Form other = (Form) o;
+			return lo == other.lo && hi == other.hi && queensLo == other.queensLo && queensHi == other.queensHi;
+		}
+
+		@Override
+		public int hashCode ()
+		{
+			long h = lo * 0x9E3779B97F4A7C15L + hi;
+			h = h * 0x9E3779B97F4A7C15L + queensLo;
+			h = h * 0x9E3779B97F4A7C15L + queensHi;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package com.pas.cosc322.amazon.board;
+
+import static com.pas.cosc322.amazon.board.AmazonBoard.NUM_COLS;
+import static com.pas.cosc322.amazon.board.AmazonBoard.NUM_ROWS;
+
+/**
+ * A 100 bit mask over the squares of the board, held in two 64 bit words.
+ * Squares are indexed in row-major order (row * NUM_COLS + col); squares
+ * 0 - 63 live in the low word and squares 64 - 99 in the high word.
+ */
+public final class BitBoard
+{
+	/** number of squares represented by a mask */
+	public static final int SIZE = NUM_ROWS * NUM_COLS;
+	/** the valid bits of the high word */
+	public static final long HI_MASK = (1L << (SIZE - 64)) - 1;
+
+	/** the square index delta of a step in each direction of AmazonBoard.dirs */
+	public static final int[] DELTA = new int[AmazonBoard.dirs.length];
+	/** the squares a step in each direction may land on without wrapping a row, low words */
+	public static final long[] LANDING_LO = new long[AmazonBoard.dirs.length];
+	/** the squares a step in each direction may land on without wrapping a row, high words */
+	public static final long[] LANDING_HI = new long[AmazonBoard.dirs.length];
+	
+	static
+	{
+		for (int d = 0; d < AmazonBoard.dirs.length; d++)
+		{
+			byte dr = AmazonBoard.dirs[d][0], dc = AmazonBoard.dirs[d][1];
+			DELTA[d] = dr * NUM_COLS + dc;
+			for (int sq = 0; sq < SIZE; sq++)
+			{
+				// a step east can never land in the first column, nor a step west in the last
+				int c = sq % NUM_COLS;
+				if ((dc == 1 && c == 0) || (dc == -1 && c == NUM_COLS - 1))
+				{
+					continue;
+				}
+				LANDING_LO[d] |= loBit(sq);
+				LANDING_HI[d] |= hiBit(sq);
+			}
+		}
+	}
+
+	/** squares 0 - 63 */
+	public long lo;
+	/** squares 64 - 99 */
+	public long hi;
+
+	/**
+	 * Constructor.  Creates an empty mask.
+	 */
+	public BitBoard ()
+	{
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param lo the low word
+	 * @param hi the high word
+	 */
+	public BitBoard (long lo, long hi)
+	{
+		this.lo = lo;
+		this.hi = hi;
+	}
+
+	/**
+	 * @param sq the square
+	 * @return the low word bit of sq, or 0 if the square lives in the high word
+	 */
+	public static long loBit (int sq)
+	{
+		return sq < 64 ? 1L << sq : 0;
+	}
+
+	/**
+	 * @param sq the square
+	 * @return the high word bit of sq, or 0 if the square lives in the low word
+	 */
+	public static long hiBit (int sq)
+	{
+		return sq < 64 ? 0 : 1L << (sq - 64);
+	}
+
+	/**
+	 * Shifts a mask by a square index delta, squares shifted off either end are lost.
+	 * Row wrapping is not handled, mask the result with LANDING_LO for that.
+	 * 
+	 * @param lo the low word of the mask
+	 * @param hi the high word of the mask
+	 * @param delta the square index delta, between -63 and 63
+	 * @return the low word of the shifted mask
+	 */
+	public static long shiftLo (long lo, long hi, int delta)
+	{
+		if (delta >= 0)
+		{
+			return lo << delta;
+		}
+		return (lo >>> -delta) | (hi << (64 + delta));
+	}
+
+	/**
+	 * Shifts a mask by a square index delta, squares shifted off either end are lost.
+	 * Row wrapping is not handled, mask the result with LANDING_HI for that.
+	 * 
+	 * @param lo the low word of the mask
+	 * @param hi the high word of the mask
+	 * @param delta the square index delta, between -63 and 63
+	 * @return the high word of the shifted mask
+	 */
+	public static long shiftHi (long lo, long hi, int delta)
+	{
+		if (delta > 0)
+		{
+			return ((hi << delta) | (lo >>> (64 - delta))) & HI_MASK;
+		}
+		return hi >>> -delta;
+	}
+
+	/**
+	 * @param sq the square
+	 * @return if the square is set
+	 */
+	public boolean get (int sq)
+	{
+		if (sq < 64)
+		{
+			return (lo & (1L << sq)) != 0;
+		}
+		return (hi & (1L << (sq - 64))) != 0;
+	}
+
+	/**
+	 * @param sq the square to set
+	 */
+	public void set (int sq)
+	{
+		lo |= loBit(sq);
+		hi |= hiBit(sq);
+	}
+
+	/**
+	 * @param sq the square to clear
+	 */
+	public void clear (int sq)
+	{
+		lo &= ~loBit(sq);
+		hi &= ~hiBit(sq);
+	}
+
+	/**
+	 * @param sq the square to flip
+	 */
+	public void toggle (int sq)
+	{
+		lo ^= loBit(sq);
+		hi ^= hiBit(sq);
+	}
+
+	/**
+	 * Clears every square.
+	 */
+	public void clear ()
+	{
+		lo = 0;
+		hi = 0;
+	}
+
+	/**
+	 * @param other the mask to copy into this instance
+	 */
+	public void copy (BitBoard other)
+	{
+		lo = other.lo;
+		hi = other.hi;
+	}
+
+	/**
+	 * @return if no square is set
+	 */
+	public boolean isEmpty ()
+	{
+		return (lo | hi) == 0;
+	}
+
+	/**
+	 * @return the number of set squares
+	 */
+	public int cardinality ()
+	{
+		return Long.bitCount(lo) + Long.bitCount(hi);
+	}
+
+	/**
+	 * @param from the square to start searching from (inclusive)
+	 * @return the first set square at or after from, or -1 if there is none
+	 */
+	public int nextSetBit (int from)
+	{
+		if (from < 64)
+		{
+			long word = lo & (-1L << from);
+			if (word != 0)
+			{
+				return Long.numberOfTrailingZeros(word);
+			}
+			from = 64;
+		}
+		if (from < SIZE)
+		{
+			long word = hi & (-1L << (from - 64));
+			if (word != 0)
+			{
+				return 64 + Long.numberOfTrailingZeros(word);
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public BitBoard clone ()
+	{
+		return new BitBoard(lo, hi);
+	}
+
+	@Override
+	public boolean equals (Object o)
+	{
+		if (o instanceof BitBoard)
+		{
+			BitBoard other = (BitBoard) o;
+			return lo == other.lo && hi == other.hi;
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode ()
+	{
+		long h = lo * 31 + hi;
+		return (int) (h ^ (h >>> 32));
+	}
+}
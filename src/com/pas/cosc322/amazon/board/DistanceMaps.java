@@ -0,0 +1,246 @@
+package com.pas.cosc322.amazon.board;
+
+import static com.pas.cosc322.amazon.board.BitBoard.DELTA;
+import static com.pas.cosc322.amazon.board.BitBoard.LANDING_HI;
+import static com.pas.cosc322.amazon.board.BitBoard.LANDING_LO;
+import static com.pas.cosc322.amazon.board.BitBoard.SIZE;
+import static com.pas.cosc322.amazon.board.BitBoard.shiftHi;
+import static com.pas.cosc322.amazon.board.BitBoard.shiftLo;
+
+import com.pas.cosc322.amazon.player.AmazonRole;
+
+/**
+ * Queen-move and king-move distances from each side's queens to every square.
+ * Distances are found with a multi-source breadth-first search that expands
+ * the whole frontier at once over bitboard masks, keeping one mask per
+ * distance (layer).  The king distances of both sides are computed eagerly,
+ * the queen distances only once they are asked for.
+ * <p>
+ * A square's distance counts moves through free squares only; occupied and
+ * unreachable squares are at distance UNREACHABLE.
+ */
+public class DistanceMaps
+{
+	/** distance of a square no queen of the side can reach */
+	public static final byte UNREACHABLE = Byte.MAX_VALUE;
+	
+	private static final int KING = 0;
+	private static final int QUEEN = 1;
+	
+	// layers[metric][role][distance], layer 0 holds the queens themselves
+	private final BitBoard[][][] layers = new BitBoard[2][2][SIZE + 1];
+	private final int[][] depth = new int[2][2];
+	private final BitBoard[][] reach = new BitBoard[2][2];
+	
+	private AmazonBoard board;
+	private boolean queenDone;
+	
+	/**
+	 * Constructor
+	 */
+	public DistanceMaps ()
+	{
+		for (int metric = 0; metric < 2; metric++)
+		{
+			for (int role = 0; role < 2; role++)
+			{
+				for (int d = 0; d <= SIZE; d++)
+				{
+					layers[metric][role][d] = new BitBoard();
+				}
+				reach[metric][role] = new BitBoard();
+			}
+		}
+	}
+	
+	/**
+	 * Computes the distances for a board.  The board must not change while the
+	 * maps are in use, the queen distances are computed from it on demand.
+	 * 
+	 * @param board the board
+	 */
+	public void compute (AmazonBoard board)
+	{
+		this.board = board;
+		search(KING, AmazonRole.WHITE);
+		search(KING, AmazonRole.BLACK);
+		queenDone = false;
+	}
+	
+	/**
+	 * @param role the role
+	 * @return the free squares the role's queens can reach at all; must not be modified
+	 */
+	public BitBoard reach (AmazonRole role)
+	{
+		return reach[KING][role.ordinal()];
+	}
+	
+	/**
+	 * Finds the squares role reaches in fewer king moves than its opponent
+	 * (including squares the opponent cannot reach at all).
+	 * 
+	 * @param role the role
+	 * @param result the mask to store the squares in
+	 * @return result
+	 */
+	public BitBoard closer (AmazonRole role, BitBoard result)
+	{
+		return closer(KING, role, result);
+	}
+	
+	/**
+	 * As closer, but measured in queen moves.
+	 * 
+	 * @param role the role
+	 * @param result the mask to store the squares in
+	 * @return result
+	 */
+	public BitBoard queenCloser (AmazonRole role, BitBoard result)
+	{
+		ensureQueen();
+		return closer(QUEEN, role, result);
+	}
+	
+	/**
+	 * @param role the role
+	 * @param sq the square
+	 * @return the least number of king moves any of role's queens needs to reach sq
+	 */
+	public byte kingDistance (AmazonRole role, int sq)
+	{
+		return distance(KING, role, sq);
+	}
+	
+	/**
+	 * @param role the role
+	 * @param sq the square
+	 * @return the least number of queen moves any of role's queens needs to reach sq
+	 */
+	public byte queenDistance (AmazonRole role, int sq)
+	{
+		ensureQueen();
+		return distance(QUEEN, role, sq);
+	}
+	
+	/**
+	 * @param role the role
+	 * @param distances the array to fill with the king distance of each square
+	 */
+	public void kingDistances (AmazonRole role, byte[] distances)
+	{
+		fill(KING, role, distances);
+	}
+	
+	/**
+	 * @param role the role
+	 * @param distances the array to fill with the queen distance of each square
+	 */
+	public void queenDistances (AmazonRole role, byte[] distances)
+	{
+		ensureQueen();
+		fill(QUEEN, role, distances);
+	}
+	
+	private void ensureQueen ()
+	{
+		if (!queenDone)
+		{
+			search(QUEEN, AmazonRole.WHITE);
+			search(QUEEN, AmazonRole.BLACK);
+			queenDone = true;
+		}
+	}
+	
+	private void search (int metric, AmazonRole role)
+	{
+		BitBoard[] layer = layers[metric][role.ordinal()];
+		BitBoard queens = board.getQueenBits(role);
+		long freeLo = ~board.getOccupiedBits().lo, freeHi = ~board.getOccupiedBits().hi & BitBoard.HI_MASK;
+		long seenLo = 0, seenHi = 0;
+		long frontierLo = queens.lo, frontierHi = queens.hi;
+		layer[0].lo = frontierLo;
+		layer[0].hi = frontierHi;
+		int d = 0;
+		while ((frontierLo | frontierHi) != 0)
+		{
+			long nextLo = 0, nextHi = 0;
+			for (int dir = 0; dir < DELTA.length; dir++)
+			{
+				long lo = frontierLo, hi = frontierHi;
+				// a king takes a single step, a queen keeps sliding through free squares
+				do
+				{
+					long stepLo = shiftLo(lo, hi, DELTA[dir]) & LANDING_LO[dir] & freeLo;
+					hi = shiftHi(lo, hi, DELTA[dir]) & LANDING_HI[dir] & freeHi;
+					lo = stepLo;
+					nextLo |= lo;
+					nextHi |= hi;
+				}
+				while (metric == QUEEN && (lo | hi) != 0);
+			}
+			seenLo |= frontierLo;
+			seenHi |= frontierHi;
+			frontierLo = nextLo & ~seenLo;
+			frontierHi = nextHi & ~seenHi;
+			layer[++d].lo = frontierLo;
+			layer[d].hi = frontierHi;
+		}
+		// the last layer is always empty
+		depth[metric][role.ordinal()] = d - 1;
+		BitBoard reached = reach[metric][role.ordinal()];
+		reached.lo = seenLo & ~queens.lo;
+		reached.hi = seenHi & ~queens.hi;
+	}
+	
+	private BitBoard closer (int metric, AmazonRole role, BitBoard result)
+	{
+		BitBoard[] ours = layers[metric][role.ordinal()];
+		BitBoard[] theirs = layers[metric][role.other().ordinal()];
+		int ourDepth = depth[metric][role.ordinal()], theirDepth = depth[metric][role.other().ordinal()];
+		// walk the layers together, a square is ours if we get there before they have
+		long theirLo = 0, theirHi = 0, lo = 0, hi = 0;
+		for (int d = 1; d <= ourDepth; d++)
+		{
+			if (d <= theirDepth)
+			{
+				theirLo |= theirs[d].lo;
+				theirHi |= theirs[d].hi;
+			}
+			lo |= ours[d].lo & ~theirLo;
+			hi |= ours[d].hi & ~theirHi;
+		}
+		result.lo = lo;
+		result.hi = hi;
+		return result;
+	}
+	
+	private byte distance (int metric, AmazonRole role, int sq)
+	{
+		BitBoard[] layer = layers[metric][role.ordinal()];
+		for (int d = 1; d <= depth[metric][role.ordinal()]; d++)
+		{
+			if (layer[d].get(sq))
+			{
+				return (byte) d;
+			}
+		}
+		return UNREACHABLE;
+	}
+	
+	private void fill (int metric, AmazonRole role, byte[] distances)
+	{
+		BitBoard[] layer = layers[metric][role.ordinal()];
+		for (int sq = 0; sq < SIZE; sq++)
+		{
+			distances[sq] = UNREACHABLE;
+		}
+		for (int d = 1; d <= depth[metric][role.ordinal()]; d++)
+		{
+			for (int sq = layer[d].nextSetBit(0); sq >= 0; sq = layer[d].nextSetBit(sq + 1))
+			{
+				distances[sq] = (byte) d;
+			}
+		}
+	}
+}
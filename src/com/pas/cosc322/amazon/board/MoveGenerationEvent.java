@@ -0,0 +1,40 @@
+package com.pas.cosc322.amazon.board;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A flight recorder event for a call of the successor function that took
+ * longer than its threshold.  Generation runs at every node of a search,
+ * so the event is off unless a recording's settings turn it on.
+ */
+@Name("com.pas.cosc322.amazon.MoveGeneration")
+@Label("Move Generation")
+@Category({"Amazons", "Search"})
+@Description("A slow call of the successor function")
+@Enabled(false)
+@Threshold("1 ms")
+@StackTrace(false)
+class MoveGenerationEvent extends Event
+{
+	@Label("Role")
+	String role;
+
+	@Label("Turn")
+	@Description("The number of squares marked on the board")
+	int turn;
+
+	@Label("Max Actions")
+	@Description("The most actions the call could keep")
+	int maxActions;
+
+	@Label("Actions")
+	@Description("The actions the call kept")
+	int actions;
+}
@@ -0,0 +1,194 @@
+package com.pas.cosc322.amazon.book;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.SortedMap;
+
+import com.pas.cosc322.amazon.search.PackedAction;
+
+/**
+ * A read-only opening book, mapped into memory from its file.
+ * <p>
+ * The book maps the Zobrist hash of a position to its moves, ranked best
+ * first, each with a weight: the score the builder's search gave it for the
+ * player making it.  The file is big-endian:
+ * <pre>
+ * header    int magic, int version, int positions, int moves
+ * positions long hash, int first move, int move count    (sorted by hash)
+ * moves     int packed action, int weight                (best first per position)
+ * </pre>
+ * Positions are found by a binary search of the mapped file, nothing is
+ * read into the heap.  See OpeningBookBuilder for how a book is made.
+ */
+public class OpeningBook
+{
+	/** "AMZB" */
+	public static final int MAGIC = 0x414D5A42;
+	public static final int VERSION = 1;
+
+	private static final int HEADER_SIZE = 16;
+	private static final int POSITION_SIZE = 16;
+	private static final int MOVE_SIZE = 8;
+
+	private final MappedByteBuffer buffer;
+	private final int positions;
+	private final int movesStart;
+
+	/**
+	 * Constructor.  Maps the book, the file is not locked or written.
+	 *
+	 * @param file the book
+	 * @throws IOException if the file can't be read or is not a book
+	 */
+	public OpeningBook (File file) throws IOException
+	{
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try
+		{
+			// the mapping outlives the channel
+			FileChannel channel = in.getChannel();
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			in.close();
+		}
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+		{
+			throw new IOException(file+" is not a version "+VERSION+" opening book!");
+		}
+		positions = buffer.getInt(8);
+		int moves = buffer.getInt(12);
+		movesStart = HEADER_SIZE + positions * POSITION_SIZE;
+		if (positions < 0 || moves < 0 || buffer.capacity() != (long) movesStart + (long) moves * MOVE_SIZE)
+		{
+			throw new IOException(file+" is truncated!");
+		}
+	}
+
+	/**
+	 * @return the number of positions in the book
+	 */
+	public int size ()
+	{
+		return positions;
+	}
+
+	/**
+	 * Looks up the best move of a position.
+	 *
+	 * @param hash the position's hash key
+	 * @return the best packed action, or NO_ACTION if the position is not in the book
+	 */
+	public int probe (long hash)
+	{
+		int position = find(hash);
+		if (position < 0 || buffer.getInt(position + 12) == 0)
+		{
+			return PackedAction.NO_ACTION;
+		}
+		return buffer.getInt(movesStart + buffer.getInt(position + 8) * MOVE_SIZE);
+	}
+
+	/**
+	 * Looks up every move of a position.
+	 *
+	 * @param hash the position's hash key
+	 * @param actions filled with the packed actions, best first
+	 * @param weights filled with the actions' weights
+	 * @return the number of moves filled in, 0 if the position is not in the book
+	 */
+	public int probe (long hash, int[] actions, int[] weights)
+	{
+		int position = find(hash);
+		if (position < 0)
+		{
+			return 0;
+		}
+		int first = buffer.getInt(position + 8);
+		int count = Math.min(buffer.getInt(position + 12), Math.min(actions.length, weights.length));
+		for (int i = 0; i < count; i++)
+		{
+			int offset = movesStart + (first + i) * MOVE_SIZE;
+			actions[i] = buffer.getInt(offset);
+			weights[i] = buffer.getInt(offset + 4);
+		}
+		return count;
+	}
+
+	private int find (long hash)
+	{
+		// binary search of the sorted positions, returns the offset of the position
+		int low = 0, high = positions - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			long key = buffer.getLong(HEADER_SIZE + mid * POSITION_SIZE);
+			if (key < hash)
+			{
+				low = mid + 1;
+			}
+			else if (key > hash)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return HEADER_SIZE + mid * POSITION_SIZE;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes a book.
+	 *
+	 * @param file the book to write, replaced if it exists
+	 * @param entries the moves of each position by hash, as pairs of packed action and weight, best first
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write (File file, SortedMap<Long, int[]> entries) throws IOException
+	{
+		int moves = 0;
+		for (int[] pairs : entries.values())
+		{
+			moves += pairs.length / 2;
+		}
+		ByteBuffer out = ByteBuffer.allocate(HEADER_SIZE + entries.size() * POSITION_SIZE + moves * MOVE_SIZE);
+		out.putInt(MAGIC).putInt(VERSION).putInt(entries.size()).putInt(moves);
+		// the map is sorted by hash, which is the order the binary search needs
+		int first = 0;
+		for (Map.Entry<Long, int[]> entry : entries.entrySet())
+		{
+			out.putLong(entry.getKey()).putInt(first).putInt(entry.getValue().length / 2);
+			first += entry.getValue().length / 2;
+		}
+		for (int[] pairs : entries.values())
+		{
+			for (int i = 0; i + 1 < pairs.length; i += 2)
+			{
+				out.putInt(pairs[i]).putInt(pairs[i + 1]);
+			}
+		}
+		out.flip();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			while (out.hasRemaining())
+			{
+				channel.write(out);
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.pas.cosc322.amazon.book;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.main.ProjectConstants;
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.MinimaxSearch;
+import com.pas.cosc322.amazon.search.MoveStack;
+import com.pas.cosc322.amazon.search.TranspositionTable;
+
+/**
+ * Builds an opening book offline.
+ * <p>
+ * Starting from the initial position, each position is searched with the
+ * parallel alpha-beta search for as long as it is given.  Its root moves are
+ * ranked by the scores the search left in the transposition table and the
+ * best few are kept.  Every kept move is followed, so the book holds our best
+ * move and the replies to the opponent's likely moves, to a fixed number of
+ * plies.  Positions reached by more than one order of moves are searched once.
+ * <p>
+ * Usage: OpeningBookBuilder file plies width search-time threads [max-explorations]
+ */
+public class OpeningBookBuilder
+{
+	private MinimaxSearch<AmazonBoard, AmazonMove, AmazonRole> search;
+	private SortedMap<Long, int[]> entries = new TreeMap<Long, int[]>();
+	private MoveStack moves = new MoveStack();
+	private int plies;
+	private int width;
+
+	/**
+	 * Constructor
+	 *
+	 * @param plies the number of moves from the start the book covers
+	 * @param width the number of moves kept, and followed, per position
+	 * @param threads the number of threads searching each position
+	 */
+	public OpeningBookBuilder (int plies, int width, int threads)
+	{
+		this.plies = plies;
+		this.width = width;
+		search = new MinimaxSearch<AmazonBoard, AmazonMove, AmazonRole>(threads);
+	}
+
+	/**
+	 * Searches the opening.
+	 *
+	 * @return the moves of each position by hash, as pairs of packed action and weight, best first
+	 */
+	public SortedMap<Long, int[]> build ()
+	{
+		entries.clear();
+		expand(new AmazonBoard(), AmazonRole.WHITE, 0);
+		return entries;
+	}
+
+	private void expand (AmazonBoard board, AmazonRole role, int ply)
+	{
+		long hash = board.hashKey();
+		if (ply >= plies || entries.containsKey(hash))
+		{
+			return;
+		}
+		// deepen from the start for every position, the last search ended somewhere else
+		search.setCutoffDepth(ProjectConstants.initialDepth);
+		AmazonMove best = search.minimaxDecision(role, role.other(), board.clone());
+		if (best == null)
+		{
+			return;
+		}
+		int[] pairs = rank(board, role, best.pack());
+		entries.put(hash, pairs);
+		System.out.println("ply:"+ply+" positions:"+entries.size()+" best:"+best+" weight:"+pairs[1]);
+		// follow every kept move, the opponent may not play our best
+		for (int i = 0; i < pairs.length; i += 2)
+		{
+			board.applyAction(pairs[i]);
+			expand(board, role.other(), ply + 1);
+			board.undoAction(pairs[i]);
+		}
+	}
+
+	private int[] rank (AmazonBoard board, AmazonRole role, int best)
+	{
+		// score the root moves by their children's entries, the scores are relative to the player moving
+		TranspositionTable table = search.getTable();
+		moves.clear();
+		moves.push();
+		board.actions(role, moves);
+		for (int i = moves.begin(); i < moves.end(); i++)
+		{
+			int action = moves.action(i);
+			board.applyAction(action);
+			long entry = table.probe(board.hashKey());
+			board.undoAction(action);
+			// the move the search chose goes first whatever its entry says, unsearched moves go last
+			moves.setScore(i, action == best ? Integer.MAX_VALUE : entry == 0 ? Integer.MIN_VALUE : TranspositionTable.score(entry));
+		}
+		moves.keepBest(width);
+		int count = 0;
+		int[] pairs = new int[2 * Math.min(width, moves.size())];
+		for (int i = moves.begin(); i < moves.end() && count < pairs.length; i++)
+		{
+			if (moves.score(i) == Integer.MIN_VALUE)
+			{
+				break;
+			}
+			pairs[count++] = moves.action(i);
+			pairs[count++] = moves.score(i);
+		}
+		moves.pop();
+		// the best move's weight is its own entry, if the search left one
+		board.applyAction(best);
+		long entry = table.probe(board.hashKey());
+		board.undoAction(best);
+		pairs[1] = entry == 0 ? 0 : TranspositionTable.score(entry);
+		int[] result = new int[count];
+		System.arraycopy(pairs, 0, result, 0, count);
+		return result;
+	}
+
+	public static void main (String[] args) throws IOException
+	{
+		if (args.length < 5)
+		{
+			System.out.println("Usage: OpeningBookBuilder file plies width search-time threads [max-explorations]");
+			return;
+		}
+		File file = new File(args[0]);
+		int plies = Integer.parseInt(args[1].trim());
+		int width = Integer.parseInt(args[2].trim());
+		ProjectConstants.searchTime = Long.parseLong(args[3].trim());
+		int threads = Integer.parseInt(args[4].trim());
+		if (args.length > 5)
+		{
+			ProjectConstants.maxExplorations = Integer.parseInt(args[5].trim());
+		}
+		if (plies < 1 || width < 1 || threads < 1 || ProjectConstants.searchTime < 1)
+		{
+			throw new IllegalArgumentException("plies, width, search-time and threads must be > 0!");
+		}
+		long start = System.currentTimeMillis();
+		SortedMap<Long, int[]> entries = new OpeningBookBuilder(plies, width, threads).build();
+		OpeningBook.write(file, entries);
+		System.out.println("Wrote "+entries.size()+" positions to "+file+" in "+(System.currentTimeMillis()-start)+"ms");
+		System.exit(0);
+	}
+}
@@ -0,0 +1,209 @@
+package com.pas.cosc322.amazon.main;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands log records to other handlers on a background thread, so no thread
+ * that logs ever waits for a formatter or the disk.
+ * <p>
+ * Records are put in a bounded ring buffer without locks: a logging thread
+ * claims a slot by advancing the tail and stores its record there, and the
+ * writer thread takes records from the head in order and publishes them to
+ * the target handlers, flushing them whenever the buffer runs empty.  When
+ * the buffer is full the record is dropped rather than waiting for room,
+ * and the number dropped is logged once the writer catches up.
+ * <p>
+ * A record's source is inferred on the logging thread if the caller did not
+ * name it, since the writer thread can't see the caller's stack.  Anything
+ * else about the record is formatted by the writer, so the parameters of a
+ * record must not change after it is logged.
+ */
+public class AsyncLogHandler extends Handler
+{
+	/** the default number of records the buffer holds */
+	public static final int CAPACITY = 1 << 13;
+	/** the time (in ms) the writer sleeps for when the buffer is empty */
+	public static final long IDLE_TIME = 10;
+	// the longest time (in ms) close waits for the writer to empty the buffer
+	private static final long CLOSE_TIME = 2000;
+
+	private final Handler[] targets;
+	private final AtomicReferenceArray<LogRecord> slots;
+	private final int mask;
+	// the next slot to claim, and the next slot to take a record from
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean closed;
+	private final Thread writer;
+
+	/**
+	 * Constructor.  Starts the writer thread.
+	 *
+	 * @param capacity the most records waiting to be written, rounded up to a power of two
+	 * @param targets the handlers the records are published to, in order
+	 */
+	public AsyncLogHandler (int capacity, Handler... targets)
+	{
+		if (capacity < 1 || capacity > 1 << 30)
+		{
+			throw new IllegalArgumentException("capacity must be between 1 and 2^30!");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+		{
+			size <<= 1;
+		}
+		this.targets = targets.clone();
+		slots = new AtomicReferenceArray<LogRecord>(size);
+		mask = size - 1;
+		setLevel(Level.ALL);
+		writer = new Thread(new Runnable()
+		{
+			@Override
+			public void run ()
+			{
+				drain();
+			}
+		}, "async-log-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void publish (LogRecord record)
+	{
+		if (closed || !isLoggable(record))
+		{
+			return;
+		}
+		// infers the caller if it was not named, only this thread's stack holds it
+		record.getSourceClassName();
+		long claimed;
+		do
+		{
+			claimed = tail.get();
+			if (claimed - head >= slots.length())
+			{
+				dropped.incrementAndGet();
+				return;
+			}
+		}
+		while (!tail.compareAndSet(claimed, claimed + 1));
+		slots.set((int) claimed & mask, record);
+	}
+
+	/**
+	 * Does not wait for the writer, the targets are flushed whenever the
+	 * buffer runs empty.
+	 */
+	@Override
+	public void flush ()
+	{
+	}
+
+	/**
+	 * Writes the records already logged, waiting a short time for the
+	 * writer, then closes the targets.  Records logged after are dropped.
+	 */
+	@Override
+	public void close ()
+	{
+		closed = true;
+		LockSupport.unpark(writer);
+		try
+		{
+			writer.join(CLOSE_TIME);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		for (Handler target : targets)
+		{
+			target.close();
+		}
+	}
+
+	/**
+	 * @return the number of records dropped because the buffer was full
+	 */
+	public long getDropped ()
+	{
+		return dropped.get();
+	}
+
+	private void drain ()
+	{
+		long reported = 0;
+		boolean written = false;
+		while (true)
+		{
+			int slot = (int) head & mask;
+			LogRecord record = slots.get(slot);
+			if (record != null)
+			{
+				// free the slot before moving the head past it, a logging thread may claim it straight after
+				slots.set(slot, null);
+				head++;
+				write(record);
+				written = true;
+			}
+			else if (head != tail.get())
+			{
+				// the slot is claimed but its record is not stored yet
+				Thread.yield();
+			}
+			else
+			{
+				long lost = dropped.get();
+				if (lost > reported)
+				{
+					LogRecord warning = new LogRecord(Level.WARNING, "Dropped {0} log records, the buffer was full.");
+					warning.setParameters(new Object[] {lost - reported});
+					warning.setLoggerName(getClass().getName());
+					warning.setSourceClassName(null);
+					write(warning);
+					reported = lost;
+					written = true;
+				}
+				if (written)
+				{
+					for (Handler target : targets)
+					{
+						target.flush();
+					}
+					written = false;
+				}
+				if (closed)
+				{
+					return;
+				}
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_TIME));
+			}
+		}
+	}
+
+	private void write (LogRecord record)
+	{
+		for (Handler target : targets)
+		{
+			try
+			{
+				target.publish(record);
+			}
+			catch (RuntimeException e)
+			{
+				// one broken target must not stop the others
+				reportError(null, e, ErrorManager.WRITE_FAILURE);
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package com.pas.cosc322.amazon.main;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * Formats a log record as a single line:
+ * <pre>
+ * 2011-03-22 14:05:09.123 INFO    t12 MinimaxSearch.minimaxDecision Search took:2981 maximum depth:6
+ * </pre>
+ * The parameters of a record are substituted for their {0}, {1}, ...
+ * placeholders with String.valueOf, not MessageFormat, so numbers are
+ * written without grouping.  A thrown exception's stack trace follows on
+ * the lines after.
+ */
+public class CompactFormatter extends Formatter
+{
+	private static final String NEWLINE = System.getProperty("line.separator");
+
+	// only the thread writing the log formats records
+	private final SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+	private final Date date = new Date();
+	private final StringBuilder line = new StringBuilder(256);
+
+	@Override
+	public synchronized String format (LogRecord record)
+	{
+		line.setLength(0);
+		date.setTime(record.getMillis());
+		line.append(time.format(date)).append(' ');
+		String level = record.getLevel().getName();
+		line.append(level);
+		for (int i = level.length(); i < 8; i++)
+		{
+			line.append(' ');
+		}
+		line.append('t').append(record.getLongThreadID()).append(' ');
+		String source = record.getSourceClassName();
+		if (source != null)
+		{
+			// the package is the same for every record, only the class is worth writing
+			line.append(source.substring(source.lastIndexOf('.') + 1));
+			if (record.getSourceMethodName() != null)
+			{
+				line.append('.').append(record.getSourceMethodName());
+			}
+			line.append(' ');
+		}
+		line.append(formatMessage(record)).append(NEWLINE);
+		if (record.getThrown() != null)
+		{
+			StringWriter trace = new StringWriter();
+			record.getThrown().printStackTrace(new PrintWriter(trace));
+			line.append(trace);
+		}
+		return line.toString();
+	}
+
+	@Override
+	public String formatMessage (LogRecord record)
+	{
+		String message = record.getMessage();
+		Object[] params = record.getParameters();
+		if (message == null || params == null || params.length == 0 || record.getResourceBundle() != null)
+		{
+			return super.formatMessage(record);
+		}
+		StringBuilder out = new StringBuilder(message.length() + 16 * params.length);
+		for (int i = 0; i < message.length(); i++)
+		{
+			char c = message.charAt(i);
+			int end = message.indexOf('}', i);
+			// a placeholder is a single digit index between braces
+			if (c == '{' && end == i + 2 && Character.isDigit(message.charAt(i + 1)) && message.charAt(i + 1) - '0' < params.length)
+			{
+				out.append(String.valueOf(params[message.charAt(i + 1) - '0']));
+				i = end;
+			}
+			else
+			{
+				out.append(c);
+			}
+		}
+		return out.toString();
+	}
+}
@@ -4,15 +4,17 @@ import static com.pas.cosc322.amazon.main.ProjectConstants.DEFAULT_DEBUG_LEVEL;
 import static com.pas.cosc322.amazon.main.ProjectConstants.DEFAULT_SERVER_ROOM;
 import static com.pas.cosc322.amazon.main.ProjectConstants.DEFAULT_USER_NAME;
 import static com.pas.cosc322.amazon.main.ProjectConstants.DEFAULT_USER_PASS;
+import static com.pas.cosc322.amazon.main.ProjectConstants.SEARCH_MODE_LAZY_SMP;
+import static com.pas.cosc322.amazon.main.ProjectConstants.SEARCH_MODE_SPLIT;
 
 import java.io.File;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.logging.XMLFormatter;
 
 import ubco.ai.GameRoom;
 import ubco.ai.games.GameClient;
@@ -43,10 +45,15 @@ public class Main
 		try
 		{
 			new File("logs").mkdir();
-			handler = new FileHandler("logs/"+fileName+".xml", true);
-			handler.setFormatter(new XMLFormatter());
-			handler.setLevel(Level.ALL);
+			Handler file = new FileHandler("logs/"+fileName+".log", true);
+			file.setFormatter(new CompactFormatter());
+			file.setLevel(Level.ALL);
+			Handler console = new ConsoleHandler();
+			console.setFormatter(new CompactFormatter());
+			// the disk and the console are written on a background thread, never on the search's time
+			handler = new AsyncLogHandler(AsyncLogHandler.CAPACITY, file, console);
 			debug.addHandler(handler);
+			debug.setUseParentHandlers(false);
 		}
 		catch (Exception e)
 		{
@@ -76,6 +83,12 @@ public class Main
 		byte endGameTurnOver;
 		Level level;
 		boolean manualInput;
+		String searchMode;
+		boolean ponder;
+		byte monteCarloTurnOver;
+		String openingBook;
+		String tablebase;
+		String metricsFile;
 		
 		try
 		{
@@ -114,6 +127,21 @@ public class Main
 			}
 			level = Level.parse(args[9].trim());
 			manualInput = Boolean.parseBoolean(args[10].trim());
+			// optional, older launch scripts do not pass it
+			searchMode = args.length > 11 ? args[11].trim() : SEARCH_MODE_SPLIT;
+			if (!searchMode.equals(SEARCH_MODE_SPLIT) && !searchMode.equals(SEARCH_MODE_LAZY_SMP))
+			{
+				throw new IllegalArgumentException("searchMode argument must be "+SEARCH_MODE_SPLIT+" or "+SEARCH_MODE_LAZY_SMP+"!");
+			}
+			ponder = args.length > 12 && Boolean.parseBoolean(args[12].trim());
+			monteCarloTurnOver = args.length > 13 ? Byte.parseByte(args[13].trim()) : 0;
+			if (monteCarloTurnOver < 0 || monteCarloTurnOver >= 92)
+			{
+				throw new IllegalArgumentException("monteCarloTurnOver argument must be >= 0 and < 92!");
+			}
+			openingBook = args.length > 14 ? args[14].trim() : "";
+			tablebase = args.length > 15 ? args[15].trim() : "";
+			metricsFile = args.length > 16 ? args[16].trim() : "";
 			
 			ProjectConstants.maxThreads = maxThreads;
 			ProjectConstants.minMemory = minMemory;
@@ -122,6 +150,12 @@ public class Main
 			ProjectConstants.initialDepth = initialDepth;
 			ProjectConstants.endGameTurnOver = endGameTurnOver;
 			ProjectConstants.manualInput = manualInput;
+			ProjectConstants.searchMode = searchMode;
+			ProjectConstants.ponder = ponder;
+			ProjectConstants.monteCarloTurnOver = monteCarloTurnOver;
+			ProjectConstants.openingBook = openingBook;
+			ProjectConstants.tablebase = tablebase;
+			ProjectConstants.metricsFile = metricsFile;
 		}
 		catch (Exception e)
 		{
@@ -162,7 +196,7 @@ public class Main
 	 */
 	public static void closeGame(int code, String message)
 	{
-		debug.logp(Level.SEVERE, "Main", "closeGame", "CLOSING GAME message:" + message + " exit code:" + code);
+		debug.logp(Level.SEVERE, "Main", "closeGame", "CLOSING GAME message:{0} exit code:{1}", new Object[] {message, code});
 		try
 		{
 			handler.close();
@@ -18,6 +18,11 @@ public class ProjectConstants
 	public static final Level DEFAULT_DEBUG_LEVEL = OFF;
 	
 	public static final String ACTION_SURRENDER = "surrender";
+	
+	/** search mode that splits the tree between the threads, see MinimaxSearch */
+	public static final String SEARCH_MODE_SPLIT = "split";
+	/** search mode where every thread searches the whole tree, see LazySmpSearch */
+	public static final String SEARCH_MODE_LAZY_SMP = "lazy-smp";
 
 	/** maximum threads that will be allocated for searches */
 	public static int maxThreads = 1;
@@ -31,6 +36,18 @@ public class ProjectConstants
 	public static int initialDepth = 1;
 	/** number of turns before the end game heuristic will come into effect */
 	public static byte endGameTurnOver = 60;
+	/** how the threads share the search, SEARCH_MODE_SPLIT or SEARCH_MODE_LAZY_SMP */
+	public static String searchMode = SEARCH_MODE_SPLIT;
+	/** if true, the AI will search on the opponent's time */
+	public static boolean ponder = false;
+	/** number of turns played with the Monte Carlo search before alpha-beta takes over, 0 to never use it */
+	public static byte monteCarloTurnOver = 0;
+	/** path of the opening book, empty to search every opening move */
+	public static String openingBook = "";
+	/** path of the tablebase of small regions, empty to solve every region */
+	public static String tablebase = "";
+	/** path of the text file the search metrics are written to, empty to only publish them through JMX */
+	public static String metricsFile = "";
 	/** if true, the AI will not play, manual input will be enabled through the GUI */
 	public static boolean manualInput = false;
 	
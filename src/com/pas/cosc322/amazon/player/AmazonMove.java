@@ -1,10 +1,13 @@
 package com.pas.cosc322.amazon.player;
 
+import static com.pas.cosc322.amazon.board.AmazonBoard.NUM_COLS;
+import static com.pas.cosc322.amazon.board.AmazonBoard.square;
+import static com.pas.cosc322.amazon.player.AmazonRole.BLACK;
 import static com.pas.cosc322.amazon.player.AmazonRole.WHITE;
 import static ubco.ai.games.GameMessage.ACTION_MOVE;
 import net.n3.nanoxml.IXMLElement;
 
-import com.pas.cosc322.amazon.search.Action;
+import com.pas.cosc322.amazon.search.PackedAction;
 
 /**
  * A simple struct representation of a move in Amazons.
@@ -14,7 +17,7 @@ import com.pas.cosc322.amazon.search.Action;
  * @author Andrew
  * @author Sam
  */
-public class AmazonMove implements Action, Comparable<AmazonMove>
+public class AmazonMove implements PackedAction, Comparable<AmazonMove>
 {
 	public AmazonRole role;
 	public byte qr, qc, qfr, qfc, ar, ac;
@@ -54,6 +57,76 @@ public class AmazonMove implements Action, Comparable<AmazonMove>
 		role = WHITE;
 	}
 
+	/**
+	 * Packs a move into an int: the queen's start square in bits 0-6, its final square
+	 * in bits 7-13, the role in bit 14 (set for BLACK) and the arrow square in bits 15-21.
+	 * Squares are row-major indices.  A legal move never packs to NO_ACTION since the
+	 * queen must leave its starting square.
+	 * 
+	 * @param role the role making the move
+	 * @param from the queen's starting square
+	 * @param to the queen's final square
+	 * @param arrow the arrow's square
+	 * @return the packed move
+	 */
+	public static int pack (AmazonRole role, int from, int to, int arrow)
+	{
+		return from | (to << 7) | (role == WHITE ? 0 : 1 << 14) | (arrow << 15);
+	}
+
+	@Override
+	public int pack ()
+	{
+		return pack(role, square(qr, qc), square(qfr, qfc), square(ar, ac));
+	}
+
+	/**
+	 * @param move a packed move
+	 * @return the move object for the packed move
+	 */
+	public static AmazonMove unpack (int move)
+	{
+		int from = from(move), to = to(move), arrow = arrow(move);
+		return new AmazonMove(role(move), (byte) (from / NUM_COLS), (byte) (from % NUM_COLS),
+				(byte) (to / NUM_COLS), (byte) (to % NUM_COLS), (byte) (arrow / NUM_COLS), (byte) (arrow % NUM_COLS));
+	}
+
+	/**
+	 * @param move a packed move
+	 * @return the queen's starting square
+	 */
+	public static int from (int move)
+	{
+		return move & 0x7F;
+	}
+
+	/**
+	 * @param move a packed move
+	 * @return the queen's final square
+	 */
+	public static int to (int move)
+	{
+		return (move >>> 7) & 0x7F;
+	}
+
+	/**
+	 * @param move a packed move
+	 * @return the arrow's square
+	 */
+	public static int arrow (int move)
+	{
+		return (move >>> 15) & 0x7F;
+	}
+
+	/**
+	 * @param move a packed move
+	 * @return the role making the move
+	 */
+	public static AmazonRole role (int move)
+	{
+		return (move & (1 << 14)) == 0 ? WHITE : BLACK;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -2,6 +2,8 @@ package com.pas.cosc322.amazon.player;
 
 import static com.pas.cosc322.amazon.main.Main.debug;
 
+import java.util.logging.Level;
+
 import com.pas.cosc322.amazon.board.AmazonBoard;
 
 /**
@@ -98,28 +100,27 @@ public class AmazonMoveValidator
 									ar += dr;
 									ac += dc;
 								}
-								debug.warning("The arrow's path is not clear!");
+								debug.logp(Level.WARNING, "AmazonMoveValidator", "validateMove", "The arrow's path is not clear!");
 								return false;
 							}
-							debug.warning("Invalid arrow direction!");
+							debug.logp(Level.WARNING, "AmazonMoveValidator", "validateMove", "Invalid arrow direction!");
 							return false;
 						}
 						qr += dr;
 						qc += dc;
 					}
-					debug.warning("The queen's path is not clear!");
+					debug.logp(Level.WARNING, "AmazonMoveValidator", "validateMove", "The queen's path is not clear!");
 					return false;
 				}
-				debug.warning("Invalid queen direction!");
+				debug.logp(Level.WARNING, "AmazonMoveValidator", "validateMove", "Invalid queen direction!");
 				return false;
 			}
-			debug.warning("No queen found at starting location!");
+			debug.logp(Level.WARNING, "AmazonMoveValidator", "validateMove", "No queen found at starting location!");
 			return false;
 		}
 		catch (Exception e)
 		{
-			debug.warning("Exception occured while validating move, stack trace to follow.");
-			e.printStackTrace();
+			debug.logp(Level.WARNING, "AmazonMoveValidator", "validateMove", "Exception occured while validating move.", e);
 		}
 		return false;
 	}
@@ -2,18 +2,29 @@ package com.pas.cosc322.amazon.player;
 
 import static com.pas.cosc322.amazon.main.Main.debug;
 import static com.pas.cosc322.amazon.main.ProjectConstants.ACTION_SURRENDER;
+import static com.pas.cosc322.amazon.main.ProjectConstants.SEARCH_MODE_LAZY_SMP;
 import static com.pas.cosc322.amazon.main.ProjectConstants.endGameTurnOver;
 import static com.pas.cosc322.amazon.main.ProjectConstants.initialDepth;
 import static com.pas.cosc322.amazon.main.ProjectConstants.manualInput;
 import static com.pas.cosc322.amazon.main.ProjectConstants.maxThreads;
+import static com.pas.cosc322.amazon.main.ProjectConstants.metricsFile;
+import static com.pas.cosc322.amazon.main.ProjectConstants.monteCarloTurnOver;
+import static com.pas.cosc322.amazon.main.ProjectConstants.openingBook;
+import static com.pas.cosc322.amazon.main.ProjectConstants.ponder;
+import static com.pas.cosc322.amazon.main.ProjectConstants.searchMode;
+import static com.pas.cosc322.amazon.main.ProjectConstants.tablebase;
 import static com.pas.cosc322.amazon.player.AmazonRole.WHITE;
 import static ubco.ai.games.GameMessage.ACTION_GAME_START;
 import static ubco.ai.games.GameMessage.ACTION_MOVE;
 import static ubco.ai.games.GameMessage.ACTION_ROOM_JOINED;
 import static ubco.ai.games.GameMessage.MSG_GAME;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.logging.Level;
 
+import javax.management.JMException;
+
 import net.n3.nanoxml.IXMLElement;
 import ubco.ai.GameRoom;
 import ubco.ai.connection.ServerMessage;
@@ -22,9 +33,17 @@ import ubco.ai.games.GameMessage;
 import ubco.ai.games.GamePlayer;
 
 import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.board.AmazonEndgame;
+import com.pas.cosc322.amazon.board.AmazonTablebase;
 import com.pas.cosc322.amazon.board.VisualAmazonBoard;
+import com.pas.cosc322.amazon.book.OpeningBook;
 import com.pas.cosc322.amazon.main.Main;
+import com.pas.cosc322.amazon.search.AdversarialSearch;
+import com.pas.cosc322.amazon.search.LazySmpSearch;
 import com.pas.cosc322.amazon.search.MinimaxSearch;
+import com.pas.cosc322.amazon.search.MonteCarloSearch;
+import com.pas.cosc322.amazon.search.PackedAction;
+import com.pas.cosc322.amazon.search.SearchMetrics;
 import com.pas.cosc322.amazon.search.StateSpaceSearch;
 
 /**
@@ -46,8 +65,13 @@ public class AmazonPlayer implements GamePlayer
 	private AmazonBoard board;
 	private VisualAmazonBoard visualBoard;
 
-	private MinimaxSearch<AmazonBoard, AmazonMove, AmazonRole> minimax;
+	private AdversarialSearch<AmazonBoard, AmazonMove, AmazonRole> minimax;
+	private AdversarialSearch<AmazonBoard, AmazonMove, AmazonRole> montecarlo;
 	private StateSpaceSearch<AmazonBoard, AmazonMove, AmazonRole> statespace;
+	private AmazonEndgame endgame;
+	private OpeningBook book;
+	private TimeManager timeManager = new TimeManager();
+	private Ponder ponderer;
 	
 	private boolean myTurn = false;
 	private boolean enclosed = false;
@@ -74,9 +98,79 @@ public class AmazonPlayer implements GamePlayer
 		this.client = client;
 		this.room = room;
 		board = new AmazonBoard();
-		minimax = new MinimaxSearch<AmazonBoard, AmazonMove, AmazonRole>(maxThreads);
+		AdversarialSearch<AmazonBoard, AmazonMove, AmazonRole> ponderSearch;
+		if (searchMode.equals(SEARCH_MODE_LAZY_SMP))
+		{
+			minimax = new LazySmpSearch<AmazonBoard, AmazonMove, AmazonRole>(maxThreads);
+			ponderSearch = new LazySmpSearch<AmazonBoard, AmazonMove, AmazonRole>(maxThreads, minimax.getTable());
+		}
+		else
+		{
+			minimax = new MinimaxSearch<AmazonBoard, AmazonMove, AmazonRole>(maxThreads);
+			ponderSearch = new MinimaxSearch<AmazonBoard, AmazonMove, AmazonRole>(maxThreads, minimax.getTable());
+		}
+		ponderer = new Ponder(ponderSearch);
 		minimax.setCutoffDepth(initialDepth);
+		minimax.setTimeControl(timeManager);
+		montecarlo = new MonteCarloSearch<AmazonBoard, AmazonMove, AmazonRole>(maxThreads, minimax.getTable());
+		montecarlo.setTimeControl(timeManager);
 		statespace = new StateSpaceSearch<AmazonBoard, AmazonMove, AmazonRole>(maxThreads);
+		statespace.setTimeControl(timeManager);
+		endgame = new AmazonEndgame(maxThreads);
+		if (openingBook.length() > 0)
+		{
+			try
+			{
+				book = new OpeningBook(new File(openingBook));
+				if (debug.isLoggable(Level.INFO))
+				{
+					debug.logp(Level.INFO, "AmazonPlayer", "init", "Opened opening book with {0} positions.", book.size());
+				}
+			}
+			catch (IOException e)
+			{
+				// the book only saves time, play without it
+				if (debug.isLoggable(Level.WARNING))
+				{
+					debug.logp(Level.WARNING, "AmazonPlayer", "init", "Could not open the opening book: {0}", e.getMessage());
+				}
+			}
+		}
+		if (tablebase.length() > 0)
+		{
+			try
+			{
+				AmazonTablebase.load(new File(tablebase));
+				if (debug.isLoggable(Level.INFO))
+				{
+					debug.logp(Level.INFO, "AmazonPlayer", "init", "Loaded tablebase with {0} regions.", AmazonTablebase.get().size());
+				}
+			}
+			catch (IOException e)
+			{
+				// without it the endgame solver searches the small regions too
+				if (debug.isLoggable(Level.WARNING))
+				{
+					debug.logp(Level.WARNING, "AmazonPlayer", "init", "Could not load the tablebase: {0}", e.getMessage());
+				}
+			}
+		}
+		try
+		{
+			SearchMetrics.get().register();
+		}
+		catch (JMException e)
+		{
+			// the metrics are only watched, play without them
+			if (debug.isLoggable(Level.WARNING))
+			{
+				debug.logp(Level.WARNING, "AmazonPlayer", "init", "Could not register the search metrics: {0}", e.getMessage());
+			}
+		}
+		if (metricsFile.length() > 0)
+		{
+			SearchMetrics.get().write(new File(metricsFile), SearchMetrics.WRITE_PERIOD);
+		}
 		visualBoard = new VisualAmazonBoard();
 		if (manualInput)
 		{
@@ -105,7 +199,10 @@ public class AmazonPlayer implements GamePlayer
 	@Override
 	public boolean handleMessage (GameMessage gameMessage) throws Exception
 	{
-		debug.logp(Level.INFO, "AmazonPlayer", "handleMessage", "msgType:"+gameMessage.msgType+" msg:"+gameMessage.msg);
+		if (debug.isLoggable(Level.INFO))
+		{
+			debug.logp(Level.INFO, "AmazonPlayer", "handleMessage", "msgType:{0} msg:{1}", new Object[] {gameMessage.msgType, gameMessage.msg});
+		}
 		try
 		{
 			// parse the game message
@@ -115,6 +212,12 @@ public class AmazonPlayer implements GamePlayer
 			if (type.equals(ACTION_MOVE))
 			{
 				AmazonMove move = new AmazonMove(element, role.other());
+				// stop pondering, if it was on this move the main search resumes at the pondered depth
+				int ponderDepth = ponderer.stop(move);
+				if (ponderDepth > minimax.getCutoffDepth())
+				{
+					minimax.setCutoffDepth(ponderDepth);
+				}
 				// first validate the move!
 				if (!myTurn && AmazonMoveValidator.validateMove(board, move))
 				{
@@ -131,9 +234,7 @@ public class AmazonPlayer implements GamePlayer
 				{
 					Main.closeGame(-1, "Opponent made an invalid move! " + move);
 				}
-				// suggest garbage collection during "down time"
-				System.runFinalization();
-				System.gc();
+				suggestGC();
 			}
 			// or if the game has started...
 			else if (type.equals(ACTION_GAME_START))
@@ -145,7 +246,7 @@ public class AmazonPlayer implements GamePlayer
 					if (user.getAttribute("name", null).equals(userName))
 					{
 						role = AmazonRole.getByValue(user.getAttribute("role", null));
-						debug.logp(Level.INFO, "AmazonPlayer", "handleMessage", "Role:"+role);
+						debug.logp(Level.INFO, "AmazonPlayer", "handleMessage", "Role:{0}", role);
 						myTurn = role == WHITE;
 						break;
 					}
@@ -154,15 +255,13 @@ public class AmazonPlayer implements GamePlayer
 				{
 					makeMove();
 				}
-				// suggest garbage collection during "down time"
-				System.runFinalization();
-				System.gc();
+				suggestGC();
 			}
 			// or if the opponent has surrendered...
 			else if (type.equals(ACTION_SURRENDER))
 			{
 				debug.logp(Level.SEVERE, "AmazonPlayer", "handleMessage", "Opponent has surrendered!");
-				debug.warning("Game ends with:"+board.getMarkedPos()+" arrows");
+				debug.logp(Level.WARNING, "AmazonPlayer", "handleMessage", "Game ends with:{0} arrows", board.getMarkedPos());
 				//Main.closeGame(0, "Game complete - win");
 			}
 			// or if we have joined a room...
@@ -192,7 +291,7 @@ public class AmazonPlayer implements GamePlayer
 	
 	public void handleManualInput (AmazonMove move)
 	{
-		debug.logp(Level.INFO, "AmazonPlayer", "handleManualInput", "Recieved manual input:"+move);
+		debug.logp(Level.INFO, "AmazonPlayer", "handleManualInput", "Recieved manual input:{0}", move);
 		if (myTurn && AmazonMoveValidator.validateMove(board, move))
 		{
 			board.applyAction(move);
@@ -204,26 +303,60 @@ public class AmazonPlayer implements GamePlayer
 	
 	private void makeMove ()
 	{
+		MoveDecisionEvent event = new MoveDecisionEvent();
+		event.begin();
+		event.turn = board.getMarkedPos();
 		if (board.getMarkedPos() == endGameTurnOver)
 		{
-			debug.info(endGameTurnOver+" moves have past, changing evaluation function for end game.");
+			debug.logp(Level.INFO, "AmazonPlayer", "makeMove", "{0} moves have past, changing evaluation function for end game.", endGameTurnOver);
 			// reset the cutoff depths to avoid any potential problems with the search time cutoff for the new evaluations
 			minimax.setCutoffDepth(1);
 			statespace.setCutoffDepth(1);
 		}
+		// the opponent's move may have enclosed the queens, the regions are kept up to date so this is free
+		enclosed = board.isEnclosed();
 		// search for the next move to make
 		AmazonMove nextMove;
-		// if all queens are enclosed, the game becomes single player - do a state space search instead
-		if (enclosed)
+		timeManager.startMove(board, role, enclosed);
+		AmazonMove bookMove = probeBook();
+		// play from the book while it has the position, the time saved goes to the midgame
+		if (bookMove != null)
 		{
-			debug.info("Game is enclosed, using state space search.");
-			nextMove = statespace.statespaceDecision(role, board);
+			nextMove = bookMove;
+			event.source = "book";
+		}
+		// if all queens are enclosed, the game becomes single player - solve each region instead
+		else if (enclosed)
+		{
+			// leave the state space search most of the move's time in case a region is too big to solve
+			int action = endgame.decide(board, role, timeManager.target() / 2);
+			if (action != PackedAction.NO_ACTION)
+			{
+				nextMove = AmazonMove.unpack(action);
+				event.source = "endgame";
+			}
+			else
+			{
+				debug.logp(Level.INFO, "AmazonPlayer", "makeMove", "Game is enclosed and unsolved, using state space search.");
+				nextMove = statespace.statespaceDecision(role, board);
+				event.source = "statespace";
+			}
+		}
+		// the opening's branching factor is too wide for alpha-beta to see far, sample it instead
+		else if (board.getMarkedPos() < monteCarloTurnOver)
+		{
+			nextMove = montecarlo.minimaxDecision(role, role.other(), board);
+			event.source = "montecarlo";
 		}
 		else
 		{
 			statespace.setCutoffDepth(1);
 			nextMove = minimax.minimaxDecision(role, role.other(), board);
+			event.source = "minimax";
 		}
+		event.target = timeManager.target();
+		event.move = nextMove == null ? "" : nextMove.toString();
+		event.commit();
 		// if we couldn't find a move, surrender
 		if (nextMove == null)
 		{
@@ -232,17 +365,48 @@ public class AmazonPlayer implements GamePlayer
 		}
 		// finally, tell the opponent of the move
 		client.sendToServer(ServerMessage.compileGameMessage(MSG_GAME, room.roomID, nextMove.toString()), true);
-		debug.logp(Level.INFO, "AmazonPlayer", "makeMove", "Making move:"+nextMove);
+		debug.logp(Level.INFO, "AmazonPlayer", "makeMove", "Making move:{0}", nextMove);
 		// apply the action to the board
 		board.applyAction(nextMove);
 		visualBoard.update(nextMove);
 		myTurn = false;
 		if (board.getMarkedPos() == endGameTurnOver)
 		{
-			debug.info(endGameTurnOver+" moves have past, changing evaluation function for end game.");
+			debug.logp(Level.INFO, "AmazonPlayer", "makeMove", "{0} moves have past, changing evaluation function for end game.", endGameTurnOver);
 			minimax.setCutoffDepth(1);
 		}
 		enclosed = board.isEnclosed();
+		// the state space search ignores the opponent, there is nothing to ponder
+		if (ponder && !enclosed)
+		{
+			ponderer.start(board, role, minimax.getCutoffDepth());
+		}
+	}
+	
+	private AmazonMove probeBook ()
+	{
+		if (book == null || enclosed)
+		{
+			return null;
+		}
+		int action = book.probe(board.hashKey());
+		if (action == PackedAction.NO_ACTION || AmazonMove.role(action) != role)
+		{
+			return null;
+		}
+		// a book built by another version of the board could disagree, never trust it blindly
+		AmazonMove move = AmazonMove.unpack(action);
+		return AmazonMoveValidator.validateMove(board, move) ? move : null;
+	}
+	
+	private void suggestGC ()
+	{
+		// suggest garbage collection during "down time", unless it is spent pondering
+		if (!ponder)
+		{
+			System.runFinalization();
+			System.gc();
+		}
 	}
 	
 	private void surrender ()
@@ -250,7 +414,7 @@ public class AmazonPlayer implements GamePlayer
 		// send a surrender message to the opponent and close the game
 		client.sendToServer(ServerMessage.compileGameMessage(MSG_GAME, room.roomID, "<action type='"+ACTION_SURRENDER+"'/>"));
 		debug.logp(Level.SEVERE, "AmazonPlayer", "surrender", "I surrender!");
-		debug.warning("Game ends with:"+board.getMarkedPos()+" arrows");
+		debug.logp(Level.WARNING, "AmazonPlayer", "surrender", "Game ends with:{0} arrows", board.getMarkedPos());
 		//Main.closeGame(0, "Game complete - loss");
 	}
 }
@@ -0,0 +1,38 @@
+package com.pas.cosc322.amazon.player;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event spanning the player's decision of a move, from
+ * the start of its turn until the move is chosen.
+ */
+@Name("com.pas.cosc322.amazon.MoveDecision")
+@Label("Move Decision")
+@Category({"Amazons", "Player"})
+@Description("The player deciding a move")
+@StackTrace(false)
+class MoveDecisionEvent extends Event
+{
+	@Label("Turn")
+	@Description("The number of squares marked on the board before the move")
+	int turn;
+
+	@Label("Source")
+	@Description("What decided the move: book, endgame, statespace, montecarlo or minimax")
+	String source;
+
+	@Label("Move")
+	@Description("The move made, empty if the player surrendered")
+	String move;
+
+	@Label("Target")
+	@Description("The time the time manager aimed the move to take")
+	@Timespan(Timespan.MILLISECONDS)
+	long target;
+}
@@ -0,0 +1,138 @@
+package com.pas.cosc322.amazon.player;
+
+import static com.pas.cosc322.amazon.main.Main.debug;
+
+import java.util.logging.Level;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.search.AdversarialSearch;
+import com.pas.cosc322.amazon.search.MoveStack;
+import com.pas.cosc322.amazon.search.PackedAction;
+import com.pas.cosc322.amazon.search.TranspositionTable;
+
+/**
+ * Searches on the opponent's time.  After we move, the opponent's most
+ * likely reply is guessed from the transposition table and our answer to
+ * it is searched in the background.  The ponder search shares its table
+ * with the main search, so when the opponent's move arrives the main
+ * search finds the pondered subtree in the table whether the guess was
+ * right or not.  On a hit it also resumes iterative deepening at the
+ * depth the ponder search completed.
+ */
+class Ponder implements Runnable
+{
+	private AdversarialSearch<AmazonBoard, AmazonMove, AmazonRole> search;
+	private MoveStack moves = new MoveStack(1, 1 << 12);
+
+	private Thread thread;
+	private AmazonBoard board;
+	private AmazonRole role;
+	private int guess = PackedAction.NO_ACTION;
+
+	/**
+	 * Constructor
+	 *
+	 * @param search the search to ponder with, sharing its table with the main search
+	 */
+	Ponder (AdversarialSearch<AmazonBoard, AmazonMove, AmazonRole> search)
+	{
+		this.search = search;
+	}
+
+	/**
+	 * Guesses the opponent's reply and starts searching our answer to it.
+	 *
+	 * @param board the board after our move, it is not modified
+	 * @param role our role
+	 * @param cutoffDepth the depth to start iterative deepening at
+	 */
+	void start (AmazonBoard board, AmazonRole role, int cutoffDepth)
+	{
+		guess = guess(board, role.other());
+		if (guess == PackedAction.NO_ACTION)
+		{
+			return;
+		}
+		this.board = board.clone();
+		this.board.applyAction(guess);
+		this.role = role;
+		search.setCutoffDepth(cutoffDepth);
+		thread = new Thread(this, "ponder");
+		thread.setDaemon(true);
+		thread.start();
+		if (debug.isLoggable(Level.INFO))
+		{
+			debug.logp(Level.INFO, "Ponder", "start", "Pondering on:{0}", AmazonMove.unpack(guess));
+		}
+	}
+
+	@Override
+	public void run ()
+	{
+		search.minimaxDecision(role, role.other(), board);
+	}
+
+	/**
+	 * Cancels the ponder search and waits for it to unwind.
+	 *
+	 * @param move the move the opponent made
+	 * @return the depth the ponder search completed if it pondered on move, otherwise 0
+	 */
+	int stop (AmazonMove move)
+	{
+		if (thread == null)
+		{
+			return 0;
+		}
+		// the search lowers its abort flag when it starts, keep raising it until the thread is gone
+		while (thread.isAlive())
+		{
+			search.abort();
+			try
+			{
+				thread.join(10);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		thread = null;
+		board = null;
+		boolean hit = move.pack() == guess;
+		if (debug.isLoggable(Level.INFO))
+		{
+			debug.logp(Level.INFO, "Ponder", "stop", "Ponder {0} at depth:{1}", new Object[] {hit ? "hit" : "miss", search.getCutoffDepth()});
+		}
+		return hit ? search.getCutoffDepth() : 0;
+	}
+
+	// the table's best reply from the last search, or the best ordered reply if the node was not stored
+	private int guess (AmazonBoard board, AmazonRole opponent)
+	{
+		long entry = search.getTable().probe(board.hashKey());
+		if (entry != 0)
+		{
+			int action = TranspositionTable.action(entry);
+			if (action != PackedAction.NO_ACTION && AmazonMove.role(action) == opponent)
+			{
+				return action;
+			}
+		}
+		int best = PackedAction.NO_ACTION;
+		moves.clear();
+		moves.push();
+		board.actions(opponent, moves);
+		for (int i = moves.begin(), score = Integer.MIN_VALUE; i < moves.end(); i++)
+		{
+			if (moves.score(i) > score)
+			{
+				score = moves.score(i);
+				best = moves.action(i);
+			}
+		}
+		moves.pop();
+		return best;
+	}
+}
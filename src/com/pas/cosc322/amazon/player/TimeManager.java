@@ -0,0 +1,132 @@
+package com.pas.cosc322.amazon.player;
+
+import static com.pas.cosc322.amazon.main.Main.debug;
+import static com.pas.cosc322.amazon.main.ProjectConstants.searchTime;
+
+import java.util.logging.Level;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.search.PackedAction;
+import com.pas.cosc322.amazon.search.TimeControl;
+
+/**
+ * Allocates the search time of each move.
+ * <p>
+ * No move may use more than the search time less a margin for network
+ * latency.  Within that each move gets a target: the full time while many
+ * moves remain, less in the opening and as the board fills, and little
+ * when the board is enclosed or the move is nearly forced.  The search is
+ * aborted at a few times the target, and between IDS iterations it stops
+ * once the next iteration is unlikely to finish within the target, or
+ * early when the best action has held for several iterations.  Each change
+ * of the best action stretches the target towards the abort time.
+ */
+public class TimeManager implements TimeControl
+{
+	/** time (in ms) kept back from every move for network latency */
+	public static final long LATENCY_MARGIN = 250;
+	/** least time (in ms) a move is given */
+	public static final long MIN_TIME = 200;
+
+	// the most moves a player can make over a game (92 free squares, two per turn)
+	private static final int GAME_MOVES = 46;
+	// moves searched with the full target while more than this many remain
+	private static final int CRITICAL_MOVES = 24;
+	// the opening, in marked positions, is searched with a reduced target
+	private static final int OPENING_POSITIONS = 6;
+
+	private static final double OPENING_WEIGHT = 0.5;
+	private static final double MIN_WEIGHT = 0.25;
+	private static final double ENCLOSED_WEIGHT = 0.25;
+	// a target stretched by instability
+	private static final double UNSTABLE_FACTOR = 1.5;
+	// how far instability may stretch the target, the search is aborted there
+	private static final double MAX_STRETCH = 2.5;
+	// an iteration takes at least as long as all before it, so one started past half the target will not finish in time
+	private static final double NEXT_ITERATION_FRACTION = 0.5;
+	// after this many iterations with the same best action, part of the target is enough
+	private static final int STABLE_ITERATIONS = 3;
+	private static final double STABLE_FRACTION = 0.2;
+
+	private long hardLimit;
+	private long target;
+
+	private int lastBest;
+	private int stableIterations;
+
+	/**
+	 * Allocates the time of the next move.
+	 *
+	 * @param board the board before the move
+	 * @param role the role to move
+	 * @param enclosed if the board is enclosed and the move decides nothing contested
+	 */
+	public void startMove (AmazonBoard board, AmazonRole role, boolean enclosed)
+	{
+		hardLimit = Math.max(MIN_TIME, searchTime - LATENCY_MARGIN);
+		double weight;
+		if (board.queenMoves(role) <= 1)
+		{
+			// only the arrow is left to choose
+			weight = 0;
+		}
+		else if (enclosed)
+		{
+			weight = ENCLOSED_WEIGHT;
+		}
+		else if (board.getMarkedPos() < OPENING_POSITIONS)
+		{
+			weight = OPENING_WEIGHT;
+		}
+		else
+		{
+			// the fewer moves remain, the less each can change
+			int remaining = GAME_MOVES - board.getMarkedPos() / 2;
+			weight = Math.max(MIN_WEIGHT, Math.min(1, remaining / (double) CRITICAL_MOVES));
+		}
+		target = Math.max(MIN_TIME, (long) (hardLimit * weight));
+		hardLimit = Math.min(hardLimit, (long) (target * MAX_STRETCH));
+		lastBest = PackedAction.NO_ACTION;
+		stableIterations = 0;
+		if (debug.isLoggable(Level.INFO))
+		{
+			debug.logp(Level.INFO, "TimeManager", "startMove", "target:{0} hard limit:{1}", new Object[] {target, hardLimit});
+		}
+	}
+
+	@Override
+	public long hardLimit ()
+	{
+		return hardLimit;
+	}
+
+	@Override
+	public long target ()
+	{
+		return target;
+	}
+
+	@Override
+	public boolean nextIteration (int depth, int bestAction, long elapsed)
+	{
+		if (bestAction == lastBest)
+		{
+			stableIterations++;
+		}
+		else
+		{
+			// the search has not settled, give it longer
+			if (lastBest != PackedAction.NO_ACTION)
+			{
+				target = Math.min(hardLimit, (long) (target * UNSTABLE_FACTOR));
+			}
+			lastBest = bestAction;
+			stableIterations = 0;
+		}
+		if (elapsed >= target * NEXT_ITERATION_FRACTION)
+		{
+			return false;
+		}
+		return stableIterations < STABLE_ITERATIONS || elapsed < target * STABLE_FRACTION;
+	}
+}
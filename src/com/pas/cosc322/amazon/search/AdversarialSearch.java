@@ -0,0 +1,54 @@
+package com.pas.cosc322.amazon.search;
+
+/**
+ * A two player search that picks the best action for the MAX player by
+ * Iterative Deepening Search.
+ *
+ * @param <S> State type
+ * @param <A> Action type
+ * @param <M> MinimaxPlayer type
+ */
+public interface AdversarialSearch <S extends PackedState<A, M>, A extends PackedAction, M extends MinimaxPlayer>
+{
+	/**
+	 * Searches the game tree and returns the best possible action according
+	 * to the evaluation function and bounded by the cutoff function.
+	 *
+	 * @param maxPlayer the MAX player
+	 * @param minPlayer the MIN player
+	 * @param state initial state
+	 * @return an action, or null if there is none
+	 */
+	public A minimaxDecision (M maxPlayer, M minPlayer, S state);
+
+	/**
+	 * Aborts a running search from another thread, the search returns the
+	 * best action it has found so far.
+	 */
+	public void abort ();
+
+	/**
+	 * @return the transposition table used by this search
+	 */
+	public TranspositionTable getTable ();
+
+	/**
+	 * @param timeControl decides how long each search runs, or null to always search for the search time
+	 */
+	public void setTimeControl (TimeControl timeControl);
+
+	/**
+	 * @return the current depth at which a search will end during IDS
+	 */
+	public int getCutoffDepth ();
+
+	/**
+	 * @param cutoffDepth the depth to end a search during IDS
+	 */
+	public void setCutoffDepth (int cutoffDepth);
+
+	/**
+	 * @param metrics the metrics the search counts into, SearchMetrics.get() unless it is set
+	 */
+	public void setMetrics (SearchMetrics metrics);
+}
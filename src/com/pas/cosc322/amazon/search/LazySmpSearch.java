@@ -0,0 +1,467 @@
+package com.pas.cosc322.amazon.search;
+
+import static com.pas.cosc322.amazon.main.Main.debug;
+import static com.pas.cosc322.amazon.main.ProjectConstants.minMemory;
+import static com.pas.cosc322.amazon.main.ProjectConstants.searchTime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+/**
+ * A Minimax search with Alpha-Beta Pruning and Iterative Deepening Search
+ * run by several threads at once, Lazy SMP style.
+ * <p>
+ * Every thread searches the whole tree on its own clone of the state and
+ * the threads share nothing but the transposition table.  The helper
+ * threads start at staggered depths and visit the root actions in rotated
+ * orders, so they fill the table with bounds and best actions the main
+ * thread finds when it gets there.  Only the iterations the main thread
+ * completes are trusted; helpers are stopped as soon as it finishes.
+ *
+ * @param <S> State type
+ * @param <A> Action type
+ * @param <M> MinimaxPlayer type
+ */
+public class LazySmpSearch <S extends PackedState<A, M>, A extends PackedAction, M extends MinimaxPlayer> implements AdversarialSearch<S, A, M>
+{
+	private int maxThreads;
+	private ForkJoinPool helpers;
+	private long startTime;
+
+	private TranspositionTable table;
+	private MoveStack rootMoves = new MoveStack(1, 1 << 12);
+	private int[] rootActions;
+
+	private M maxPlayer, minPlayer;
+
+	private volatile int cutoffDepth = 1;
+	private volatile boolean stopped;
+	private SearchDeadline deadline = new SearchDeadline();
+	private TimeControl timeControl;
+	private SearchMetrics metrics = SearchMetrics.get();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxThreads the number of threads searching, including the calling thread
+	 */
+	public LazySmpSearch (int maxThreads)
+	{
+		this(maxThreads, new TranspositionTable());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxThreads the number of threads searching, including the calling thread
+	 * @param table the transposition table to share between the search threads
+	 */
+	public LazySmpSearch (int maxThreads, TranspositionTable table)
+	{
+		this.maxThreads = maxThreads;
+		this.table = table;
+		if (maxThreads > 1)
+		{
+			helpers = new ForkJoinPool(maxThreads - 1);
+		}
+	}
+
+	@Override
+	public void abort ()
+	{
+		deadline.abort();
+	}
+
+	@Override
+	public TranspositionTable getTable ()
+	{
+		return table;
+	}
+
+	@Override
+	public void setTimeControl (TimeControl timeControl)
+	{
+		this.timeControl = timeControl;
+	}
+
+	@Override
+	public int getCutoffDepth ()
+	{
+		return cutoffDepth;
+	}
+
+	@Override
+	public void setCutoffDepth (int cutoffDepth)
+	{
+		this.cutoffDepth = cutoffDepth;
+	}
+
+	/**
+	 * @param metrics the metrics the search counts into
+	 */
+	public void setMetrics (SearchMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public A minimaxDecision (M maxPlayer, M minPlayer, S state)
+	{
+		// record the start time of the search and arm its deadline
+		startTime = System.currentTimeMillis();
+		deadline.start(timeControl == null ? searchTime : timeControl.hardLimit(), minMemory);
+		metrics.start(helpers);
+		// stored scores are relative to the MAX player, they mean nothing to the other player
+		if (this.maxPlayer != null && this.maxPlayer != maxPlayer)
+		{
+			table.clear();
+		}
+		this.maxPlayer = maxPlayer;
+		this.minPlayer = minPlayer;
+		// the root actions are shared by every thread, each visits them in its own order
+		rootMoves.push();
+		state.actions(maxPlayer, rootMoves);
+		rootActions = new int[rootMoves.size()];
+		for (int i = rootMoves.begin(); i < rootMoves.end(); i++)
+		{
+			rootActions[i - rootMoves.begin()] = rootMoves.action(i);
+		}
+		rootMoves.pop();
+		if (rootActions.length == 0)
+		{
+			deadline.stop();
+			metrics.finish(helpers, System.currentTimeMillis()-startTime);
+			return null;
+		}
+		// start the helpers, then search on the calling thread as the main thread
+		stopped = false;
+		List<Future<SearchResult<A>>> results = new ArrayList<Future<SearchResult<A>>>(maxThreads - 1);
+		for (int id = 1; id < maxThreads; id++)
+		{
+			results.add(helpers.submit(new LazySmpSearchThread((S) state.clone(), id, cutoffDepth + (id & 1))));
+		}
+		LazySmpSearchThread main = new LazySmpSearchThread((S) state.clone(), 0, cutoffDepth);
+		SearchResult<A> globalBest = main.call();
+		// the main thread is done, the helpers' work is of no further use
+		stopped = true;
+		for (Future<SearchResult<A>> result : results)
+		{
+			try
+			{
+				result.get();
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+		}
+		cutoffDepth = main.completedDepth;
+		deadline.stop();
+		metrics.finish(helpers, System.currentTimeMillis()-startTime);
+		if (debug.isLoggable(Level.INFO))
+		{
+			debug.logp(Level.INFO, "LazySmpSearch", "minimaxDecision", "Search took:{0} maximum depth:{1} best value:{2}", new Object[] {System.currentTimeMillis()-startTime, cutoffDepth, globalBest.v});
+		}
+		return globalBest.action;
+	}
+
+	/**
+	 * An iterative deepening alpha-beta search to be executed on a thread.
+	 */
+	private class LazySmpSearchThread implements Callable<SearchResult<A>>
+	{
+		private S state;
+		private int id;
+		private MoveStack moves = new MoveStack();
+
+		private int iterationDepth;
+		private int completedDepth;
+		private int localMaxDepth;
+		private boolean isCutoff;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param state the root state, owned by this thread
+		 * @param id the thread's number, 0 for the main thread
+		 * @param depth the cutoff depth of the thread's first iteration
+		 */
+		public LazySmpSearchThread (S state, int id, int depth)
+		{
+			this.state = state;
+			this.id = id;
+			this.iterationDepth = depth;
+			this.completedDepth = depth - 1;
+		}
+
+		@Override
+		public SearchResult<A> call ()
+		{
+			// the best result of any search
+			SearchResult<A> globalBest = new SearchResult<A>(Integer.MIN_VALUE, null);
+			// the nodes of the last completed iteration, for the effective branching factor
+			long lastNodes = 0;
+			// begin IDS
+			do
+			{
+				long iterationStart = System.currentTimeMillis(), nodes = metrics.nodes();
+				SearchIterationEvent event = new SearchIterationEvent();
+				event.begin();
+				localMaxDepth = 1;
+				isCutoff = false;
+				SearchResult<A> localBest = rootValue();
+				// only a completed iteration is trusted, unless there is nothing better
+				if (!isCutoff || globalBest.action == null)
+				{
+					globalBest = localBest;
+				}
+				if (!isCutoff)
+				{
+					completedDepth = iterationDepth;
+				}
+				// every thread counts its nodes, only the main thread's iterations are timed
+				if (id == 0)
+				{
+					nodes = metrics.nodes() - nodes;
+					if (!isCutoff)
+					{
+						metrics.iteration(nodes, lastNodes, System.currentTimeMillis() - iterationStart);
+						lastNodes = nodes;
+					}
+					event.commit("LazySmpSearch", iterationDepth, nodes, deadline, localMaxDepth < iterationDepth);
+				}
+				iterationDepth++;
+			}
+			// if we didn't make the target depth then we won't make a deeper target depth next iteration; end the search
+			while (!isCutoff && localMaxDepth >= iterationDepth - 1 && nextIteration(globalBest));
+			return globalBest;
+		}
+
+		private boolean nextIteration (SearchResult<A> best)
+		{
+			// only the main thread's iterations are trusted, so only it consults the time control
+			return id != 0 || timeControl == null || timeControl.nextIteration(completedDepth, best.action.pack(), System.currentTimeMillis() - startTime);
+		}
+
+		private SearchResult<A> rootValue ()
+		{
+			int alpha = Integer.MIN_VALUE, v = Integer.MIN_VALUE, value;
+			int best = PackedAction.NO_ACTION;
+			// helpers rotate the root actions so the threads spread over different subtrees
+			for (int i = 0; i < rootActions.length; i++)
+			{
+				int action = rootActions[(i + id) % rootActions.length];
+				state.applyAction(action);
+				// note depth 2, the root is depth 1
+				value = minValue(alpha, Integer.MAX_VALUE, 2);
+				state.undoAction(action);
+				// the value of a subtree the cutoff reached is a placeholder, never compare it
+				if (isCutoff)
+				{
+					break;
+				}
+				if (value > v || best == PackedAction.NO_ACTION)
+				{
+					v = value;
+					best = action;
+				}
+				alpha = Math.max(alpha, v);
+			}
+			if (best == PackedAction.NO_ACTION)
+			{
+				// nothing completed, fall back on the best ordered action
+				best = rootActions[0];
+			}
+			return new SearchResult<A>(v, state.unpack(best));
+		}
+
+		private int maxValue (int alpha, int beta, int depth)
+		{
+			localMaxDepth = Math.max(depth, localMaxDepth);
+			// unwind as soon as the search is aborted or the main thread's search ends, the value is never trusted
+			if (stopped || deadline.isAborted())
+			{
+				isCutoff = true;
+				return 0;
+			}
+			metrics.node();
+			if (depth >= iterationDepth)
+			{
+				return evaluate();
+			}
+			// consult the transposition table for a bound or a best action from any thread
+			long key = state.hashKey();
+			long entry = table.probe(key);
+			int alphaOrig = alpha, betaOrig = beta;
+			if (entry != 0 && TranspositionTable.depth(entry) >= iterationDepth - depth)
+			{
+				int score = TranspositionTable.score(entry);
+				switch (TranspositionTable.bound(entry))
+				{
+					case TranspositionTable.EXACT: return hit(depth, entry);
+					case TranspositionTable.LOWER: alpha = Math.max(alpha, score); break;
+					case TranspositionTable.UPPER: beta = Math.min(beta, score); break;
+				}
+				if (alpha >= beta)
+				{
+					return hit(depth, entry);
+				}
+			}
+			// actions for MAX player
+			moves.push(depth, entry == 0 ? PackedAction.NO_ACTION : TranspositionTable.action(entry));
+			state.actions(maxPlayer, moves);
+			// we can end the search here if there are no successors
+			if (moves.size() == 0)
+			{
+				moves.pop();
+				return evaluate();
+			}
+			metrics.expansion();
+			int action, best = PackedAction.NO_ACTION;
+			int v = Integer.MIN_VALUE, value;
+			// standard alpha-beta search
+			for (int i = moves.begin(), end = moves.end(); i < end; i++)
+			{
+				action = moves.action(i);
+				state.applyAction(action);
+				value = minValue(alpha, beta, depth + 1);
+				// because we are using one state instance make sure to undo the action during back-tracking!
+				state.undoAction(action);
+				if (isCutoff)
+				{
+					break;
+				}
+				if (value > v || best == PackedAction.NO_ACTION)
+				{
+					v = value;
+					best = action;
+				}
+				if (v >= beta)
+				{
+					moves.cutoff(action, iterationDepth - depth);
+					metrics.cutoff(i == moves.begin());
+					break;
+				}
+				alpha = Math.max(alpha, v);
+			}
+			moves.pop();
+			store(key, depth, alphaOrig, betaOrig, v, best);
+			return v;
+		}
+
+		private int minValue (int alpha, int beta, int depth)
+		{
+			localMaxDepth = Math.max(depth, localMaxDepth);
+			// unwind as soon as the search is aborted or the main thread's search ends, the value is never trusted
+			if (stopped || deadline.isAborted())
+			{
+				isCutoff = true;
+				return 0;
+			}
+			metrics.node();
+			if (depth >= iterationDepth)
+			{
+				return evaluate();
+			}
+			// consult the transposition table for a bound or a best action from any thread
+			long key = state.hashKey();
+			long entry = table.probe(key);
+			int alphaOrig = alpha, betaOrig = beta;
+			if (entry != 0 && TranspositionTable.depth(entry) >= iterationDepth - depth)
+			{
+				int score = TranspositionTable.score(entry);
+				switch (TranspositionTable.bound(entry))
+				{
+					case TranspositionTable.EXACT: return hit(depth, entry);
+					case TranspositionTable.LOWER: alpha = Math.max(alpha, score); break;
+					case TranspositionTable.UPPER: beta = Math.min(beta, score); break;
+				}
+				if (alpha >= beta)
+				{
+					return hit(depth, entry);
+				}
+			}
+			// actions for MIN player
+			moves.push(depth, entry == 0 ? PackedAction.NO_ACTION : TranspositionTable.action(entry));
+			state.actions(minPlayer, moves);
+			// we can end the search here if there are no successors
+			if (moves.size() == 0)
+			{
+				moves.pop();
+				return evaluate();
+			}
+			metrics.expansion();
+			int action, best = PackedAction.NO_ACTION;
+			int v = Integer.MAX_VALUE, value;
+			// standard alpha-beta search
+			for (int i = moves.begin(), end = moves.end(); i < end; i++)
+			{
+				action = moves.action(i);
+				state.applyAction(action);
+				value = maxValue(alpha, beta, depth + 1);
+				// because we are using one state instance make sure to undo the action during back-tracking!
+				state.undoAction(action);
+				if (isCutoff)
+				{
+					break;
+				}
+				if (value < v || best == PackedAction.NO_ACTION)
+				{
+					v = value;
+					best = action;
+				}
+				if (v <= alpha)
+				{
+					moves.cutoff(action, iterationDepth - depth);
+					metrics.cutoff(i == moves.begin());
+					break;
+				}
+				beta = Math.min(beta, v);
+			}
+			moves.pop();
+			store(key, depth, alphaOrig, betaOrig, v, best);
+			return v;
+		}
+
+		// a table hit stands for the search that stored it, count the depth that search reached
+		private int hit (int depth, long entry)
+		{
+			localMaxDepth = Math.max(depth + TranspositionTable.depth(entry), localMaxDepth);
+			return TranspositionTable.score(entry);
+		}
+
+		private int evaluate ()
+		{
+			metrics.evaluation();
+			return state.evaluate(maxPlayer);
+		}
+
+		private void store (long key, int depth, int alpha, int beta, int v, int best)
+		{
+			// values backed up from a cutoff search are incomplete, never keep them
+			if (isCutoff)
+			{
+				return;
+			}
+			int bound;
+			if (v <= alpha)
+			{
+				bound = TranspositionTable.UPPER;
+			}
+			else if (v >= beta)
+			{
+				bound = TranspositionTable.LOWER;
+			}
+			else
+			{
+				bound = TranspositionTable.EXACT;
+			}
+			table.store(key, iterationDepth - depth, bound, v, best);
+		}
+	}
+}
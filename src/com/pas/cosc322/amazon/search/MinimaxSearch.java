@@ -1,23 +1,43 @@
 package com.pas.cosc322.amazon.search;
 
 import static com.pas.cosc322.amazon.main.Main.debug;
+import static com.pas.cosc322.amazon.main.ProjectConstants.minMemory;
+import static com.pas.cosc322.amazon.main.ProjectConstants.searchTime;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 /**
  * A Minimax search algorithm with makes use of Alpha-Beta Pruning,
- * Iterative Deepening Search, and Best-First techniques.  Also uses
- * a thread pool to concurrently search branches.
+ * Iterative Deepening Search, and Best-First techniques.  Search results are
+ * kept in a transposition table shared by all threads so each IDS
+ * iteration can reuse the bounds and best actions of the last.
+ * <p>
+ * Branches are searched concurrently on a work-stealing pool that lives as
+ * long as the search.  Nodes are split with Young Brothers Wait: the eldest
+ * child of a node is searched alone to establish a bound, then its younger
+ * brothers are forked as tasks that share the node's alpha and beta through
+ * a SplitPoint.  Idle threads steal these tasks, so a slow subtree anywhere
+ * in the tree is shared out rather than holding up the iteration.
+ * <p>
+ * Younger brothers are first searched with a null window (Principal
+ * Variation Search): they only have to prove they are no better than the
+ * best action so far, and are searched again with the full window when
+ * they fail to.  Each IDS iteration searches the root with an aspiration
+ * window around the value of the last, widening it when the value falls
+ * outside.
+ * <p>
+ * After every iteration the root actions are sorted by the values they
+ * scored, with the best action first, so the next iteration searches the
+ * principal variation first.  An iteration cut off by the deadline is
+ * still used once its first action has been searched to the new depth:
+ * the best action it found is at least as good as the last iteration's.
  * 
  * @author Paul
  * 
@@ -25,26 +45,87 @@ import java.util.logging.Level;
  * @param <A> Action type
  * @param <M> MinimaxPlayer type
  */
-public class MinimaxSearch <S extends State<A, M>, A extends Action, M extends MinimaxPlayer>
+public class MinimaxSearch <S extends PackedState<A, M>, A extends PackedAction, M extends MinimaxPlayer> implements AdversarialSearch<S, A, M>
 {
-	private int maxThreads;
+	/** the least remaining depth below a node for its children to be searched in parallel */
+	private static final int MIN_SPLIT_DEPTH = 2;
+	/** the most surplus tasks a thread may have queued and still split a node */
+	private static final int MAX_SURPLUS_TASKS = 2;
+	/** the initial distance of the aspiration window's bounds from the last iteration's value */
+	private static final int ASPIRATION_WINDOW = 16;
+	
+	private ForkJoinPool pool;
 	private long startTime;
 	
+	private TranspositionTable table;
+	private MoveStack rootMoves = new MoveStack(1, 1 << 12);
+	
 	private M maxPlayer, minPlayer;
 	
 	private volatile int cutoffDepth = 1;
 	
 	private AtomicInteger localMaxDepth = new AtomicInteger();
-	private AtomicBoolean isCutoff = new AtomicBoolean();
+	private SearchDeadline deadline = new SearchDeadline();
+	private TimeControl timeControl;
+	private SearchMetrics metrics = SearchMetrics.get();
+	// the best value proven for any root action this iteration, no node needs to search below it
+	private AtomicInteger rootAlpha = new AtomicInteger();
+	
+	// each worker thread reuses one move stack for all of the tasks it runs
+	private ThreadLocal<MoveStack> moveStacks = new ThreadLocal<MoveStack>()
+	{
+		@Override
+		protected MoveStack initialValue ()
+		{
+			return new MoveStack();
+		}
+	};
 
 	/**
 	 * Constructor
 	 * 
-	 * @param maxThreads the max threads to use in the thread pool
+	 * @param maxThreads the parallelism of the search pool
 	 */
 	public MinimaxSearch (int maxThreads)
 	{
-		this.maxThreads = maxThreads;
+		this(maxThreads, new TranspositionTable());
+	}
+	
+	/**
+	 * Constructor
+	 * 
+	 * @param maxThreads the parallelism of the search pool
+	 * @param table the transposition table to share between the search threads
+	 */
+	public MinimaxSearch (int maxThreads, TranspositionTable table)
+	{
+		this.pool = new ForkJoinPool(maxThreads);
+		this.table = table;
+	}
+	
+	/**
+	 * Aborts a running search from another thread, the search returns the
+	 * best action it has found so far.
+	 */
+	public void abort ()
+	{
+		deadline.abort();
+	}
+	
+	/**
+	 * @return the transposition table used by this search
+	 */
+	public TranspositionTable getTable ()
+	{
+		return table;
+	}
+	
+	/**
+	 * @param timeControl decides how long each search runs, or null to always search for the search time
+	 */
+	public void setTimeControl (TimeControl timeControl)
+	{
+		this.timeControl = timeControl;
 	}
 	
 	/**
@@ -62,6 +143,14 @@ public class MinimaxSearch <S extends State<A, M>, A extends Action, M extends M
 	{
 		this.cutoffDepth = cutoffDepth;
 	}
+	
+	/**
+	 * @param metrics the metrics the search counts into
+	 */
+	public void setMetrics (SearchMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
 
 	/**
 	 * Searches the game tree and returns the best possible action according
@@ -72,215 +161,675 @@ public class MinimaxSearch <S extends State<A, M>, A extends Action, M extends M
 	 * @param state initial state
 	 * @return an action
 	 */
-	@SuppressWarnings("unchecked")
 	public A minimaxDecision (M maxPlayer, M minPlayer, S state)
 	{
-		// record the start time of the search for the cutoff functions
+		// record the start time of the search and arm its deadline
 		startTime = System.currentTimeMillis();
+		deadline.start(timeControl == null ? searchTime : timeControl.hardLimit(), minMemory);
+		metrics.start(pool);
+		// stored scores are relative to the MAX player, they mean nothing to the other player
+		if (this.maxPlayer != null && this.maxPlayer != maxPlayer)
+		{
+			table.clear();
+		}
 		this.maxPlayer = maxPlayer;
 		this.minPlayer = minPlayer;
 		// cutoff depth for IDS
-		// the best result of any search
+		// the best result of the deepest usable search
 		SearchResult<A> globalBest = new SearchResult<A>(Integer.MIN_VALUE, null);
-		// construct the search sub trees, they will persist through each iteration
-		List<MinimaxSearchThread> searchThreads = new LinkedList<MinimaxSearchThread>();
-		for (Queue<A> actions = state.actions(maxPlayer); !actions.isEmpty();)
+		// the root actions, they will persist through each iteration and be reordered by it
+		rootMoves.push();
+		state.actions(maxPlayer, rootMoves);
+		int[] rootActions = new int[rootMoves.size()];
+		for (int i = rootMoves.begin(); i < rootMoves.end(); i++)
+		{
+			rootActions[i - rootMoves.begin()] = rootMoves.action(i);
+		}
+		rootMoves.pop();
+		if (rootActions.length == 0)
 		{
-			searchThreads.add(new MinimaxSearchThread((S) state.clone(), actions.remove()));
+			deadline.stop();
+			metrics.finish(pool, System.currentTimeMillis()-startTime);
+			return null;
 		}
+		// the value of the last completed iteration, the first is searched with a full window
+		Integer lastValue = null;
+		// the nodes of the last completed iteration, for the effective branching factor
+		long lastNodes = 0;
 		// begin IDS
 		do
 		{
+			long iterationStart = System.currentTimeMillis(), nodes = metrics.nodes();
+			SearchIterationEvent event = new SearchIterationEvent();
+			event.begin();
 			// the best depth achieved by this search
 			localMaxDepth.set(1);
-			// if this search was terminated by a cutoff test
-			isCutoff.set(false);
-			// construct our thread pool
-			ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
-			List<Future<SearchResult<A>>> results = new LinkedList<Future<SearchResult<A>>>();
-			// supply each worker thread with a subtree
-			for (MinimaxSearchThread searchThread : searchThreads)
-			{
-				results.add(executor.submit(searchThread));
-			}
-			SearchResult<A> localBest = new SearchResult(Integer.MIN_VALUE, null);
-			try
-			{
-				// close the pool and wait for execution completion
-				executor.shutdown();
-				// we'll assume the timeout occurs naturally from the search cutoff test
-				executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
-				// find the best result for this search
-				SearchResult search;
-				for (Future<SearchResult<A>> result : results)
+			int delta = ASPIRATION_WINDOW;
+			long alpha = lastValue == null ? Integer.MIN_VALUE : lastValue - delta;
+			long beta = lastValue == null ? Integer.MAX_VALUE : lastValue + delta;
+			RootSearchTask search;
+			SplitPoint root;
+			// the lower bound of the last window searched, the root's own alpha rises with every value reported
+			int windowAlpha;
+			while (true)
+			{
+				windowAlpha = (int) Math.max(alpha, Integer.MIN_VALUE);
+				search = searchRoot(state, rootActions, windowAlpha, (int) Math.min(beta, Integer.MAX_VALUE));
+				root = search.root;
+				if (deadline.isAborted())
+				{
+					break;
+				}
+				// the value fell outside the window, widen the side it fell out of and search again
+				delta *= 2;
+				if (root.v <= alpha && alpha > Integer.MIN_VALUE)
 				{
-					search = result.get();
-					localBest.max(search);
+					alpha = (long) root.v - delta;
 				}
+				else if (root.v >= beta && beta < Integer.MAX_VALUE)
+				{
+					beta = (long) root.v + delta;
+				}
+				else
+				{
+					break;
+				}
+			}
+			nodes = metrics.nodes() - nodes;
+			if (!deadline.isAborted())
+			{
+				lastValue = root.v;
+				metrics.iteration(nodes, lastNodes, System.currentTimeMillis() - iterationStart);
+				lastNodes = nodes;
 			}
-			catch (Exception e)
+			event.commit("MinimaxSearch", cutoffDepth, nodes, deadline, localMaxDepth.get() < cutoffDepth);
+			// IMPORTANT: only trust this iteration if it was not cut off, or if the
+			// action searched first (the last iteration's best) made the new depth.
+			// Every action reported to the root completed the new depth, so the best
+			// of them is no worse than the last best.  A failed low window proves nothing.
+			if (root.best != PackedAction.NO_ACTION && (!deadline.isAborted() || (search.pvComplete && root.v > windowAlpha)))
 			{
-				e.printStackTrace();
+				globalBest = new SearchResult<A>(root.v, state.unpack(root.best));
 			}
-			// IMPORTANT: only update the global max if we have truly achieved a
-			// deeper search this iteration by not being cutoff.  This could produce
-			// a false positive if the search was cutoff with mixed depths.
-			if (!isCutoff.get() || globalBest.action == null)
+			else if (globalBest.action == null)
 			{
-				globalBest.max(localBest);
+				// nothing completed, fall back on the best ordered action
+				globalBest = new SearchResult<A>(root.v, state.unpack(rootActions[0]));
 			}
+			reorder(rootActions, search.values, root.best);
 			cutoffDepth++;
 		}
 		// if we didn't make the target depth then we won't make a deeper target depth next iteration; end the search
-		while (!isCutoff.get() && localMaxDepth.get() >= cutoffDepth - 1);
+		while (!deadline.isAborted() && localMaxDepth.get() >= cutoffDepth - 1 && nextIteration(globalBest));
 		cutoffDepth -= 2;
-		debug.logp(Level.INFO, "MinimaxSearch", "minimaxDecision", "Search took:"+(System.currentTimeMillis()-startTime)+" maximum depth:"+cutoffDepth+" best value:"+globalBest.v);
+		deadline.stop();
+		metrics.finish(pool, System.currentTimeMillis()-startTime);
+		if (debug.isLoggable(Level.INFO))
+		{
+			debug.logp(Level.INFO, "MinimaxSearch", "minimaxDecision", "Search took:{0} maximum depth:{1} best value:{2}", new Object[] {System.currentTimeMillis()-startTime, cutoffDepth, globalBest.v});
+		}
 		return globalBest.action;
 	}
-
+	
+	private boolean nextIteration (SearchResult<A> best)
+	{
+		return timeControl == null || timeControl.nextIteration(cutoffDepth - 1, best.action.pack(), System.currentTimeMillis() - startTime);
+	}
+	
+	private RootSearchTask searchRoot (S state, int[] rootActions, int alpha, int beta)
+	{
+		rootAlpha.set(alpha);
+		SplitPoint root = new SplitPoint(null, true, alpha, beta, Integer.MIN_VALUE, PackedAction.NO_ACTION);
+		RootSearchTask search = new RootSearchTask(state, rootActions, root);
+		try
+		{
+			// search the root on the pool, the calling thread waits for it to finish
+			pool.invoke(search);
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+		}
+		return search;
+	}
+	
+	private void reorder (int[] rootActions, int[] values, int best)
+	{
+		// a stable insertion sort by descending value, the best action goes first
+		for (int i = 0; i < rootActions.length; i++)
+		{
+			if (rootActions[i] == best)
+			{
+				values[i] = Integer.MAX_VALUE;
+			}
+		}
+		for (int i = 1; i < rootActions.length; i++)
+		{
+			int action = rootActions[i], value = values[i], j = i;
+			for (; j > 0 && values[j - 1] < value; j--)
+			{
+				rootActions[j] = rootActions[j - 1];
+				values[j] = values[j - 1];
+			}
+			rootActions[j] = action;
+			values[j] = value;
+		}
+	}
+	
 	/**
-	 * A Callable alpha-beta search to be executed on a thread.
-	 * 
-	 * @author Paul
+	 * The bounds and best result of a node whose children are being searched
+	 * in parallel.  Every child task reports its value here, and reads the
+	 * bound raised by its siblings.  Once the node is cut off its split
+	 * point is stopped, and every task below it returns without finishing.
 	 */
-	private class MinimaxSearchThread implements Callable<SearchResult<A>>
+	private class SplitPoint
 	{
+		private final SplitPoint parent;
+		private final boolean max;
+		
+		private volatile int alpha, beta;
+		private volatile boolean stopped;
+		
+		private int v, best;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param parent the split point above this one, or null
+		 * @param max if the node is a MAX node
+		 * @param alpha the node's alpha
+		 * @param beta the node's beta
+		 * @param v the node's value from its eldest child
+		 * @param best the node's best action so far, or NO_ACTION
+		 */
+		public SplitPoint (SplitPoint parent, boolean max, int alpha, int beta, int v, int best)
+		{
+			this.parent = parent;
+			this.max = max;
+			this.alpha = alpha;
+			this.beta = beta;
+			this.v = v;
+			this.best = best;
+		}
+		
+		/**
+		 * Reports the value of a child, raising the node's bound and stopping
+		 * the node if the value causes a cutoff.
+		 * 
+		 * @param action the packed action of the child
+		 * @param value the child's value
+		 */
+		public synchronized void update (int action, int value)
+		{
+			if (max)
+			{
+				if (value > v || best == PackedAction.NO_ACTION)
+				{
+					v = value;
+					best = action;
+				}
+				alpha = Math.max(alpha, v);
+				// the root's alpha is read by every node of the search
+				if (parent == null)
+				{
+					rootAlpha.set(alpha);
+				}
+			}
+			else
+			{
+				if (value < v || best == PackedAction.NO_ACTION)
+				{
+					v = value;
+					best = action;
+				}
+				beta = Math.min(beta, v);
+			}
+			if (alpha >= beta)
+			{
+				stopped = true;
+			}
+		}
+		
+		/**
+		 * @return if this node or any node above it has been cut off
+		 */
+		public boolean isStopped ()
+		{
+			for (SplitPoint split = this; split != null; split = split.parent)
+			{
+				if (split.stopped)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * Searches the root actions, the eldest first and then its younger
+	 * brothers in parallel.  Keeps the value of every root action that
+	 * completed the search.
+	 */
+	private class RootSearchTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
 		private S state;
-		private A parentAction;
+		private int[] actions;
+		private SplitPoint root;
+		
+		/** the values of the root actions, MIN_VALUE for those that did not complete */
+		private int[] values;
+		/** if the first root action completed */
+		private boolean pvComplete;
 		
 		/**
 		 * Constructor.
 		 * 
-		 * @param state the initial state
-		 * @param action the action for the initial state, used for callback
+		 * @param state the root state, it is only read
+		 * @param actions the packed root actions
+		 * @param root the split point of the root
 		 */
-		public MinimaxSearchThread (S state, A action)
+		public RootSearchTask (S state, int[] actions, SplitPoint root)
 		{
 			this.state = state;
-			parentAction = action;
-			state.applyAction(action);
+			this.actions = actions;
+			this.root = root;
+			this.values = new int[actions.length];
 		}
-
+		
 		@Override
-		public SearchResult<A> call () throws Exception
+		protected void compute ()
 		{
 			// note depth 2, results from depth 1 are being collected in minimaxDecision
-			int depth = 2;
-			localMaxDepth.set(Math.max(depth, localMaxDepth.get()));
-			// test the cutoff function
-			if (state.cutoffTest(depth, startTime))
+			MinimaxSearchTask pv = new MinimaxSearchTask(state, actions[0], root, 2, false);
+			int value = pv.compute();
+			values[0] = pv.complete ? value : Integer.MIN_VALUE;
+			pvComplete = pv.complete;
+			// the deadline cut the eldest off, its brothers would only unwind
+			if (deadline.isAborted())
 			{
-				isCutoff.set(true);
-				return new SearchResult<A>(state.evaluate(maxPlayer), parentAction);
+				Arrays.fill(values, 1, values.length, Integer.MIN_VALUE);
+				return;
 			}
-			if (depth >= cutoffDepth)
+			List<MinimaxSearchTask> brothers = new ArrayList<MinimaxSearchTask>(actions.length - 1);
+			for (int i = 1; i < actions.length; i++)
 			{
-				return new SearchResult<A>(state.evaluate(maxPlayer), parentAction);
+				brothers.add(new MinimaxSearchTask(state, actions[i], root, 2, true));
 			}
-			Queue<A> successors = state.actions(minPlayer);
-			// we can end the search here if there are no successors
-			if (successors.isEmpty())
+			invokeAll(brothers);
+			for (int i = 1; i < actions.length; i++)
+			{
+				MinimaxSearchTask brother = brothers.get(i - 1);
+				values[i] = brother.complete ? brother.join() : Integer.MIN_VALUE;
+			}
+		}
+	}
+
+	/**
+	 * An alpha-beta search of the subtree below one child of a split point.
+	 * The task searches its own clone of the state, and may split nodes of
+	 * its subtree in turn.
+	 * 
+	 * @author Paul
+	 */
+	private class MinimaxSearchTask extends RecursiveTask<Integer>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private S parentState;
+		private int parentAction;
+		private SplitPoint split;
+		private int rootDepth;
+		private boolean scout;
+		private boolean complete;
+		
+		private S state;
+		private MoveStack moves;
+		
+		/**
+		 * Constructor.
+		 * 
+		 * @param parentState the state of the split node, it is cloned when the task runs
+		 * @param action the packed action leading to the subtree
+		 * @param split the split point the task reports to
+		 * @param depth the depth of the subtree's root
+		 * @param scout if the subtree is a younger brother, to be searched with a null window first
+		 */
+		public MinimaxSearchTask (S parentState, int action, SplitPoint split, int depth, boolean scout)
+		{
+			this.parentState = parentState;
+			this.parentAction = action;
+			this.split = split;
+			this.rootDepth = depth;
+			this.scout = scout;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		protected Integer compute ()
+		{
+			// a sibling has cut the split point off or the search was aborted, the value is never used
+			if (split.isStopped() || deadline.isAborted())
 			{
-				return new SearchResult<A>(state.evaluate(maxPlayer), parentAction);
+				return 0;
 			}
-			A action;
-			SearchResult<A> result = new SearchResult<A>(Integer.MIN_VALUE, parentAction);
-			int v = Integer.MAX_VALUE;
-			int alpha = Integer.MIN_VALUE, beta = Integer.MAX_VALUE;
-			while (!successors.isEmpty())
+			state = (S) parentState.clone();
+			state.applyAction(parentAction);
+			moves = moveStacks.get();
+			int value, alpha = split.alpha, beta = split.beta;
+			if (split.max)
 			{
-				action = successors.remove();
-				state.applyAction(action);
-				v = Math.min(v, maxValue(alpha, beta, depth + 1));
-				// because we are using one state instance make sure to undo the action during back-tracking!
-				state.undoAction(action);
-				if (v <= alpha)
+				value = scout ? minValue(alpha, alpha + 1, rootDepth) : minValue(alpha, beta, rootDepth);
+				// the scout proved the subtree better than the best so far, find out by how much
+				if (scout && value > alpha && value < beta && !split.isStopped() && !deadline.isAborted())
 				{
-					break;
+					value = minValue(split.alpha, split.beta, rootDepth);
 				}
-				beta = Math.min(beta, v);
 			}
-			result.v = v;
-			return result;
+			else
+			{
+				value = scout ? maxValue(beta - 1, beta, rootDepth) : maxValue(alpha, beta, rootDepth);
+				// the scout proved the subtree better than the best so far, find out by how much
+				if (scout && value < beta && value > alpha && !split.isStopped() && !deadline.isAborted())
+				{
+					value = maxValue(split.alpha, split.beta, rootDepth);
+				}
+			}
+			// values of an abandoned or aborted search are incomplete
+			if (!split.isStopped() && !deadline.isAborted())
+			{
+				split.update(parentAction, value);
+				complete = true;
+			}
+			return value;
 		}
-		
 
 		private int maxValue (int alpha, int beta, int depth)
 		{
 			localMaxDepth.set(Math.max(depth, localMaxDepth.get()));
-			// test for IDS cutoff and the cutoff function
-			if (state.cutoffTest(depth, startTime))
+			// a sibling above has cut this subtree off, the value is never used
+			if (split.isStopped())
+			{
+				return 0;
+			}
+			// unwind as soon as the search is aborted, the value is never used
+			if (deadline.isAborted())
 			{
-				isCutoff.set(true);
-				return state.evaluate(maxPlayer);				
+				return 0;
 			}
+			metrics.node();
 			if (depth >= cutoffDepth)
 			{
-				return state.evaluate(maxPlayer);
+				return evaluate();
+			}
+			// consult the transposition table for a bound or a best action from an earlier search
+			long key = state.hashKey();
+			long entry = table.probe(key);
+			int alphaOrig = alpha, betaOrig = beta;
+			if (entry != 0 && TranspositionTable.depth(entry) >= cutoffDepth - depth)
+			{
+				int score = TranspositionTable.score(entry);
+				switch (TranspositionTable.bound(entry))
+				{
+					case TranspositionTable.EXACT: return hit(depth, entry);
+					case TranspositionTable.LOWER: alpha = Math.max(alpha, score); break;
+					case TranspositionTable.UPPER: beta = Math.min(beta, score); break;
+				}
+				if (alpha >= beta)
+				{
+					return hit(depth, entry);
+				}
 			}
 			// actions for MAX player
-			Queue<A> successors = state.actions(maxPlayer);
+			moves.push(depth, entry == 0 ? PackedAction.NO_ACTION : TranspositionTable.action(entry));
+			state.actions(maxPlayer, moves);
 			// we can end the search here if there are no successors
-			if (successors.isEmpty())
+			if (moves.size() == 0)
 			{
-				return state.evaluate(maxPlayer);
+				moves.pop();
+				return evaluate();
 			}
-			A action;
-			int v = Integer.MIN_VALUE;
+			metrics.expansion();
+			int action, best = PackedAction.NO_ACTION;
+			int v = Integer.MIN_VALUE, value;
 			// standard alpha-beta search
-			while (!successors.isEmpty())
+			for (int i = moves.begin(), end = moves.end(); i < end; i++)
 			{
-				action = successors.remove();
+				// siblings of this subtree may have lowered the shared beta since the task began
+				// another root action may have proven a better value since this node began
+				int shared = rootAlpha.get();
+				if (shared > alpha)
+				{
+					alpha = alphaOrig = shared;
+				}
+				if (depth == rootDepth && split.beta < beta)
+				{
+					beta = betaOrig = split.beta;
+					if (v >= beta)
+					{
+						break;
+					}
+				}
+				// once the eldest child has set a bound, search the younger brothers in parallel
+				if (i > moves.begin() && i + 1 < end && canSplit(depth))
+				{
+					SplitPoint point = split(true, alpha, beta, v, best, depth, i, end);
+					v = point.v;
+					best = point.best;
+					if (v >= beta)
+					{
+						moves.cutoff(best, cutoffDepth - depth);
+						metrics.cutoff(false);
+					}
+					break;
+				}
+				action = moves.action(i);
 				state.applyAction(action);
-				v = Math.max(v, minValue(alpha, beta, depth + 1));
+				if (i == moves.begin())
+				{
+					value = minValue(alpha, beta, depth + 1);
+				}
+				else
+				{
+					// a younger brother only has to prove it is no better, search it again if it is
+					value = minValue(alpha, alpha + 1, depth + 1);
+					if (value > alpha && value < beta && !deadline.isAborted())
+					{
+						value = minValue(alpha, beta, depth + 1);
+					}
+				}
 				// because we are using one state instance make sure to undo the action during back-tracking!
 				state.undoAction(action);
+				if (deadline.isAborted() || split.isStopped())
+				{
+					break;
+				}
+				if (value > v || best == PackedAction.NO_ACTION)
+				{
+					v = value;
+					best = action;
+				}
 				if (v >= beta)
 				{
+					moves.cutoff(action, cutoffDepth - depth);
+					metrics.cutoff(i == moves.begin());
 					break;
 				}
 				alpha = Math.max(alpha, v);
 			}
+			moves.pop();
+			store(key, depth, alphaOrig, betaOrig, v, best);
 			return v;
 		}
 
 		private int minValue (int alpha, int beta, int depth)
 		{
 			localMaxDepth.set(Math.max(depth, localMaxDepth.get()));
-			// test for IDS cutoff and the cutoff function
-			if (state.cutoffTest(depth, startTime))
+			// a sibling above has cut this subtree off, the value is never used
+			if (split.isStopped())
 			{
-				isCutoff.set(true);
-				return state.evaluate(maxPlayer);
+				return 0;
 			}
+			// unwind as soon as the search is aborted, the value is never used
+			if (deadline.isAborted())
+			{
+				return 0;
+			}
+			metrics.node();
 			if (depth >= cutoffDepth)
 			{
-				return state.evaluate(maxPlayer);
+				return evaluate();
+			}
+			// consult the transposition table for a bound or a best action from an earlier search
+			long key = state.hashKey();
+			long entry = table.probe(key);
+			int alphaOrig = alpha, betaOrig = beta;
+			if (entry != 0 && TranspositionTable.depth(entry) >= cutoffDepth - depth)
+			{
+				int score = TranspositionTable.score(entry);
+				switch (TranspositionTable.bound(entry))
+				{
+					case TranspositionTable.EXACT: return hit(depth, entry);
+					case TranspositionTable.LOWER: alpha = Math.max(alpha, score); break;
+					case TranspositionTable.UPPER: beta = Math.min(beta, score); break;
+				}
+				if (alpha >= beta)
+				{
+					return hit(depth, entry);
+				}
 			}
 			// actions for MIN player
-			Queue<A> successors = state.actions(minPlayer);
+			moves.push(depth, entry == 0 ? PackedAction.NO_ACTION : TranspositionTable.action(entry));
+			state.actions(minPlayer, moves);
 			// we can end the search here if there are no successors
-			if (successors.isEmpty())
+			if (moves.size() == 0)
 			{
-				return state.evaluate(maxPlayer);
+				moves.pop();
+				return evaluate();
 			}
-			A action;
-			int v = Integer.MAX_VALUE;
+			metrics.expansion();
+			int action, best = PackedAction.NO_ACTION;
+			int v = Integer.MAX_VALUE, value;
 			// standard alpha-beta search
-			while (!successors.isEmpty())
+			for (int i = moves.begin(), end = moves.end(); i < end; i++)
 			{
-				action = successors.remove();
+				// siblings of this subtree or another root action may have raised alpha since this node began
+				int shared = depth == rootDepth ? Math.max(split.alpha, rootAlpha.get()) : rootAlpha.get();
+				if (shared > alpha)
+				{
+					alpha = alphaOrig = shared;
+					if (v <= alpha)
+					{
+						break;
+					}
+				}
+				// once the eldest child has set a bound, search the younger brothers in parallel
+				if (i > moves.begin() && i + 1 < end && canSplit(depth))
+				{
+					SplitPoint point = split(false, alpha, beta, v, best, depth, i, end);
+					v = point.v;
+					best = point.best;
+					if (v <= alpha)
+					{
+						moves.cutoff(best, cutoffDepth - depth);
+						metrics.cutoff(false);
+					}
+					break;
+				}
+				action = moves.action(i);
 				state.applyAction(action);
-				v = Math.min(v, maxValue(alpha, beta, depth + 1));
+				if (i == moves.begin())
+				{
+					value = maxValue(alpha, beta, depth + 1);
+				}
+				else
+				{
+					// a younger brother only has to prove it is no better, search it again if it is
+					value = maxValue(beta - 1, beta, depth + 1);
+					if (value < beta && value > alpha && !deadline.isAborted())
+					{
+						value = maxValue(alpha, beta, depth + 1);
+					}
+				}
 				// because we are using one state instance make sure to undo the action during back-tracking!
 				state.undoAction(action);
+				if (deadline.isAborted() || split.isStopped())
+				{
+					break;
+				}
+				if (value < v || best == PackedAction.NO_ACTION)
+				{
+					v = value;
+					best = action;
+				}
 				if (v <= alpha)
 				{
+					moves.cutoff(action, cutoffDepth - depth);
+					metrics.cutoff(i == moves.begin());
 					break;
 				}
 				beta = Math.min(beta, v);
 			}
+			moves.pop();
+			store(key, depth, alphaOrig, betaOrig, v, best);
 			return v;
 		}
+		
+		// a table hit stands for the search that stored it, count the depth that search reached
+		private int hit (int depth, long entry)
+		{
+			localMaxDepth.set(Math.max(depth + TranspositionTable.depth(entry), localMaxDepth.get()));
+			return TranspositionTable.score(entry);
+		}
+
+		private int evaluate ()
+		{
+			metrics.evaluation();
+			return state.evaluate(maxPlayer);
+		}
+		
+		private boolean canSplit (int depth)
+		{
+			// splitting a shallow subtree costs more than it saves, as does splitting while this thread has work queued
+			return cutoffDepth - depth >= MIN_SPLIT_DEPTH && getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS;
+		}
+		
+		private SplitPoint split (boolean max, int alpha, int beta, int v, int best, int depth, int begin, int end)
+		{
+			SplitPoint point = new SplitPoint(split, max, alpha, beta, v, best);
+			// read the actions before searching, helping threads push their frames above this one
+			List<MinimaxSearchTask> brothers = new ArrayList<MinimaxSearchTask>(end - begin);
+			for (int i = begin; i < end; i++)
+			{
+				brothers.add(new MinimaxSearchTask(state, moves.action(i), point, depth + 1, true));
+			}
+			invokeAll(brothers);
+			return point;
+		}
+		
+		private void store (long key, int depth, int alpha, int beta, int v, int best)
+		{
+			// values backed up from an aborted or abandoned search are incomplete, never keep them
+			if (deadline.isAborted() || split.isStopped())
+			{
+				return;
+			}
+			int bound;
+			if (v <= alpha)
+			{
+				bound = TranspositionTable.UPPER;
+			}
+			else if (v >= beta)
+			{
+				bound = TranspositionTable.LOWER;
+			}
+			else
+			{
+				bound = TranspositionTable.EXACT;
+			}
+			table.store(key, cutoffDepth - depth, bound, v, best);
+		}
 	}
 }
@@ -0,0 +1,350 @@
+package com.pas.cosc322.amazon.search;
+
+import static com.pas.cosc322.amazon.main.Main.debug;
+import static com.pas.cosc322.amazon.main.ProjectConstants.minMemory;
+import static com.pas.cosc322.amazon.main.ProjectConstants.searchTime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+/**
+ * A Monte Carlo Tree Search (UCT) run by several threads on one shared tree.
+ * <p>
+ * Each simulation walks down the tree picking the child with the best upper
+ * confidence bound, expands the leaf it reaches and backs the leaf's value
+ * up the path.  Random playouts are a poor judge of an Amazons position, so
+ * the leaf is scored by the evaluation function squashed into a win
+ * probability instead.  The evaluation is not zero-sum, so it is taken
+ * relative to the root's.  Children are generated best-first by the successor
+ * function and widened progressively: a node only chooses among its first
+ * few children, more of them as its visits grow.
+ * <p>
+ * The threads share the tree without locks (see NodePool).  A thread counts
+ * its visit on the way down and adds its reward on the way back, so nodes
+ * with simulations in flight look worse until they finish (a virtual loss)
+ * and the other threads spread out.  The transposition table is only read
+ * for the best action of the alpha-beta searches, which is tried first.
+ *
+ * @param <S> State type
+ * @param <A> Action type
+ * @param <M> MinimaxPlayer type
+ */
+public class MonteCarloSearch <S extends PackedState<A, M>, A extends PackedAction, M extends MinimaxPlayer> implements AdversarialSearch<S, A, M>
+{
+	/** nodes in the pool, enough for the longest search */
+	public static final int POOL_SIZE = 1 << 20;
+	/** most children generated for a node */
+	public static final int MAX_CHILDREN = 32;
+	/** children a node chooses from before any widening */
+	public static final int MIN_WIDTH = 2;
+	/** weight of the exploration term of the upper confidence bound */
+	public static final double EXPLORATION = 0.5;
+
+	// a node is expanded on its second visit, its first is only evaluated
+	private static final int EXPAND_VISITS = 2;
+	// rewards are fixed point, the largest is a certain win for the player who moved into the node
+	private static final int WIN = 1 << 16;
+	// gain over the root's evaluation that makes a win about 73% likely
+	private static final double EVALUATION_SCALE = 20.0;
+	// simulations between checks of the time control
+	private static final int CHECK_INTERVAL = 64;
+	// the deepest path a simulation can follow, every action marks a square
+	private static final int MAX_DEPTH = 100;
+
+	private int maxThreads;
+	private ForkJoinPool helpers;
+	private long startTime;
+
+	private TranspositionTable table;
+	private NodePool nodes = new NodePool(POOL_SIZE);
+	private int root;
+
+	private M maxPlayer, minPlayer;
+	private int rootValue;
+
+	private volatile boolean stopped;
+	private int maxDepth;
+	private SearchDeadline deadline = new SearchDeadline();
+	private TimeControl timeControl;
+	private SearchMetrics metrics = SearchMetrics.get();
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxThreads the number of threads searching, including the calling thread
+	 */
+	public MonteCarloSearch (int maxThreads)
+	{
+		this(maxThreads, new TranspositionTable());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxThreads the number of threads searching, including the calling thread
+	 * @param table the transposition table of an alpha-beta search to take move ordering from
+	 */
+	public MonteCarloSearch (int maxThreads, TranspositionTable table)
+	{
+		this.maxThreads = maxThreads;
+		this.table = table;
+		if (maxThreads > 1)
+		{
+			helpers = new ForkJoinPool(maxThreads - 1);
+		}
+	}
+
+	@Override
+	public void abort ()
+	{
+		deadline.abort();
+	}
+
+	@Override
+	public TranspositionTable getTable ()
+	{
+		return table;
+	}
+
+	@Override
+	public void setTimeControl (TimeControl timeControl)
+	{
+		this.timeControl = timeControl;
+	}
+
+	/**
+	 * @return the deepest path of the last search
+	 */
+	@Override
+	public int getCutoffDepth ()
+	{
+		return maxDepth;
+	}
+
+	/**
+	 * The tree grows as deep as the simulations take it, there is no cutoff.
+	 */
+	@Override
+	public void setCutoffDepth (int cutoffDepth)
+	{
+	}
+
+	@Override
+	public void setMetrics (SearchMetrics metrics)
+	{
+		this.metrics = metrics;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public A minimaxDecision (M maxPlayer, M minPlayer, S state)
+	{
+		// record the start time of the search and arm its deadline
+		startTime = System.currentTimeMillis();
+		deadline.start(timeControl == null ? searchTime : timeControl.hardLimit(), minMemory);
+		metrics.start(helpers);
+		this.maxPlayer = maxPlayer;
+		this.minPlayer = minPlayer;
+		rootValue = state.evaluate(maxPlayer);
+		// grow a new tree, expanding the root here so there is something to choose from
+		nodes.clear();
+		root = nodes.allocate(1);
+		nodes.claim(root);
+		MonteCarloSearchThread main = new MonteCarloSearchThread((S) state.clone(), 0);
+		main.expand(root, 0);
+		if (nodes.childCount(root) == 0)
+		{
+			deadline.stop();
+			metrics.finish(helpers, System.currentTimeMillis()-startTime);
+			return null;
+		}
+		// start the helpers, then simulate on the calling thread as the main thread
+		stopped = false;
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>(maxThreads - 1);
+		for (int id = 1; id < maxThreads; id++)
+		{
+			results.add(helpers.submit(new MonteCarloSearchThread((S) state.clone(), id)));
+		}
+		int simulations = main.call();
+		stopped = true;
+		maxDepth = main.maxDepth;
+		for (Future<Integer> result : results)
+		{
+			try
+			{
+				simulations += result.get();
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+		}
+		deadline.stop();
+		metrics.finish(helpers, System.currentTimeMillis()-startTime);
+		// the most visited child is the most trusted, its reward may rest on a few lucky simulations
+		int best = nodes.firstChild(root);
+		for (int child = best + 1; child < nodes.firstChild(root) + nodes.childCount(root); child++)
+		{
+			if (nodes.visits(child) > nodes.visits(best))
+			{
+				best = child;
+			}
+		}
+		if (debug.isLoggable(Level.INFO))
+		{
+			debug.logp(Level.INFO, "MonteCarloSearch", "minimaxDecision", "Search took:{0} simulations:{1} nodes:{2} maximum depth:{3} best visits:{4} best reward:{5}",
+					new Object[] {System.currentTimeMillis()-startTime, simulations, nodes.size(), maxDepth, nodes.visits(best), nodes.reward(best)/Math.max(1, nodes.visits(best))});
+		}
+		return state.unpack(nodes.action(best));
+	}
+
+	/**
+	 * Runs simulations on the shared tree until the search ends.
+	 */
+	private class MonteCarloSearchThread implements Callable<Integer>
+	{
+		private S state;
+		private int id;
+		private MoveStack moves = new MoveStack(1, 1 << 12);
+		private int[] path = new int[MAX_DEPTH + 1];
+
+		private int maxDepth;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param state the root state, owned by this thread
+		 * @param id the thread's number, 0 for the main thread
+		 */
+		public MonteCarloSearchThread (S state, int id)
+		{
+			this.state = state;
+			this.id = id;
+		}
+
+		@Override
+		public Integer call ()
+		{
+			int simulations = 0;
+			while (!stopped && !deadline.isAborted())
+			{
+				simulate();
+				simulations++;
+				// only the main thread decides when the search ends
+				if (id == 0 && simulations % CHECK_INTERVAL == 0 && timeControl != null
+						&& System.currentTimeMillis() - startTime >= timeControl.target())
+				{
+					break;
+				}
+			}
+			return simulations;
+		}
+
+		private void simulate ()
+		{
+			int node = root, depth = 0, reward;
+			path[0] = root;
+			nodes.visit(root);
+			metrics.node();
+			while (true)
+			{
+				if (nodes.state(node) != NodePool.EXPANDED)
+				{
+					// evaluate the leaf on its first visit, or if another thread is expanding it or the pool is full
+					if (nodes.visits(node) < EXPAND_VISITS || !nodes.claim(node) || !expand(node, depth))
+					{
+						reward = evaluate();
+						break;
+					}
+				}
+				if (nodes.childCount(node) == 0)
+				{
+					// the player to move has no moves and loses, MAX moves at even depths
+					reward = depth % 2 == 0 ? 0 : WIN;
+					break;
+				}
+				node = select(node);
+				state.applyAction(nodes.action(node));
+				nodes.visit(node);
+				metrics.node();
+				path[++depth] = node;
+			}
+			maxDepth = Math.max(depth, maxDepth);
+			// back up the reward, each node keeps it for the player who moved into it
+			for (int i = depth; i > 0; i--)
+			{
+				nodes.addReward(path[i], i % 2 == 1 ? reward : WIN - reward);
+				state.undoAction(nodes.action(path[i]));
+			}
+			nodes.addReward(root, WIN - reward);
+		}
+
+		private int select (int node)
+		{
+			int first = nodes.firstChild(node), parentVisits = nodes.visits(node);
+			// progressive widening, the children are ordered best-first so only the first few are considered
+			int width = Math.min(nodes.childCount(node), MIN_WIDTH + (int) Math.sqrt(parentVisits));
+			double logVisits = Math.log(parentVisits);
+			int best = first;
+			double bestBound = Double.NEGATIVE_INFINITY;
+			for (int child = first; child < first + width; child++)
+			{
+				int visits = nodes.visits(child);
+				if (visits == 0)
+				{
+					return child;
+				}
+				double bound = nodes.reward(child) / ((double) WIN * visits) + EXPLORATION * Math.sqrt(logVisits / visits);
+				if (bound > bestBound)
+				{
+					bestBound = bound;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Generates and publishes the children of a claimed node.
+		 *
+		 * @param node the claimed node, the state is at the node
+		 * @param depth the depth of the node, the root is depth 0
+		 * @return false if the pool is full and the node was released
+		 */
+		private boolean expand (int node, int depth)
+		{
+			// take the best action of the alpha-beta searches as the first child
+			long entry = table.probe(state.hashKey());
+			moves.clear();
+			moves.push(0, entry == 0 ? PackedAction.NO_ACTION : TranspositionTable.action(entry));
+			int count = state.actions(depth % 2 == 0 ? maxPlayer : minPlayer, moves, MAX_CHILDREN);
+			int first = count == 0 ? 0 : nodes.allocate(count);
+			if (first < 0)
+			{
+				moves.pop();
+				nodes.release(node);
+				return false;
+			}
+			for (int i = 0; i < count; i++)
+			{
+				nodes.setAction(first + i, moves.action(moves.begin() + i));
+			}
+			moves.pop();
+			nodes.expand(node, first, count);
+			metrics.expansion();
+			return true;
+		}
+
+		private int evaluate ()
+		{
+			// squash the evaluation into the probability MAX wins
+			metrics.evaluation();
+			double v = state.evaluate(maxPlayer) - rootValue;
+			return (int) (WIN / (1 + Math.exp(-v / EVALUATION_SCALE)));
+		}
+	}
+}
@@ -0,0 +1,310 @@
+package com.pas.cosc322.amazon.search;
+
+import java.util.Arrays;
+
+/**
+ * A reusable stack of packed actions, one frame per ply of a search.
+ * Each search thread owns one stack; a node pushes a frame, has the state
+ * fill it with actions and ordering scores, walks it, then pops it again.
+ * Frames of deeper plies sit above their parent's frame, so a parent's
+ * frame bounds must be read before searching its children.
+ * <p>
+ * The stack also carries the move ordering hints of its thread: each frame
+ * records its ply and the hash action suggested by the transposition table,
+ * and the stack keeps two killer actions per ply and a history table of
+ * actions that caused cutoffs.  States read these while ordering the actions
+ * they generate.
+ * <p>
+ * The backing arrays only grow, so after the first few searches no
+ * allocation takes place.
+ */
+public final class MoveStack
+{
+	/** the number of low bits of a packed action used to index the history table */
+	public static final int HISTORY_BITS = 15;
+	
+	private static final int HISTORY_MASK = (1 << HISTORY_BITS) - 1;
+	
+	private int[] actions;
+	private int[] scores;
+	private int[] frames;
+	private int[] framePlies;
+	private int[] frameHashActions;
+	
+	private int[] killers;
+	private int[] history = new int[1 << HISTORY_BITS];
+
+	private int frame = 0;
+	private int top = 0;
+
+	/**
+	 * Constructor.  Creates a stack with room for a typical search.
+	 */
+	public MoveStack ()
+	{
+		this(64, 1 << 13);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param plies the initial number of frames
+	 * @param capacity the initial number of actions over all frames
+	 */
+	public MoveStack (int plies, int capacity)
+	{
+		actions = new int[capacity];
+		scores = new int[capacity];
+		frames = new int[plies];
+		framePlies = new int[plies];
+		frameHashActions = new int[plies];
+		killers = new int[plies * 2];
+	}
+
+	/**
+	 * Opens a new, empty frame on top of the stack with no ordering hints.
+	 */
+	public void push ()
+	{
+		push(frame, PackedAction.NO_ACTION);
+	}
+
+	/**
+	 * Opens a new, empty frame on top of the stack.
+	 *
+	 * @param ply the ply of the node the frame belongs to, used for the killer actions
+	 * @param hashAction the best action suggested by the transposition table, or NO_ACTION
+	 */
+	public void push (int ply, int hashAction)
+	{
+		if (frame == frames.length)
+		{
+			frames = Arrays.copyOf(frames, frames.length * 2);
+			framePlies = Arrays.copyOf(framePlies, frames.length);
+			frameHashActions = Arrays.copyOf(frameHashActions, frames.length);
+		}
+		if (ply * 2 >= killers.length)
+		{
+			killers = Arrays.copyOf(killers, Math.max(killers.length * 2, ply * 2 + 2));
+		}
+		framePlies[frame] = ply;
+		frameHashActions[frame] = hashAction;
+		frames[frame++] = top;
+	}
+
+	/**
+	 * Discards the top frame and all of its actions.
+	 */
+	public void pop ()
+	{
+		top = frames[--frame];
+	}
+
+	/**
+	 * Discards every frame.
+	 */
+	public void clear ()
+	{
+		frame = 0;
+		top = 0;
+	}
+
+	/**
+	 * @return the number of open frames
+	 */
+	public int frames ()
+	{
+		return frame;
+	}
+
+	/**
+	 * Appends an action to the top frame.
+	 *
+	 * @param action the packed action
+	 * @param score the ordering score of the action, higher is searched first
+	 */
+	public void add (int action, int score)
+	{
+		if (top == actions.length)
+		{
+			actions = Arrays.copyOf(actions, actions.length * 2);
+			scores = Arrays.copyOf(scores, scores.length * 2);
+		}
+		actions[top] = action;
+		scores[top] = score;
+		top++;
+	}
+
+	/**
+	 * @return the index of the first action of the top frame
+	 */
+	public int begin ()
+	{
+		return frames[frame - 1];
+	}
+
+	/**
+	 * @return one past the index of the last action of the top frame
+	 */
+	public int end ()
+	{
+		return top;
+	}
+
+	/**
+	 * @return the number of actions in the top frame
+	 */
+	public int size ()
+	{
+		return top - frames[frame - 1];
+	}
+
+	/**
+	 * @param i the index of the action
+	 * @return the packed action at i
+	 */
+	public int action (int i)
+	{
+		return actions[i];
+	}
+
+	/**
+	 * @param i the index of the action
+	 * @return the ordering score at i
+	 */
+	public int score (int i)
+	{
+		return scores[i];
+	}
+
+	/**
+	 * @param i the index of the action
+	 * @param score the new ordering score at i
+	 */
+	public void setScore (int i, int score)
+	{
+		scores[i] = score;
+	}
+
+	/**
+	 * @return the hash action of the top frame, or NO_ACTION
+	 */
+	public int hashAction ()
+	{
+		return frameHashActions[frame - 1];
+	}
+
+	/**
+	 * @param action a packed action
+	 * @return 2 if action is the newest killer of the top frame's ply, 1 if it is the older killer, otherwise 0
+	 */
+	public int killer (int action)
+	{
+		int slot = framePlies[frame - 1] * 2;
+		if (action == killers[slot])
+		{
+			return 2;
+		}
+		if (action == killers[slot + 1])
+		{
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param action a packed action
+	 * @return the history score of the action
+	 */
+	public int history (int action)
+	{
+		return history[action & HISTORY_MASK];
+	}
+
+	/**
+	 * Records that an action of the top frame caused a cutoff, making it a
+	 * killer for the frame's ply and raising its history score.
+	 *
+	 * @param action the packed action
+	 * @param depth the remaining depth searched below the action
+	 */
+	public void cutoff (int action, int depth)
+	{
+		int slot = framePlies[frame - 1] * 2;
+		if (killers[slot] != action)
+		{
+			killers[slot + 1] = killers[slot];
+			killers[slot] = action;
+		}
+		int index = action & HISTORY_MASK;
+		history[index] += depth * depth;
+		// keep the table well away from overflow, halving keeps the relative order
+		if (history[index] > 1 << 20)
+		{
+			for (int i = 0; i < history.length; i++)
+			{
+				history[i] >>= 1;
+			}
+		}
+	}
+
+	/**
+	 * Orders the first n actions of the top frame by descending score and
+	 * drops the rest of the frame.  Actions with equal scores keep their
+	 * generated order.
+	 *
+	 * @param n the maximum number of actions to keep
+	 */
+	public void keepBest (int n)
+	{
+		int begin = frames[frame - 1];
+		int keep = Math.min(n, top - begin);
+		// a partial selection sort, n is small compared to the number of actions
+		for (int i = begin; i < begin + keep; i++)
+		{
+			int best = i;
+			for (int j = i + 1; j < top; j++)
+			{
+				if (scores[j] > scores[best])
+				{
+					best = j;
+				}
+			}
+			if (best != i)
+			{
+				moveTo(best, i);
+			}
+		}
+		top = begin + keep;
+	}
+
+	/**
+	 * Moves an action to the front of the top frame, keeping the order of
+	 * the actions it passes.
+	 *
+	 * @param action the packed action to promote
+	 * @return if the action was found in the top frame
+	 */
+	public boolean promote (int action)
+	{
+		int begin = frames[frame - 1];
+		for (int i = begin; i < top; i++)
+		{
+			if (actions[i] == action)
+			{
+				moveTo(i, begin);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void moveTo (int from, int to)
+	{
+		int action = actions[from], score = scores[from];
+		System.arraycopy(actions, to, actions, to + 1, from - to);
+		System.arraycopy(scores, to, scores, to + 1, from - to);
+		actions[to] = action;
+		scores[to] = score;
+	}
+}
@@ -0,0 +1,215 @@
+package com.pas.cosc322.amazon.search;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The nodes of a Monte Carlo search tree, stored column-wise in arrays that
+ * are allocated once and reused by every search so that growing the tree
+ * never creates garbage.  A node is an index into the arrays; the children
+ * of a node are allocated together and are contiguous.
+ * <p>
+ * Statistics are updated with atomic adds and children are published with
+ * a compare-and-set on the node's state, so any number of threads may
+ * share the tree without locks.  A node's action, first child and child
+ * count are plain fields written before the node is marked expanded, the
+ * volatile write of that state makes them visible to every thread that
+ * reads it.
+ */
+final class NodePool
+{
+	/** the node's children have not been generated */
+	public static final int UNEXPANDED = 0;
+	/** a thread is generating the node's children */
+	public static final int EXPANDING = 1;
+	/** the node's children are ready */
+	public static final int EXPANDED = 2;
+
+	private final int[] actions;
+	private final int[] firstChildren;
+	private final int[] childCounts;
+	private final AtomicIntegerArray states;
+	private final AtomicIntegerArray visits;
+	private final AtomicLongArray rewards;
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity the most nodes the pool can hold
+	 */
+	public NodePool (int capacity)
+	{
+		actions = new int[capacity];
+		firstChildren = new int[capacity];
+		childCounts = new int[capacity];
+		states = new AtomicIntegerArray(capacity);
+		visits = new AtomicIntegerArray(capacity);
+		rewards = new AtomicLongArray(capacity);
+	}
+
+	/**
+	 * Frees every node.  Must not be called while a search uses the pool.
+	 */
+	public void clear ()
+	{
+		size.set(0);
+	}
+
+	/**
+	 * @return the number of allocated nodes
+	 */
+	public int size ()
+	{
+		return size.get();
+	}
+
+	/**
+	 * Allocates n contiguous, unexpanded nodes with no statistics.
+	 *
+	 * @param n the number of nodes
+	 * @return the index of the first node, or -1 if the pool is full
+	 */
+	public int allocate (int n)
+	{
+		int first;
+		do
+		{
+			first = size.get();
+			if (first + n > actions.length)
+			{
+				return -1;
+			}
+		}
+		while (!size.compareAndSet(first, first + n));
+		for (int node = first; node < first + n; node++)
+		{
+			actions[node] = PackedAction.NO_ACTION;
+			childCounts[node] = 0;
+			states.set(node, UNEXPANDED);
+			visits.set(node, 0);
+			rewards.set(node, 0);
+		}
+		return first;
+	}
+
+	/**
+	 * @param node a node
+	 * @return the packed action leading to the node
+	 */
+	public int action (int node)
+	{
+		return actions[node];
+	}
+
+	/**
+	 * @param node a newly allocated node
+	 * @param action the packed action leading to the node
+	 */
+	public void setAction (int node, int action)
+	{
+		actions[node] = action;
+	}
+
+	/**
+	 * @param node an expanded node
+	 * @return the index of the node's first child
+	 */
+	public int firstChild (int node)
+	{
+		return firstChildren[node];
+	}
+
+	/**
+	 * @param node an expanded node
+	 * @return the number of children of the node
+	 */
+	public int childCount (int node)
+	{
+		return childCounts[node];
+	}
+
+	/**
+	 * @param node a node
+	 * @return UNEXPANDED, EXPANDING or EXPANDED
+	 */
+	public int state (int node)
+	{
+		return states.get(node);
+	}
+
+	/**
+	 * Claims the expansion of a node for the calling thread.
+	 *
+	 * @param node an unexpanded node
+	 * @return if the calling thread must now expand the node
+	 */
+	public boolean claim (int node)
+	{
+		return states.compareAndSet(node, UNEXPANDED, EXPANDING);
+	}
+
+	/**
+	 * Publishes the children of a claimed node.
+	 *
+	 * @param node the claimed node
+	 * @param firstChild the index of the node's first child
+	 * @param childCount the number of children, 0 if the node is terminal
+	 */
+	public void expand (int node, int firstChild, int childCount)
+	{
+		firstChildren[node] = firstChild;
+		childCounts[node] = childCount;
+		states.set(node, EXPANDED);
+	}
+
+	/**
+	 * Gives up the claim on a node that could not be expanded.
+	 *
+	 * @param node the claimed node
+	 */
+	public void release (int node)
+	{
+		states.set(node, UNEXPANDED);
+	}
+
+	/**
+	 * @param node a node
+	 * @return the number of simulations through the node, including ones still running
+	 */
+	public int visits (int node)
+	{
+		return visits.get(node);
+	}
+
+	/**
+	 * Counts a simulation through the node before its reward is known.  Until
+	 * then the visit counts as a loss, steering other threads elsewhere.
+	 *
+	 * @param node a node
+	 * @return the visits of the node including this one
+	 */
+	public int visit (int node)
+	{
+		return visits.incrementAndGet(node);
+	}
+
+	/**
+	 * @param node a node
+	 * @return the sum of the rewards of the simulations through the node
+	 */
+	public long reward (int node)
+	{
+		return rewards.get(node);
+	}
+
+	/**
+	 * @param node a node
+	 * @param reward the reward of a simulation through the node
+	 */
+	public void addReward (int node, int reward)
+	{
+		rewards.addAndGet(node, reward);
+	}
+}
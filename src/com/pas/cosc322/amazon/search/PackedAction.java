@@ -0,0 +1,19 @@
+package com.pas.cosc322.amazon.search;
+
+/**
+ * An action that can be encoded into a single int, so searches can keep it
+ * in primitive tables such as the transposition table.
+ */
+public interface PackedAction extends Action
+{
+	/** the packed value reserved for "no action" */
+	public static final int NO_ACTION = 0;
+	
+	/**
+	 * Encodes the action.  Two actions are equal only if their packed values
+	 * are equal, and no action may pack to NO_ACTION.
+	 * 
+	 * @return the packed action
+	 */
+	public int pack ();
+}
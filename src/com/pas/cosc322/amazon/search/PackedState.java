@@ -0,0 +1,57 @@
+package com.pas.cosc322.amazon.search;
+
+/**
+ * A state whose actions can be generated, applied and undone as packed ints.
+ * Searches use this primitive variant so that walking the game tree neither
+ * boxes nor allocates action objects.
+ * 
+ * @param <A> the PackedAction type
+ * @param <M> the MinimaxPlayer type
+ */
+public interface PackedState <A extends PackedAction, M extends MinimaxPlayer> extends State<A, M>
+{
+	/**
+	 * Appends the packed actions leading to successor states to the top frame
+	 * of the move stack, best-first as with actions(M).
+	 * 
+	 * @param minimaxPlayer the player to generate actions for
+	 * @param moves the move stack to append the actions to
+	 * @return the number of actions appended
+	 */
+	public int actions (M minimaxPlayer, MoveStack moves);
+	
+	/**
+	 * Appends at most maxActions packed actions to the top frame of the move
+	 * stack, best-first, for searches that widen past the usual selection.
+	 * 
+	 * @param minimaxPlayer the player to generate actions for
+	 * @param moves the move stack to append the actions to
+	 * @param maxActions the most actions to append
+	 * @return the number of actions appended
+	 */
+	public int actions (M minimaxPlayer, MoveStack moves, int maxActions);
+	
+	/**
+	 * Applies a packed action to this state.
+	 * 
+	 * @param action the packed action to apply
+	 */
+	public void applyAction (int action);
+	
+	/**
+	 * Undos a packed action to this state.  Results of undoing an action "out
+	 * of order" is unspecified.
+	 * 
+	 * @param action the packed action to undo
+	 */
+	public void undoAction (int action);
+	
+	/**
+	 * @param action a packed action
+	 * @return the action object for the packed action
+	 */
+	public A unpack (int action);
+	
+	@Override
+	public PackedState<A, M> clone ();
+}
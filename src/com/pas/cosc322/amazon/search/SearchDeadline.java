@@ -0,0 +1,166 @@
+package com.pas.cosc322.amazon.search;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+
+/**
+ * The abort flag of a search.  The flag is raised by a timer when the
+ * search time runs out, or by the JVM's low memory detector when a heap
+ * pool comes within the minimum free memory of its maximum.  Search
+ * threads only read the flag, which costs a volatile read per node,
+ * and unwind as soon as they see it raised.
+ * <p>
+ * The heap and its thresholds belong to the whole JVM, so one listener
+ * watches them for every search and raises the flag of each search running
+ * when the heap runs low, however many search at once.
+ */
+public class SearchDeadline
+{
+	/** the flag was raised because the search time ran out */
+	public static final String TIME = "time";
+	/** the flag was raised because the heap ran low */
+	public static final String MEMORY = "memory";
+	/** the flag was raised by another thread */
+	public static final String STOPPED = "stopped";
+
+	// one daemon thread raises the flags of every search
+	private static final Timer timer = new Timer("search-deadline", true);
+	// the searches running, whose flags the memory watchdog raises
+	private static final Set<SearchDeadline> running = ConcurrentHashMap.newKeySet();
+	// the most free memory any search has asked for, the thresholds keep that much free
+	private static long watchedMemory;
+
+	static
+	{
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(new NotificationListener()
+		{
+			@Override
+			public void handleNotification (Notification notification, Object handback)
+			{
+				if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(notification.getType()))
+				{
+					for (SearchDeadline deadline : running)
+					{
+						deadline.abort(MEMORY);
+					}
+				}
+			}
+		}, null, null);
+	}
+
+	private volatile boolean aborted;
+	private volatile String reason;
+	private TimerTask task;
+
+	/**
+	 * Lowers the flag and arms the timer and the memory watchdog.
+	 *
+	 * @param searchTime the time (in ms) until the flag is raised
+	 * @param minMemory the free heap (in bytes) below which the flag is raised
+	 */
+	public synchronized void start (long searchTime, long minMemory)
+	{
+		stop();
+		aborted = false;
+		reason = null;
+		task = new TimerTask()
+		{
+			@Override
+			public void run ()
+			{
+				abort(TIME);
+			}
+		};
+		timer.schedule(task, searchTime);
+		running.add(this);
+		if (watch(minMemory))
+		{
+			abort(MEMORY);
+		}
+	}
+
+	/**
+	 * Sets the usage thresholds of the heap pools, unless another search
+	 * already keeps more memory free.
+	 *
+	 * @param minMemory the free heap (in bytes) below which the flags are raised
+	 * @return if a pool is already past its threshold
+	 */
+	private static synchronized boolean watch (long minMemory)
+	{
+		boolean exceeded = false;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			long max = pool.getUsage().getMax();
+			if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported() && max > 0)
+			{
+				if (minMemory > watchedMemory)
+				{
+					pool.setUsageThreshold(Math.max(1, max - minMemory));
+				}
+				// the detector only notifies on crossing the threshold, check if we are already past it
+				exceeded |= pool.isUsageThresholdExceeded();
+			}
+		}
+		watchedMemory = Math.max(watchedMemory, minMemory);
+		return exceeded;
+	}
+
+	/**
+	 * Disarms the timer and the memory watchdog, leaving the flag as it is.
+	 */
+	public synchronized void stop ()
+	{
+		if (task == null)
+		{
+			return;
+		}
+		task.cancel();
+		task = null;
+		running.remove(this);
+	}
+
+	/**
+	 * Raises the flag.
+	 */
+	public void abort ()
+	{
+		abort(STOPPED);
+	}
+
+	private void abort (String reason)
+	{
+		// the first reason stands, later ones only found the flag raised
+		if (!aborted)
+		{
+			this.reason = reason;
+		}
+		aborted = true;
+	}
+
+	/**
+	 * @return if the search must unwind
+	 */
+	public boolean isAborted ()
+	{
+		return aborted;
+	}
+
+	/**
+	 * @return why the flag was raised, TIME, MEMORY or STOPPED, or null if it is lowered
+	 */
+	public String getReason ()
+	{
+		return aborted ? reason : null;
+	}
+}
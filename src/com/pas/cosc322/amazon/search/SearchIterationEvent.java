@@ -0,0 +1,63 @@
+package com.pas.cosc322.amazon.search;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event spanning one IDS iteration of a search, so a
+ * recording shows which iterations a GC pause or safepoint fell into.
+ */
+@Name("com.pas.cosc322.amazon.SearchIteration")
+@Label("Search Iteration")
+@Category({"Amazons", "Search"})
+@Description("One iterative deepening iteration of a search")
+@StackTrace(false)
+class SearchIterationEvent extends Event
+{
+	/** the iteration searched the whole tree to its depth */
+	static final String COMPLETE = "complete";
+	/** no line of play reached the depth, the tree is shallower */
+	static final String EXHAUSTED = "exhausted";
+
+	@Label("Search")
+	String search;
+
+	@Label("Depth")
+	@Description("The cutoff depth of the iteration, the root is depth 1")
+	int depth;
+
+	@Label("Nodes")
+	@Description("Nodes visited by every thread during the iteration")
+	long nodes;
+
+	@Label("Cutoff Reason")
+	@Description("How the iteration ended: complete, exhausted, or why the search was aborted")
+	String cutoffReason;
+
+	/**
+	 * Ends the event and commits it if it is recorded.
+	 *
+	 * @param search the search's name
+	 * @param depth the cutoff depth of the iteration
+	 * @param nodes the nodes visited during the iteration
+	 * @param deadline the search's deadline, raised if the iteration was cut off
+	 * @param exhausted if no line of play reached the depth
+	 */
+	void commit (String search, int depth, long nodes, SearchDeadline deadline, boolean exhausted)
+	{
+		end();
+		if (shouldCommit())
+		{
+			this.search = search;
+			this.depth = depth;
+			this.nodes = nodes;
+			String reason = deadline.getReason();
+			cutoffReason = reason != null ? reason : exhausted ? EXHAUSTED : COMPLETE;
+			commit();
+		}
+	}
+}
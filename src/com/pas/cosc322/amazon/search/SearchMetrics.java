@@ -0,0 +1,406 @@
+package com.pas.cosc322.amazon.search;
+
+import static com.pas.cosc322.amazon.main.Main.debug;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Live counters of every search in the program, or of the searches given
+ * an instance of their own.
+ * <p>
+ * The search threads count nodes, evaluations and cutoffs into striped
+ * counters, so an increment from the hot path touches a cell of its own
+ * thread rather than a shared cache line.  Totals are only summed when the
+ * metrics are read: through JMX, where they are registered as an MBean, or
+ * from a text file in the Prometheus exposition format that is rewritten
+ * every few seconds.
+ * <p>
+ * The busy threads of each search pool are sampled while it searches, the
+ * fraction of samples found busy is the pools' thread utilization.
+ */
+public class SearchMetrics implements SearchMetricsMBean
+{
+	/** the name the metrics are registered under */
+	public static final String OBJECT_NAME = "com.pas.cosc322.amazon:type=SearchMetrics";
+	/** the time (in ms) between samples of the search pools */
+	public static final long SAMPLE_PERIOD = 10;
+	/** the time (in ms) between writes of the text file */
+	public static final long WRITE_PERIOD = 5000;
+
+	private static final SearchMetrics instance = new SearchMetrics();
+
+	// one daemon thread samples the pools and writes the text files of every instance
+	private static final Timer timer = new Timer("search-metrics", true);
+
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder searchTime = new LongAdder();
+	private final LongAdder nodes = new LongAdder();
+	private final LongAdder evaluations = new LongAdder();
+	private final LongAdder expansions = new LongAdder();
+	private final LongAdder cutoffs = new LongAdder();
+	private final LongAdder firstMoveCutoffs = new LongAdder();
+	private final LongAdder iterations = new LongAdder();
+	private final LongAdder iterationTime = new LongAdder();
+	// the nodes of iterations that followed another, and of the iterations they followed
+	private final LongAdder deepenedNodes = new LongAdder();
+	private final LongAdder shallowNodes = new LongAdder();
+	private final LongAdder busyThreads = new LongAdder();
+	private final LongAdder sampledThreads = new LongAdder();
+	private volatile long lastIterationTime;
+
+	private final Set<ForkJoinPool> pools = ConcurrentHashMap.newKeySet();
+	private TimerTask sampler;
+	private TimerTask writer;
+
+	/**
+	 * @return the metrics of every search
+	 */
+	public static SearchMetrics get ()
+	{
+		return instance;
+	}
+
+	/**
+	 * Constructor.  Counters apart from the program's, for searches that
+	 * run alongside others and must not mix their counts with them.
+	 */
+	public SearchMetrics ()
+	{
+	}
+
+	/** counts a node visited */
+	public void node ()
+	{
+		nodes.increment();
+	}
+
+	/** counts a position evaluated */
+	public void evaluation ()
+	{
+		evaluations.increment();
+	}
+
+	/** counts a node whose actions were searched */
+	public void expansion ()
+	{
+		expansions.increment();
+	}
+
+	/**
+	 * Counts a fail high.
+	 *
+	 * @param first true if the first action searched caused it
+	 */
+	public void cutoff (boolean first)
+	{
+		cutoffs.increment();
+		if (first)
+		{
+			firstMoveCutoffs.increment();
+		}
+	}
+
+	/**
+	 * Counts an IDS iteration that searched to its depth.
+	 *
+	 * @param nodes the nodes the iteration visited
+	 * @param previousNodes the nodes the last iteration of the search visited, 0 if this was the first
+	 * @param time the time (in ms) the iteration took
+	 */
+	public void iteration (long nodes, long previousNodes, long time)
+	{
+		iterations.increment();
+		iterationTime.add(time);
+		lastIterationTime = time;
+		if (previousNodes > 0)
+		{
+			deepenedNodes.add(nodes);
+			shallowNodes.add(previousNodes);
+		}
+	}
+
+	/**
+	 * Samples the busy threads of a pool until the search finishes.
+	 *
+	 * @param pool the pool the search runs on, or null if it runs on the calling thread alone
+	 */
+	public synchronized void start (ForkJoinPool pool)
+	{
+		if (pool == null)
+		{
+			return;
+		}
+		pools.add(pool);
+		if (sampler == null)
+		{
+			sampler = new TimerTask()
+			{
+				@Override
+				public void run ()
+				{
+					for (ForkJoinPool pool : pools)
+					{
+						busyThreads.add(pool.getActiveThreadCount());
+						sampledThreads.add(pool.getParallelism());
+					}
+				}
+			};
+			timer.scheduleAtFixedRate(sampler, SAMPLE_PERIOD, SAMPLE_PERIOD);
+		}
+	}
+
+	/**
+	 * Counts a finished search and stops sampling its pool.
+	 *
+	 * @param pool the pool the search ran on, or null if it ran on the calling thread alone
+	 * @param time the time (in ms) the search took
+	 */
+	public synchronized void finish (ForkJoinPool pool, long time)
+	{
+		searches.increment();
+		searchTime.add(time);
+		if (pool != null)
+		{
+			pools.remove(pool);
+		}
+		// nothing to sample until the next search
+		if (pools.isEmpty() && sampler != null)
+		{
+			sampler.cancel();
+			sampler = null;
+		}
+	}
+
+	/**
+	 * @return the nodes visited so far, summed over the threads
+	 */
+	public long nodes ()
+	{
+		return nodes.sum();
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server, once.
+	 *
+	 * @throws JMException if they can't be registered
+	 */
+	public void register () throws JMException
+	{
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		}
+		catch (InstanceAlreadyExistsException e)
+		{
+			// registered by an earlier player
+		}
+	}
+
+	/**
+	 * Rewrites a text file with the metrics periodically, replacing any
+	 * file written by an earlier call.
+	 *
+	 * @param file the file to write, in the Prometheus text format
+	 * @param period the time (in ms) between writes
+	 */
+	public synchronized void write (final File file, long period)
+	{
+		if (writer != null)
+		{
+			writer.cancel();
+		}
+		writer = new TimerTask()
+		{
+			// a file that keeps failing is reported once, not every period
+			private boolean failing;
+
+			@Override
+			public void run ()
+			{
+				try
+				{
+					dump(file);
+					failing = false;
+				}
+				catch (IOException e)
+				{
+					// try again next period
+					if (!failing && debug.isLoggable(Level.WARNING))
+					{
+						debug.logp(Level.WARNING, "SearchMetrics", "write", "Could not write the search metrics to {0}: {1}", new Object[] {file, e.getMessage()});
+					}
+					failing = true;
+				}
+			}
+		};
+		timer.schedule(writer, 0, period);
+	}
+
+	/**
+	 * Writes the metrics to a text file.  The file is replaced by moving a
+	 * finished copy over it, atomically where the file system can, so a
+	 * reader never sees half of it.
+	 *
+	 * @param file the file to write, in the Prometheus text format
+	 * @throws IOException if the file can't be written
+	 */
+	public void dump (File file) throws IOException
+	{
+		File temp = new File(file.getPath()+".tmp");
+		Writer out = new FileWriter(temp);
+		try
+		{
+			out.write(dump());
+		}
+		finally
+		{
+			out.close();
+		}
+		// File.renameTo won't replace an existing file on Windows
+		try
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException e)
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	@Override
+	public String dump ()
+	{
+		StringBuilder out = new StringBuilder();
+		metric(out, "searches_total", "counter", "Searches finished.", getSearches());
+		metric(out, "search_seconds_total", "counter", "Time spent searching.", getSearchTime() / 1000.0);
+		metric(out, "nodes_total", "counter", "Nodes visited.", getNodes());
+		metric(out, "evaluations_total", "counter", "Positions evaluated.", getEvaluations());
+		metric(out, "nodes_per_second", "gauge", "Nodes visited per second of search.", getNodesPerSecond());
+		metric(out, "evaluations_per_second", "gauge", "Positions evaluated per second of search.", getEvaluationsPerSecond());
+		metric(out, "cutoff_ratio", "gauge", "Fraction of expanded nodes that failed high.", getCutoffRate());
+		metric(out, "first_move_cutoff_ratio", "gauge", "Fraction of fail highs caused by the first action searched.", getFirstMoveCutoffRate());
+		metric(out, "effective_branching_factor", "gauge", "Nodes of an IDS iteration over the nodes of the one before.", getEffectiveBranchingFactor());
+		metric(out, "iterations_total", "counter", "IDS iterations finished.", getIterations());
+		metric(out, "iteration_seconds_total", "counter", "Time spent in finished IDS iterations.", iterationTime.sum() / 1000.0);
+		metric(out, "last_iteration_seconds", "gauge", "Time of the last IDS iteration.", getLastIterationTime() / 1000.0);
+		metric(out, "thread_utilization_ratio", "gauge", "Fraction of the search pools' threads found busy while searching.", getThreadUtilization());
+		return out.toString();
+	}
+
+	private void metric (StringBuilder out, String name, String type, String help, double value)
+	{
+		out.append("# HELP amazons_search_").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE amazons_search_").append(name).append(' ').append(type).append('\n');
+		out.append("amazons_search_").append(name).append(' ');
+		if (value == Math.rint(value) && !Double.isInfinite(value))
+		{
+			out.append((long) value);
+		}
+		else
+		{
+			out.append(value);
+		}
+		out.append('\n');
+	}
+
+	private static double ratio (long count, long total)
+	{
+		return total == 0 ? 0 : (double) count / total;
+	}
+
+	@Override
+	public long getSearches ()
+	{
+		return searches.sum();
+	}
+
+	@Override
+	public long getSearchTime ()
+	{
+		return searchTime.sum();
+	}
+
+	@Override
+	public long getNodes ()
+	{
+		return nodes.sum();
+	}
+
+	@Override
+	public long getEvaluations ()
+	{
+		return evaluations.sum();
+	}
+
+	@Override
+	public double getNodesPerSecond ()
+	{
+		return 1000 * ratio(nodes.sum(), searchTime.sum());
+	}
+
+	@Override
+	public double getEvaluationsPerSecond ()
+	{
+		return 1000 * ratio(evaluations.sum(), searchTime.sum());
+	}
+
+	@Override
+	public double getCutoffRate ()
+	{
+		return ratio(cutoffs.sum(), expansions.sum());
+	}
+
+	@Override
+	public double getFirstMoveCutoffRate ()
+	{
+		return ratio(firstMoveCutoffs.sum(), cutoffs.sum());
+	}
+
+	@Override
+	public double getEffectiveBranchingFactor ()
+	{
+		return ratio(deepenedNodes.sum(), shallowNodes.sum());
+	}
+
+	@Override
+	public long getIterations ()
+	{
+		return iterations.sum();
+	}
+
+	@Override
+	public double getMeanIterationTime ()
+	{
+		return ratio(iterationTime.sum(), iterations.sum());
+	}
+
+	@Override
+	public long getLastIterationTime ()
+	{
+		return lastIterationTime;
+	}
+
+	@Override
+	public double getThreadUtilization ()
+	{
+		return ratio(busyThreads.sum(), sampledThreads.sum());
+	}
+}
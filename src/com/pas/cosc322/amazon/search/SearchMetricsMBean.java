@@ -0,0 +1,53 @@
+package com.pas.cosc322.amazon.search;
+
+/**
+ * The management interface of the search metrics, see SearchMetrics.
+ * Totals count from the start of the program, rates are per second
+ * spent searching.
+ */
+public interface SearchMetricsMBean
+{
+	/** @return the number of searches finished */
+	long getSearches ();
+
+	/** @return the time (in ms) spent searching */
+	long getSearchTime ();
+
+	/** @return the number of nodes visited */
+	long getNodes ();
+
+	/** @return the number of positions evaluated */
+	long getEvaluations ();
+
+	/** @return the nodes visited per second of search */
+	double getNodesPerSecond ();
+
+	/** @return the positions evaluated per second of search */
+	double getEvaluationsPerSecond ();
+
+	/** @return the fraction of expanded nodes that failed high */
+	double getCutoffRate ();
+
+	/** @return the fraction of fail highs caused by the first action searched */
+	double getFirstMoveCutoffRate ();
+
+	/** @return the mean ratio of the nodes of an IDS iteration to the nodes of the one before */
+	double getEffectiveBranchingFactor ();
+
+	/** @return the number of IDS iterations finished */
+	long getIterations ();
+
+	/** @return the mean time (in ms) of an IDS iteration */
+	double getMeanIterationTime ();
+
+	/** @return the time (in ms) of the last IDS iteration */
+	long getLastIterationTime ();
+
+	/** @return the fraction of the search pools' threads found busy while searching */
+	double getThreadUtilization ();
+
+	/**
+	 * @return the metrics in the Prometheus text format
+	 */
+	String dump ();
+}
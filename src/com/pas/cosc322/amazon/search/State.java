@@ -40,9 +40,16 @@ public interface State <A extends Action, M extends MinimaxPlayer> extends Clone
 	 */
 	public State<A, M> undoAction (A action);
 	
-	public int evaluate (M minimaxPlayer);
+	/**
+	 * A 64-bit key identifying this state, used to recognise transpositions.
+	 * Equal states must produce equal keys.  Implementations are expected to
+	 * maintain the key incrementally in applyAction and undoAction.
+	 * 
+	 * @return the hash key of this state
+	 */
+	public long hashKey ();
 	
-	public boolean cutoffTest (int depth, long startTime);
+	public int evaluate (M minimaxPlayer);
 	
 	public State<A, M> clone ();
 }
@@ -1,16 +1,13 @@
 package com.pas.cosc322.amazon.search;
 
 import static com.pas.cosc322.amazon.main.Main.debug;
+import static com.pas.cosc322.amazon.main.ProjectConstants.minMemory;
+import static com.pas.cosc322.amazon.main.ProjectConstants.searchTime;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
@@ -18,6 +15,10 @@ import java.util.logging.Level;
  * A state space search implementation.  Used for single player games or
  * multiplayer games that have reached a state where the opponent's actions
  * does not effect your future actions.
+ * <p>
+ * Branches are searched concurrently on a work-stealing pool that lives as
+ * long as the search.  Without bounds to share every child can be searched
+ * at once, so nodes near the root simply fork all of their children.
  * 
  * @author Paul
  *
@@ -25,26 +26,53 @@ import java.util.logging.Level;
  * @param <A> the action type
  * @param <M> the player type
  */
-public class StateSpaceSearch <S extends State<A, M>, A extends Action, M extends MinimaxPlayer>
+public class StateSpaceSearch <S extends PackedState<A, M>, A extends PackedAction, M extends MinimaxPlayer>
 {
-	private int maxThreads;
+	/** the least remaining depth below a node for its children to be searched in parallel */
+	private static final int MIN_SPLIT_DEPTH = 2;
+	/** the most surplus tasks a thread may have queued and still split a node */
+	private static final int MAX_SURPLUS_TASKS = 2;
+	
+	private ForkJoinPool pool;
 	private long startTime;
 	
+	private MoveStack rootMoves = new MoveStack(1, 1 << 12);
+	
 	private M player;
 	
 	private volatile int cutoffDepth = 1;
 	
 	private AtomicInteger localMaxDepth = new AtomicInteger();
-	private AtomicBoolean isCutoff = new AtomicBoolean();
+	private SearchDeadline deadline = new SearchDeadline();
+	private TimeControl timeControl;
+	private SearchMetrics metrics = SearchMetrics.get();
+	
+	// each worker thread reuses one move stack for all of the tasks it runs
+	private ThreadLocal<MoveStack> moveStacks = new ThreadLocal<MoveStack>()
+	{
+		@Override
+		protected MoveStack initialValue ()
+		{
+			return new MoveStack();
+		}
+	};
 
 	/**
 	 * Constructor
 	 * 
-	 * @param maxThreads the max threads to use in the thread pool
+	 * @param maxThreads the parallelism of the search pool
 	 */
 	public StateSpaceSearch (int maxThreads)
 	{
-		this.maxThreads = maxThreads;
+		this.pool = new ForkJoinPool(maxThreads);
+	}
+	
+	/**
+	 * @param timeControl decides how long each search runs, or null to always search for the search time
+	 */
+	public void setTimeControl (TimeControl timeControl)
+	{
+		this.timeControl = timeControl;
 	}
 	
 	/**
@@ -71,49 +99,56 @@ public class StateSpaceSearch <S extends State<A, M>, A extends Action, M extend
 	 * @param state initial state
 	 * @return an action
 	 */
-	@SuppressWarnings("unchecked")
 	public A statespaceDecision (M player, S state)
 	{
-		// record the start time of the search for the cutoff functions
+		// record the start time of the search and arm its deadline
 		startTime = System.currentTimeMillis();
+		deadline.start(timeControl == null ? searchTime : timeControl.hardLimit(), minMemory);
+		metrics.start(pool);
 		this.player = player;
 		// cutoff depth for IDS
 		// the best result of any search
 		SearchResult<A> globalBest = new SearchResult<A>(Integer.MIN_VALUE, null);
-		// construct the search sub trees, they will persist through each iteration
-		List<StateSpaceSearchThread> searchThreads = new LinkedList<StateSpaceSearchThread>();
-		for (Queue<A> actions = state.actions(player); !actions.isEmpty();)
+		// the root actions, they will persist through each iteration
+		rootMoves.push();
+		state.actions(player, rootMoves);
+		int[] rootActions = new int[rootMoves.size()];
+		for (int i = rootMoves.begin(); i < rootMoves.end(); i++)
 		{
-			searchThreads.add(new StateSpaceSearchThread((S) state.clone(), actions.remove()));
+			rootActions[i - rootMoves.begin()] = rootMoves.action(i);
 		}
+		rootMoves.pop();
+		// the nodes of the last completed iteration, for the effective branching factor
+		long lastNodes = 0;
 		// begin IDS
 		do
 		{
+			long iterationStart = System.currentTimeMillis(), nodes = metrics.nodes();
+			SearchIterationEvent event = new SearchIterationEvent();
+			event.begin();
 			// the best depth achieved by this search
 			localMaxDepth.set(1);
-			// if this search was terminated by a cutoff test
-			isCutoff.set(false);
-			// construct our thread pool
-			ExecutorService executor = Executors.newFixedThreadPool(maxThreads);
-			List<Future<SearchResult<A>>> results = new LinkedList<Future<SearchResult<A>>>();
-			// supply each worker thread with a subtree
-			for (StateSpaceSearchThread searchThread : searchThreads)
+			// supply the pool with a subtree per root action
+			List<StateSpaceSearchTask> tasks = new ArrayList<StateSpaceSearchTask>(rootActions.length);
+			for (int action : rootActions)
 			{
-				results.add(executor.submit(searchThread));
+				// note depth 2, results from depth 1 are being collected here
+				StateSpaceSearchTask task = new StateSpaceSearchTask(state, action, 2);
+				pool.execute(task);
+				tasks.add(task);
 			}
-			SearchResult<A> localBest = new SearchResult(Integer.MIN_VALUE, null);
+			SearchResult<A> localBest = new SearchResult<A>(Integer.MIN_VALUE, null);
 			try
 			{
-				// close the pool and wait for execution completion
-				executor.shutdown();
-				// we'll assume the timeout occurs naturally from the search cutoff test
-				executor.awaitTermination(Integer.MAX_VALUE, TimeUnit.SECONDS);
-				// find the best result for this search
-				SearchResult search;
-				for (Future<SearchResult<A>> result : results)
+				// wait for every subtree and find the best result for this search
+				for (StateSpaceSearchTask task : tasks)
 				{
-					search = result.get();
-					localBest.max(search);
+					int value = task.join();
+					// an aborted subtree's value is a placeholder, only completed subtrees count
+					if (task.complete)
+					{
+						localBest.max(new SearchResult<A>(value, state.unpack(task.parentAction)));
+					}
 				}
 			}
 			catch (Exception e)
@@ -121,114 +156,158 @@ public class StateSpaceSearch <S extends State<A, M>, A extends Action, M extend
 				e.printStackTrace();
 			}
 			// IMPORTANT: only update the global max if we have truly achieved a
-			// deeper search this iteration by not being cutoff.  This could produce
-			// a false positive if the search was cutoff with mixed depths.
-			if (!isCutoff.get() || globalBest.action == null)
+			// deeper search this iteration by not being cutoff.  The subtrees that
+			// completed before a cutoff are only used while there is nothing better.
+			if (!deadline.isAborted() || globalBest.action == null)
 			{
 				globalBest.max(localBest);
 			}
+			if (globalBest.action == null && rootActions.length > 0)
+			{
+				// nothing completed, fall back on the best ordered action
+				globalBest = new SearchResult<A>(Integer.MIN_VALUE, state.unpack(rootActions[0]));
+			}
+			nodes = metrics.nodes() - nodes;
+			if (!deadline.isAborted())
+			{
+				metrics.iteration(nodes, lastNodes, System.currentTimeMillis() - iterationStart);
+				lastNodes = nodes;
+			}
+			event.commit("StateSpaceSearch", cutoffDepth, nodes, deadline, localMaxDepth.get() < cutoffDepth);
 			cutoffDepth++;
 		}
 		// if we didn't make the target depth then we won't make a deeper target depth next iteration; end the search
-		while (!isCutoff.get() && localMaxDepth.get() >= cutoffDepth - 1);
+		while (!deadline.isAborted() && localMaxDepth.get() >= cutoffDepth - 1 && nextIteration(globalBest));
 		cutoffDepth -= 2;
-		debug.logp(Level.INFO, "StateSpaceSearch", "statespaceDecision", "Search took:"+(System.currentTimeMillis()-startTime)+" maximum depth:"+cutoffDepth+" best value:"+globalBest.v);
+		deadline.stop();
+		metrics.finish(pool, System.currentTimeMillis()-startTime);
+		if (debug.isLoggable(Level.INFO))
+		{
+			debug.logp(Level.INFO, "StateSpaceSearch", "statespaceDecision", "Search took:{0} maximum depth:{1} best value:{2}", new Object[] {System.currentTimeMillis()-startTime, cutoffDepth, globalBest.v});
+		}
 		return globalBest.action;
 	}
+	
+	private boolean nextIteration (SearchResult<A> best)
+	{
+		// with no actions there is nothing to report, the search ends on its own
+		return timeControl == null || best.action == null || timeControl.nextIteration(cutoffDepth - 1, best.action.pack(), System.currentTimeMillis() - startTime);
+	}
 
 	/**
-	 * A Callable search to be executed on a thread.
+	 * A search of the subtree below one action, to be executed on the pool.
+	 * The task searches its own clone of the state, and may fork the
+	 * children of nodes in its subtree in turn.
 	 * 
 	 * @author Paul
 	 */
-	private class StateSpaceSearchThread implements Callable<SearchResult<A>>
+	private class StateSpaceSearchTask extends RecursiveTask<Integer>
 	{
+		private static final long serialVersionUID = 1L;
+		
+		private S parentState;
+		private int parentAction;
+		private int rootDepth;
+		private boolean complete;
+		
 		private S state;
-		private A parentAction;
+		private MoveStack moves;
 		
 		/**
 		 * Constructor.
 		 * 
-		 * @param state the initial state
-		 * @param action the action for the initial state, used for callback
+		 * @param parentState the state before the action, it is cloned when the task runs
+		 * @param action the packed action leading to the subtree
+		 * @param depth the depth of the subtree's root
 		 */
-		public StateSpaceSearchThread (S state, A action)
+		public StateSpaceSearchTask (S parentState, int action, int depth)
 		{
-			this.state = state;
-			parentAction = action;
-			state.applyAction(action);
+			this.parentState = parentState;
+			this.parentAction = action;
+			this.rootDepth = depth;
 		}
 
 		@Override
-		public SearchResult<A> call () throws Exception
+		@SuppressWarnings("unchecked")
+		protected Integer compute ()
 		{
-			// note depth 2, results from depth 1 are being collected in statespaceDecision
-			int depth = 2;
-			localMaxDepth.set(Math.max(depth, localMaxDepth.get()));
-			// test the cutoff function
-			if (state.cutoffTest(depth, startTime))
-			{
-				isCutoff.set(true);
-				return new SearchResult<A>(state.evaluate(player), parentAction);
-			}
-			if (depth >= cutoffDepth)
-			{
-				return new SearchResult<A>(state.evaluate(player), parentAction);
-			}
-			Queue<A> successors = state.actions(player);
-			// we can end the search here if there are no successors
-			if (successors.isEmpty())
+			// the search was aborted before the task ran, there is nothing to search
+			if (deadline.isAborted())
 			{
-				return new SearchResult<A>(state.evaluate(player), parentAction);
+				return 0;
 			}
-			A action;
-			SearchResult<A> result = new SearchResult<A>(Integer.MIN_VALUE, parentAction);
-			int v = Integer.MIN_VALUE;
-			while (!successors.isEmpty())
-			{
-				action = successors.remove();
-				state.applyAction(action);
-				// always try to maximise the score
-				v = Math.max(v, maxValue(depth + 1));
-				// because we are using one state instance make sure to undo the action during back-tracking!
-				state.undoAction(action);
-			}
-			result.v = v;
-			return result;
+			state = (S) parentState.clone();
+			state.applyAction(parentAction);
+			moves = moveStacks.get();
+			int value = maxValue(rootDepth);
+			// the value of a subtree the abort reached is incomplete
+			complete = !deadline.isAborted();
+			return value;
 		}
 
 		private int maxValue (int depth)
 		{
 			localMaxDepth.set(Math.max(depth, localMaxDepth.get()));
-			// test for IDS cutoff and the cutoff function
-			if (state.cutoffTest(depth, startTime))
+			// unwind as soon as the search is aborted, the value is never used
+			if (deadline.isAborted())
 			{
-				isCutoff.set(true);
-				return state.evaluate(player);				
+				return 0;
 			}
+			metrics.node();
 			if (depth >= cutoffDepth)
 			{
+				metrics.evaluation();
 				return state.evaluate(player);
 			}
 			// actions for player
-			Queue<A> successors = state.actions(player);
+			moves.push();
+			state.actions(player, moves);
 			// we can end the search here if there are no successors
-			if (successors.isEmpty())
+			if (moves.size() == 0)
 			{
+				moves.pop();
+				metrics.evaluation();
 				return state.evaluate(player);
 			}
-			A action;
+			metrics.expansion();
+			int action;
 			int v = Integer.MIN_VALUE;
+			// splitting a shallow subtree costs more than it saves, as does splitting while this thread has work queued
+			if (cutoffDepth - depth >= MIN_SPLIT_DEPTH && getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS)
+			{
+				// read the actions before searching, helping threads push their frames above this one
+				List<StateSpaceSearchTask> children = new ArrayList<StateSpaceSearchTask>(moves.size());
+				for (int i = moves.begin(), end = moves.end(); i < end; i++)
+				{
+					children.add(new StateSpaceSearchTask(state, moves.action(i), depth + 1));
+				}
+				invokeAll(children);
+				for (StateSpaceSearchTask child : children)
+				{
+					if (deadline.isAborted())
+					{
+						break;
+					}
+					v = Math.max(v, child.join());
+				}
+				moves.pop();
+				return v;
+			}
 			// standard state space search
-			while (!successors.isEmpty())
+			for (int i = moves.begin(), end = moves.end(); i < end; i++)
 			{
-				action = successors.remove();
+				action = moves.action(i);
 				state.applyAction(action);
 				// always try to maximise the score
 				v = Math.max(v, maxValue(depth + 1));
 				// because we are using one state instance make sure to undo the action during back-tracking!
 				state.undoAction(action);
+				if (deadline.isAborted())
+				{
+					break;
+				}
 			}
+			moves.pop();
 			return v;
 		}
 	}
@@ -0,0 +1,30 @@
+package com.pas.cosc322.amazon.search;
+
+/**
+ * Decides how long a search may run.  The search is aborted at the hard
+ * limit no matter what; between IDS iterations the search asks if another
+ * iteration is worth starting.  Searches without iterations aim for the
+ * target instead.
+ */
+public interface TimeControl
+{
+	/**
+	 * @return the time (in ms) after which the search is aborted
+	 */
+	public long hardLimit ();
+
+	/**
+	 * @return the time (in ms) a search should aim to take
+	 */
+	public long target ();
+
+	/**
+	 * Called after every completed IDS iteration.
+	 *
+	 * @param depth the depth the iteration completed
+	 * @param bestAction the packed best action the iteration found
+	 * @param elapsed the time (in ms) since the search started
+	 * @return if the search should start another iteration
+	 */
+	public boolean nextIteration (int depth, int bestAction, long elapsed);
+}
@@ -0,0 +1,143 @@
+package com.pas.cosc322.amazon.search;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size, lock-free transposition table shared by every search thread.
+ * <p>
+ * Each slot holds two longs: the entry data and the hash key XOR'd with that
+ * data.  Threads read and write slots without locking; an entry torn by a
+ * concurrent write fails the key check on probe and is treated as a miss.
+ * The data word packs the score (bits 0-31), the best packed action
+ * (bits 32-53), the remaining search depth (bits 54-61) and the bound type
+ * (bits 62-63).
+ */
+public class TranspositionTable
+{
+	/** default number of slots, as a power of two */
+	public static final int DEFAULT_SIZE_BITS = 20;
+	
+	/** the score is the exact minimax value */
+	public static final int EXACT = 1;
+	/** the score is a lower bound (the search failed high) */
+	public static final int LOWER = 2;
+	/** the score is an upper bound (the search failed low) */
+	public static final int UPPER = 3;
+	
+	private static final long ACTION_MASK = (1L << 22) - 1;
+	private static final long DEPTH_MASK = (1L << 8) - 1;
+	
+	private final long[] table;
+	private final int mask;
+	
+	/**
+	 * Constructor.  Creates a table with the default number of slots.
+	 */
+	public TranspositionTable ()
+	{
+		this(DEFAULT_SIZE_BITS);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param sizeBits the table will hold 2^sizeBits slots
+	 */
+	public TranspositionTable (int sizeBits)
+	{
+		if (sizeBits < 1 || sizeBits > 28)
+		{
+			throw new IllegalArgumentException("sizeBits must be between 1 and 28!");
+		}
+		table = new long[2 << sizeBits];
+		mask = (1 << sizeBits) - 1;
+	}
+	
+	/**
+	 * Looks up a state.
+	 * 
+	 * @param key the hash key of the state
+	 * @return the entry data for the state, or 0 if the state is not in the table
+	 */
+	public long probe (long key)
+	{
+		int slot = ((int) key & mask) << 1;
+		long data = table[slot + 1];
+		if ((table[slot] ^ data) == key)
+		{
+			return data;
+		}
+		return 0;
+	}
+	
+	/**
+	 * Stores the result of searching a state.  A deeper entry for the same
+	 * state is kept in favour of a shallower one; entries for other states
+	 * are always replaced.
+	 * 
+	 * @param key the hash key of the state
+	 * @param depth the remaining depth the state was searched to
+	 * @param bound one of EXACT, LOWER or UPPER
+	 * @param score the score of the state
+	 * @param action the best packed action found, or PackedAction.NO_ACTION
+	 */
+	public void store (long key, int depth, int bound, int score, int action)
+	{
+		int slot = ((int) key & mask) << 1;
+		long old = table[slot + 1];
+		if ((table[slot] ^ old) == key && depth(old) > depth)
+		{
+			return;
+		}
+		long data = (score & 0xFFFFFFFFL)
+				| ((action & ACTION_MASK) << 32)
+				| ((Math.min(depth, DEPTH_MASK) & DEPTH_MASK) << 54)
+				| ((long) bound << 62);
+		table[slot] = key ^ data;
+		table[slot + 1] = data;
+	}
+	
+	/**
+	 * Empties the table.
+	 */
+	public void clear ()
+	{
+		Arrays.fill(table, 0);
+	}
+	
+	/**
+	 * @param data entry data returned by probe
+	 * @return the stored score
+	 */
+	public static int score (long data)
+	{
+		return (int) data;
+	}
+	
+	/**
+	 * @param data entry data returned by probe
+	 * @return the stored packed action
+	 */
+	public static int action (long data)
+	{
+		return (int) ((data >>> 32) & ACTION_MASK);
+	}
+	
+	/**
+	 * @param data entry data returned by probe
+	 * @return the stored remaining depth
+	 */
+	public static int depth (long data)
+	{
+		return (int) ((data >>> 54) & DEPTH_MASK);
+	}
+	
+	/**
+	 * @param data entry data returned by probe
+	 * @return the stored bound type
+	 */
+	public static int bound (long data)
+	{
+		return (int) (data >>> 62);
+	}
+}
@@ -0,0 +1,68 @@
+package com.pas.cosc322.amazon.arena;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class ArenaTest extends TestCase
+{
+	@Test
+	public void test_sprt ()
+	{
+		assertEquals(0.5, Sprt.score(0), 1e-9);
+		assertEquals(190.85, Sprt.elo(0.75), 0.01);
+		Sprt sprt = new Sprt(0, 10, 0.05, 0.05);
+		assertEquals(Math.log(0.05 / 0.95), sprt.lowerBound(), 1e-9);
+		assertEquals(Math.log(0.95 / 0.05), sprt.upperBound(), 1e-9);
+		// an even score favours the smaller difference
+		for (int i = 0; i < 500; i++)
+		{
+			sprt.add(true);
+			sprt.add(false);
+		}
+		assertTrue(sprt.llr() < 0);
+		assertEquals(0, sprt.elo(), 1e-9);
+		assertEquals(Sprt.UNDECIDED, sprt.decision());
+		// 60% is about 70 Elo, far more than H1
+		for (int i = 0; i < 500; i++)
+		{
+			sprt.add(true);
+		}
+		assertEquals(1500, sprt.getGames());
+		assertEquals(Sprt.H1, sprt.decision());
+		assertTrue(sprt.eloError() > 0 && sprt.eloError() < 30);
+	}
+
+	@Test
+	public void test_match ()
+	{
+		Sprt sprt = new Sprt(0, 10, 0.05, 0.05);
+		Arena arena = new Arena("split:1:500n", "lazy-smp:1:500n", 2, sprt, 1);
+		try
+		{
+			arena.play(2);
+		}
+		catch (InterruptedException e)
+		{
+			fail();
+		}
+		assertEquals(2, sprt.getGames());
+		assertEquals(0, arena.getForfeits());
+		assertTrue(arena.getMeanPlies() > Arena.OPENING_PLIES);
+	}
+
+	@Test
+	public void test_every_pair_has_its_own_opening ()
+	{
+		Arena arena = new Arena("split:1:500n", "split:1:500n", 1, new Sprt(0, 10, 0.05, 0.05), 322);
+		Set<Long> openings = new HashSet<Long>();
+		for (int pair = 0; pair < Arena.openings(Arena.OPENING_PLIES); pair++)
+		{
+			assertTrue(openings.add(arena.opening(pair)));
+		}
+		assertTrue(openings.contains(Arena.openings(Arena.OPENING_PLIES) - 1));
+	}
+}
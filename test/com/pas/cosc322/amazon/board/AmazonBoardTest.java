@@ -1,9 +1,14 @@
 package com.pas.cosc322.amazon.board;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.Test;
 
 import com.pas.cosc322.amazon.player.AmazonMove;
 import com.pas.cosc322.amazon.player.AmazonMoveValidator;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.MoveStack;
 import static com.pas.cosc322.amazon.board.AmazonBoard.*;
 import junit.framework.TestCase;
 import static com.pas.cosc322.amazon.player.AmazonRole.*;
@@ -70,4 +75,183 @@ public class AmazonBoardTest extends TestCase
 		assertTrue(clone.equals(original));
 		assertTrue(original.equals(clone));
 	}
+	
+	@Test
+	public void test_arrow_shot_back_to_start_square ()
+	{
+		AmazonBoard board = new AmazonBoard();
+		AmazonBoard original = board.clone();
+		AmazonMove move = new AmazonMove(WHITE, (byte)3, (byte)0, (byte)4, (byte)0, (byte)3, (byte)0);
+		assertTrue(AmazonMoveValidator.validateMove(board, move));
+		board.applyAction(move);
+		assertEquals(ARROW, board.markAt((byte)3, (byte)0));
+		assertFalse(board.posFree((byte)3, (byte)0));
+		assertEquals(WHITE_QUEEN, board.markAt((byte)4, (byte)0));
+		board.undoAction(move);
+		assertEquals(FREE, board.markAt((byte)4, (byte)0));
+		assertTrue(board.equals(original));
+	}
+	
+	@Test
+	public void test_occupied_layer_is_union_of_pieces ()
+	{
+		AmazonBoard board = new AmazonBoard();
+		board.applyAction(new AmazonMove(WHITE, (byte)3, (byte)9, (byte)7, (byte)5, (byte)8, (byte)4));
+		board.applyAction(new AmazonMove(BLACK, (byte)9, (byte)6, (byte)7, (byte)6, (byte)7, (byte)9));
+		BitBoard occupied = board.getOccupiedBits();
+		assertEquals(10, occupied.cardinality());
+		assertEquals(occupied.lo, board.getQueenBits(WHITE).lo | board.getQueenBits(BLACK).lo | board.getArrowBits().lo);
+		assertEquals(occupied.hi, board.getQueenBits(WHITE).hi | board.getQueenBits(BLACK).hi | board.getArrowBits().hi);
+		for (byte r = 0; r < NUM_ROWS; r++)
+		{
+			for (byte c = 0; c < NUM_COLS; c++)
+			{
+				assertEquals(board.markAt(r, c) == FREE, board.posFree(r, c));
+			}
+		}
+		assertEquals(ARROW, board.markAt((byte)8, (byte)4));
+		assertEquals(ARROW, board.markAt((byte)7, (byte)9));
+	}
+	
+	@Test
+	public void test_undoAction_restores_hash_key ()
+	{
+		AmazonBoard board = new AmazonBoard();
+		long key = board.hashKey();
+		AmazonMove move = new AmazonMove(WHITE, (byte)3, (byte)0, (byte)4, (byte)0, (byte)3, (byte)0);
+		board.applyAction(move);
+		assertFalse(key == board.hashKey());
+		assertEquals(key, board.clone().undoAction(move).hashKey());
+		board.undoAction(move);
+		assertEquals(key, board.hashKey());
+	}
+	
+	@Test
+	public void test_transposed_actions_produce_equal_hash_keys ()
+	{
+		AmazonMove white1 = new AmazonMove(WHITE, (byte)3, (byte)0, (byte)4, (byte)0, (byte)5, (byte)0);
+		AmazonMove white2 = new AmazonMove(WHITE, (byte)3, (byte)9, (byte)4, (byte)9, (byte)5, (byte)9);
+		AmazonMove black1 = new AmazonMove(BLACK, (byte)9, (byte)3, (byte)8, (byte)3, (byte)7, (byte)3);
+		AmazonMove black2 = new AmazonMove(BLACK, (byte)9, (byte)6, (byte)8, (byte)6, (byte)7, (byte)6);
+		AmazonBoard first = new AmazonBoard();
+		first.applyAction(white1).applyAction(black1).applyAction(white2).applyAction(black2);
+		AmazonBoard second = new AmazonBoard();
+		second.applyAction(white2).applyAction(black2).applyAction(white1).applyAction(black1);
+		assertEquals(first.hashKey(), second.hashKey());
+		assertEquals(first.hashCode(), second.hashCode());
+	}
+	
+	@Test
+	public void test_packed_action_matches_move_object ()
+	{
+		AmazonMove move = new AmazonMove(BLACK, (byte)9, (byte)6, (byte)5, (byte)2, (byte)9, (byte)6);
+		int packed = move.pack();
+		assertEquals(move, AmazonMove.unpack(packed));
+		AmazonBoard objects = new AmazonBoard();
+		AmazonBoard primitives = new AmazonBoard();
+		objects.applyAction(move);
+		primitives.applyAction(packed);
+		assertTrue(objects.equals(primitives));
+		assertEquals(objects.hashKey(), primitives.hashKey());
+		assertEquals(objects.getMarkedPos(), primitives.getMarkedPos());
+	}
+	
+	@Test
+	public void test_incremental_mobility_matches_recomputed ()
+	{
+		Random random = new Random(322);
+		AmazonBoard board = new AmazonBoard();
+		MoveStack moves = new MoveStack();
+		int[] played = new int[30];
+		for (int ply = 0; ply < played.length; ply++)
+		{
+			AmazonRole role = ply % 2 == 0 ? WHITE : BLACK;
+			moves.push();
+			board.actions(role, moves);
+			played[ply] = moves.action(moves.begin() + random.nextInt(moves.size()));
+			moves.pop();
+			board.applyAction(played[ply]);
+			assertMobility(board);
+			assertMobility(board.clone());
+		}
+		for (int ply = played.length - 1; ply >= 0; ply--)
+		{
+			board.undoAction(played[ply]);
+			assertMobility(board);
+		}
+	}
+	
+	private void assertMobility (AmazonBoard board)
+	{
+		AmazonMobility fresh = new AmazonMobility();
+		fresh.init(board);
+		for (AmazonRole role : AmazonRole.values())
+		{
+			assertEquals(fresh.mobility(board, role), board.getMobility().mobility(board, role));
+			assertEquals(fresh.oneHop(board, role, new BitBoard()), board.getMobility().oneHop(board, role, new BitBoard()));
+		}
+	}
+	
+	@Test
+	public void test_incremental_regions_match_recomputed ()
+	{
+		Random random = new Random(322);
+		AmazonBoard board = new AmazonBoard();
+		MoveStack moves = new MoveStack();
+		int[] played = new int[70];
+		int length = 0;
+		for (; length < played.length; length++)
+		{
+			AmazonRole role = length % 2 == 0 ? WHITE : BLACK;
+			moves.push();
+			int count = board.actions(role, moves);
+			played[length] = count == 0 ? 0 : moves.action(moves.begin() + random.nextInt(count));
+			moves.pop();
+			if (count == 0)
+			{
+				break;
+			}
+			board.applyAction(played[length]);
+			assertRegions(board);
+			assertRegions(board.clone());
+		}
+		// a clone must also undo actions made before it was cloned
+		AmazonBoard clone = board.clone();
+		for (int ply = length - 1; ply >= 0; ply--)
+		{
+			board.undoAction(played[ply]);
+			clone.undoAction(played[ply]);
+			assertRegions(board);
+			assertRegions(clone);
+		}
+	}
+	
+	private void assertRegions (AmazonBoard board)
+	{
+		AmazonRegions fresh = new AmazonRegions();
+		fresh.init(board);
+		int ply = board.getMarkedPos();
+		assertEquals(fresh.count(ply), board.regionCount());
+		// regions are found in a different order, compare them sorted by their squares
+		String[] regions = new String[board.regionCount()], freshRegions = new String[board.regionCount()];
+		BitBoard squares = new BitBoard();
+		for (int r = 0; r < board.regionCount(); r++)
+		{
+			board.regionSquares(r, squares);
+			regions[r] = squares.hi+":"+squares.lo+" size:"+board.regionSize(r)+" owners:"+(board.regionOwners(r, WHITE) | board.regionOwners(r, BLACK) << 4);
+			fresh.squares(ply, r, squares);
+			freshRegions[r] = squares.hi+":"+squares.lo+" size:"+fresh.size(ply, r)+" owners:"+fresh.owners(board, ply, r);
+		}
+		Arrays.sort(regions);
+		Arrays.sort(freshRegions);
+		assertEquals(Arrays.toString(freshRegions), Arrays.toString(regions));
+		for (int queen = 0; queen < 4; queen++)
+		{
+			assertEquals(fresh.sharing(board, ply, queen) >>> 4, board.sharingQueens(WHITE, queen, BLACK));
+		}
+		// enclosed means neither side can reach a square the other can
+		DistanceMaps distances = board.getDistances();
+		BitBoard white = distances.reach(WHITE), black = distances.reach(BLACK);
+		assertEquals(((white.lo & black.lo) | (white.hi & black.hi)) == 0, board.isEnclosed());
+	}
 }
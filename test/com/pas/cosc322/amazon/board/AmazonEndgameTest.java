@@ -0,0 +1,105 @@
+package com.pas.cosc322.amazon.board;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonMoveValidator;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.MoveStack;
+import com.pas.cosc322.amazon.search.PackedAction;
+import junit.framework.TestCase;
+
+public class AmazonEndgameTest extends TestCase
+{
+	@Test
+	public void test_fill_stays_in_the_mask ()
+	{
+		// two columns with a wall of arrows between them, the top row is a gap in the wall
+		BitBoard mask = new BitBoard();
+		for (int row = 0; row < AmazonBoard.NUM_ROWS; row++)
+		{
+			mask.set(AmazonBoard.square(row, 0));
+			mask.set(AmazonBoard.square(row, 2));
+		}
+		BitBoard component = new BitBoard();
+		AmazonEndgame.fill(AmazonBoard.square(5, 0), mask.lo, mask.hi, component);
+		assertEquals(AmazonBoard.NUM_ROWS, component.cardinality());
+		assertFalse(component.get(AmazonBoard.square(5, 2)));
+		mask.set(AmazonBoard.square(0, 1));
+		AmazonEndgame.fill(AmazonBoard.square(5, 0), mask.lo, mask.hi, component);
+		assertEquals(2 * AmazonBoard.NUM_ROWS + 1, component.cardinality());
+	}
+
+	@Test
+	public void test_solver_plays_out_enclosed_games ()
+	{
+		Random random = new Random(322);
+		AmazonEndgame endgame = new AmazonEndgame(1);
+		MoveStack moves = new MoveStack();
+		for (int game = 0; game < 5; game++)
+		{
+			AmazonBoard board = new AmazonBoard();
+			AmazonRole role = AmazonRole.WHITE;
+			// random moves until the queens are enclosed
+			while (!board.isEnclosed())
+			{
+				moves.clear();
+				moves.push();
+				if (board.actions(role, moves) == 0)
+				{
+					break;
+				}
+				board.applyAction(moves.action(moves.begin() + random.nextInt(moves.size())));
+				role = role.other();
+			}
+			while (true)
+			{
+				int action = endgame.decide(board, role, 60000);
+				moves.clear();
+				moves.push();
+				if (action == PackedAction.NO_ACTION)
+				{
+					assertEquals(0, board.actions(role, moves));
+					break;
+				}
+				assertTrue(AmazonMoveValidator.validateMove(board, AmazonMove.unpack(action)));
+				board.applyAction(action);
+				role = role.other();
+			}
+		}
+	}
+
+	@Test
+	public void test_small_memo_solves_the_same ()
+	{
+		Random random = new Random(322);
+		// two slots, nearly every region replaces another
+		AmazonEndgame small = new AmazonEndgame(1, 1), endgame = new AmazonEndgame(1);
+		MoveStack moves = new MoveStack();
+		for (int game = 0; game < 5; game++)
+		{
+			AmazonBoard board = new AmazonBoard();
+			AmazonRole role = AmazonRole.WHITE;
+			while (!board.isEnclosed())
+			{
+				moves.clear();
+				moves.push();
+				if (board.actions(role, moves) == 0)
+				{
+					break;
+				}
+				board.applyAction(moves.action(moves.begin() + random.nextInt(moves.size())));
+				role = role.other();
+			}
+			long freeLo = ~board.getOccupiedBits().lo, freeHi = ~board.getOccupiedBits().hi & BitBoard.HI_MASK;
+			for (AmazonRole queens : AmazonRole.values())
+			{
+				BitBoard bits = board.getQueenBits(queens);
+				int expected = (int) endgame.solveRegion(queens, freeLo, freeHi, bits.lo, bits.hi);
+				assertEquals(expected, (int) small.solveRegion(queens, freeLo, freeHi, bits.lo, bits.hi));
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.pas.cosc322.amazon.board;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.MoveStack;
+
+public class AmazonPerftTest extends TestCase
+{
+	@Test
+	public void test_known_counts_from_the_start ()
+	{
+		for (String generator : new String[] { AmazonPerft.LEGACY, AmazonPerft.BITBOARD })
+		{
+			AmazonPerft perft = new AmazonPerft(generator, 2, 0);
+			assertEquals(2176, perft.perft(new AmazonBoard(), AmazonRole.WHITE, 1));
+			assertEquals(4307152, perft.perft(new AmazonBoard(), AmazonRole.WHITE, 2));
+		}
+	}
+
+	@Test
+	public void test_generators_and_cache_agree ()
+	{
+		// a midgame position, arrows everywhere
+		Random random = new Random(322);
+		AmazonBoard board = new AmazonBoard();
+		MoveStack moves = new MoveStack();
+		AmazonRole role = AmazonRole.WHITE;
+		for (int ply = 0; ply < 30; ply++)
+		{
+			moves.clear();
+			moves.push();
+			board.actions(role, moves);
+			board.applyAction(moves.action(moves.begin() + random.nextInt(moves.size())));
+			role = role.other();
+		}
+		AmazonPerft legacy = new AmazonPerft(AmazonPerft.LEGACY, 1, 0);
+		AmazonPerft cached = new AmazonPerft(AmazonPerft.BITBOARD, 2, 16);
+		long hash = board.hashKey();
+		long nodes = legacy.perft(board, role, 3);
+		assertTrue(nodes > 0);
+		assertEquals(nodes, cached.perft(board, role, 3));
+		// the second count comes mostly from the cache
+		assertEquals(nodes, cached.perft(board, role, 3));
+		assertEquals(hash, board.hashKey());
+	}
+}
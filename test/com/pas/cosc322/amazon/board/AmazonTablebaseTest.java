@@ -0,0 +1,98 @@
+package com.pas.cosc322.amazon.board;
+
+import static com.pas.cosc322.amazon.board.BitBoard.hiBit;
+import static com.pas.cosc322.amazon.board.BitBoard.loBit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+import com.pas.cosc322.amazon.search.PackedAction;
+
+public class AmazonTablebaseTest extends TestCase
+{
+	@Test
+	public void test_probes_match_the_solver_anywhere_on_the_board () throws IOException
+	{
+		AmazonTablebaseGenerator generator = new AmazonTablebaseGenerator(4, 2);
+		File file = File.createTempFile("amazons", ".tablebase");
+		file.deleteOnExit();
+		generator.write(file, generator.generate());
+		AmazonTablebase tablebase = new AmazonTablebase(file);
+		AmazonEndgame endgame = new AmazonEndgame(1);
+		Random random = new Random(322);
+		for (int trial = 0; trial < 500; trial++)
+		{
+			// grow a random region from a random square
+			int[] squares = new int[2 + random.nextInt(5)];
+			long lo = 0, hi = 0;
+			squares[0] = random.nextInt(BitBoard.SIZE);
+			lo |= loBit(squares[0]);
+			hi |= hiBit(squares[0]);
+			for (int n = 1; n < squares.length; )
+			{
+				byte[] step = AmazonBoard.dirs[random.nextInt(AmazonBoard.dirs.length)];
+				int from = squares[random.nextInt(n)];
+				int row = from / AmazonBoard.NUM_COLS + step[0], col = from % AmazonBoard.NUM_COLS + step[1];
+				if (row < 0 || col < 0 || row >= AmazonBoard.NUM_ROWS || col >= AmazonBoard.NUM_COLS
+						|| (lo & loBit(AmazonBoard.square(row, col))) != 0 || (hi & hiBit(AmazonBoard.square(row, col))) != 0)
+				{
+					continue;
+				}
+				squares[n] = AmazonBoard.square(row, col);
+				lo |= loBit(squares[n]);
+				hi |= hiBit(squares[n]);
+				n++;
+			}
+			int queens = Math.max(1, squares.length - 4) + random.nextInt(2);
+			long queensLo = 0, queensHi = 0;
+			for (int i = 0; i < queens; i++)
+			{
+				queensLo |= loBit(squares[i]);
+				queensHi |= hiBit(squares[i]);
+			}
+			int data = tablebase.probe(lo & ~queensLo, hi & ~queensHi, queensLo, queensHi);
+			if (squares.length - queens > 4 || queens > 2)
+			{
+				assertEquals(AmazonTablebase.MISSING, data);
+				continue;
+			}
+			assertTrue(data != AmazonTablebase.MISSING);
+			int value = (int) endgame.solveRegion(AmazonRole.WHITE, lo & ~queensLo, hi & ~queensHi, queensLo, queensHi);
+			assertEquals(value, AmazonTablebase.value(data));
+			int action = AmazonTablebase.action(data, AmazonRole.WHITE);
+			if (value == 0)
+			{
+				assertEquals(PackedAction.NO_ACTION, action);
+				continue;
+			}
+			// the move must be legal in the region and keep its value
+			int from = AmazonMove.from(action), to = AmazonMove.to(action), arrow = AmazonMove.arrow(action);
+			assertTrue((queensLo & loBit(from)) != 0 || (queensHi & hiBit(from)) != 0);
+			long freeLo = lo & ~queensLo | loBit(from), freeHi = hi & ~queensHi | hiBit(from);
+			assertTrue(to != from && ((freeLo & loBit(to)) != 0 || (freeHi & hiBit(to)) != 0));
+			assertTrue(arrow != to && ((freeLo & loBit(arrow)) != 0 || (freeHi & hiBit(arrow)) != 0));
+			freeLo &= ~loBit(to) & ~loBit(arrow);
+			freeHi &= ~hiBit(to) & ~hiBit(arrow);
+			long movedLo = queensLo ^ loBit(from) ^ loBit(to), movedHi = queensHi ^ hiBit(from) ^ hiBit(to);
+			int after = 0;
+			BitBoard region = new BitBoard();
+			long restLo = movedLo, restHi = movedHi;
+			while ((restLo | restHi) != 0)
+			{
+				int sq = restLo != 0 ? Long.numberOfTrailingZeros(restLo) : 64 + Long.numberOfTrailingZeros(restHi);
+				AmazonEndgame.fill(sq, freeLo | movedLo, freeHi | movedHi, region);
+				after += (int) endgame.solveRegion(AmazonRole.WHITE, freeLo & region.lo, freeHi & region.hi, movedLo & region.lo, movedHi & region.hi);
+				restLo &= ~region.lo;
+				restHi &= ~region.hi;
+			}
+			assertEquals(value - 1, after);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.pas.cosc322.amazon.book;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.pas.cosc322.amazon.search.PackedAction;
+
+public class OpeningBookTest extends TestCase
+{
+	@Test
+	public void test_written_book_is_probed () throws IOException
+	{
+		SortedMap<Long, int[]> entries = new TreeMap<Long, int[]>();
+		entries.put(-5L, new int[] { 11, 30, 12, 20 });
+		entries.put(7L, new int[] { 21, -4 });
+		entries.put(Long.MAX_VALUE, new int[0]);
+		File file = File.createTempFile("opening", ".book");
+		file.deleteOnExit();
+		OpeningBook.write(file, entries);
+		OpeningBook book = new OpeningBook(file);
+		assertEquals(3, book.size());
+		assertEquals(11, book.probe(-5L));
+		assertEquals(21, book.probe(7L));
+		assertEquals(PackedAction.NO_ACTION, book.probe(Long.MAX_VALUE));
+		assertEquals(PackedAction.NO_ACTION, book.probe(0L));
+		int[] actions = new int[4], weights = new int[4];
+		assertEquals(2, book.probe(-5L, actions, weights));
+		assertEquals(12, actions[1]);
+		assertEquals(20, weights[1]);
+		assertEquals(0, book.probe(8L, actions, weights));
+	}
+
+	@Test
+	public void test_other_files_are_rejected () throws IOException
+	{
+		File file = File.createTempFile("opening", ".book");
+		file.deleteOnExit();
+		try
+		{
+			new OpeningBook(file);
+			fail("an empty file is not a book");
+		}
+		catch (IOException e)
+		{
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.pas.cosc322.amazon.main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class AsyncLogHandlerTest extends TestCase
+{
+	@Test
+	public void test_records_are_written_in_order () throws InterruptedException
+	{
+		final List<String> lines = new ArrayList<String>();
+		final int threads = 4, records = 1000;
+		AsyncLogHandler handler = new AsyncLogHandler(threads * records, new CapturingHandler(lines));
+		final Handler async = handler;
+		List<Thread> loggers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++)
+		{
+			final int id = t;
+			Thread logger = new Thread()
+			{
+				@Override
+				public void run ()
+				{
+					for (int i = 0; i < records; i++)
+					{
+						LogRecord record = new LogRecord(Level.INFO, "{0}:{1}");
+						record.setParameters(new Object[] {id, i});
+						record.setSourceClassName("AsyncLogHandlerTest");
+						async.publish(record);
+					}
+				}
+			};
+			logger.start();
+			loggers.add(logger);
+		}
+		for (Thread logger : loggers)
+		{
+			logger.join();
+		}
+		handler.close();
+		assertEquals(0, handler.getDropped());
+		assertEquals(threads * records, lines.size());
+		// each thread's records keep their order
+		int[] next = new int[threads];
+		for (String line : lines)
+		{
+			String[] parts = line.split(":");
+			int id = Integer.parseInt(parts[0]);
+			assertEquals(next[id]++, Integer.parseInt(parts[1]));
+		}
+	}
+
+	@Test
+	public void test_full_buffer_drops_records () throws InterruptedException
+	{
+		final List<String> lines = new ArrayList<String>();
+		final CountDownLatch blocked = new CountDownLatch(1);
+		// the target holds up the writer until the buffer has filled
+		AsyncLogHandler handler = new AsyncLogHandler(4, new CapturingHandler(lines)
+		{
+			@Override
+			public void publish (LogRecord record)
+			{
+				try
+				{
+					blocked.await();
+				}
+				catch (InterruptedException e)
+				{
+				}
+				super.publish(record);
+			}
+		});
+		for (int i = 0; i < 20; i++)
+		{
+			handler.publish(new LogRecord(Level.INFO, "record"));
+		}
+		assertTrue(handler.getDropped() >= 20 - 5);
+		blocked.countDown();
+		handler.close();
+		assertEquals(20 - handler.getDropped() + 1, lines.size());
+		assertEquals("Dropped "+handler.getDropped()+" log records, the buffer was full.", lines.get(lines.size() - 1));
+	}
+
+	@Test
+	public void test_compact_format ()
+	{
+		LogRecord record = new LogRecord(Level.INFO, "Search took:{0} maximum depth:{1} {2}");
+		record.setParameters(new Object[] {12345, 6, "{9}"});
+		record.setSourceClassName("com.pas.cosc322.amazon.search.MinimaxSearch");
+		record.setSourceMethodName("minimaxDecision");
+		String line = new CompactFormatter().format(record);
+		assertTrue(line, line.matches("\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d{3} INFO    t\\d+ MinimaxSearch\\.minimaxDecision Search took:12345 maximum depth:6 \\{9\\}\\s+"));
+	}
+
+	private static class CapturingHandler extends Handler
+	{
+		private final List<String> lines;
+		private final CompactFormatter formatter = new CompactFormatter();
+
+		public CapturingHandler (List<String> lines)
+		{
+			this.lines = lines;
+		}
+
+		@Override
+		public void publish (LogRecord record)
+		{
+			synchronized (lines)
+			{
+				lines.add(formatter.formatMessage(record));
+			}
+		}
+
+		@Override
+		public void flush ()
+		{
+		}
+
+		@Override
+		public void close ()
+		{
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.pas.cosc322.amazon.player;
+
+import static com.pas.cosc322.amazon.player.AmazonRole.WHITE;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.main.ProjectConstants;
+import com.pas.cosc322.amazon.search.MoveStack;
+
+public class TimeManagerTest extends TestCase
+{
+	private long searchTime;
+
+	@Override
+	protected void setUp ()
+	{
+		searchTime = ProjectConstants.searchTime;
+		// 9750 ms once the latency margin is taken off
+		ProjectConstants.searchTime = 10000;
+	}
+
+	@Override
+	protected void tearDown ()
+	{
+		ProjectConstants.searchTime = searchTime;
+	}
+
+	@Test
+	public void test_target_follows_the_game ()
+	{
+		TimeManager time = new TimeManager();
+		AmazonBoard board = new AmazonBoard();
+		// the opening gets half the time
+		assertTarget(time, board, false, 4875);
+		assertEquals(9750, time.hardLimit());
+		// an enclosed board gets a quarter, and may not stretch past the abort time
+		assertTarget(time, board, true, 2437);
+		assertEquals(6092, time.hardLimit());
+		// past the opening with most of the game left, the full time
+		MoveStack moves = new MoveStack();
+		AmazonRole role = WHITE;
+		for (int ply = 0; ply < 20; ply++)
+		{
+			moves.push();
+			board.actions(role, moves);
+			board.applyAction(moves.action(moves.begin()));
+			moves.pop();
+			role = role.other();
+		}
+		assertTarget(time, board, false, 9750);
+		assertEquals(9750, time.hardLimit());
+	}
+
+	@Test
+	public void test_short_search_time_is_clamped ()
+	{
+		ProjectConstants.searchTime = 300;
+		TimeManager time = new TimeManager();
+		// the latency margin leaves less than the least time a move is given
+		assertTarget(time, new AmazonBoard(), true, 200);
+		assertEquals(TimeManager.MIN_TIME, time.hardLimit());
+	}
+
+	@Test
+	public void test_stable_best_action_stops_early ()
+	{
+		TimeManager time = new TimeManager();
+		time.startMove(new AmazonBoard(), WHITE, false);
+		// a fifth of the 4875 ms target, well before an iteration would run out of time
+		assertTrue(time.nextIteration(1, 7, 1000));
+		assertTrue(time.nextIteration(2, 7, 1000));
+		assertTrue(time.nextIteration(3, 7, 1000));
+		assertFalse(time.nextIteration(4, 7, 1000));
+		// early in the search a stable action keeps searching
+		time.startMove(new AmazonBoard(), WHITE, false);
+		for (int depth = 1; depth <= 6; depth++)
+		{
+			assertTrue(time.nextIteration(depth, 7, 900));
+		}
+	}
+
+	@Test
+	public void test_unstable_best_action_stretches_the_target ()
+	{
+		TimeManager time = new TimeManager();
+		time.startMove(new AmazonBoard(), WHITE, false);
+		assertTrue(time.nextIteration(1, 7, 0));
+		// half of 4875 ms is past the point a next iteration may start
+		assertFalse(time.nextIteration(2, 7, 2438));
+		time.startMove(new AmazonBoard(), WHITE, false);
+		assertTrue(time.nextIteration(1, 7, 0));
+		// the change stretches the target to 7312 ms, and the next to the 9750 ms hard limit
+		assertTrue(time.nextIteration(2, 8, 3655));
+		assertFalse(time.nextIteration(3, 8, 3656));
+		assertTrue(time.nextIteration(4, 9, 4874));
+		assertFalse(time.nextIteration(5, 9, 4875));
+	}
+
+	// the target is found from the time after which no next iteration starts
+	private static void assertTarget (TimeManager time, AmazonBoard board, boolean enclosed, long target)
+	{
+		time.startMove(board, WHITE, enclosed);
+		assertTrue(time.nextIteration(1, 7, (long) Math.ceil(target / 2.0) - 1));
+		time.startMove(board, WHITE, enclosed);
+		assertFalse(time.nextIteration(1, 7, (long) Math.ceil(target / 2.0)));
+	}
+}
@@ -0,0 +1,82 @@
+package com.pas.cosc322.amazon.search;
+
+import static com.pas.cosc322.amazon.search.TreeState.Player.MAX;
+import static com.pas.cosc322.amazon.search.TreeState.Player.MIN;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MinimaxSearchTest extends TestCase
+{
+	@Test
+	public void test_partial_iteration_is_used ()
+	{
+		MinimaxSearch<TreeState, TreeState.Move, TreeState.Player> search = new MinimaxSearch<TreeState, TreeState.Move, TreeState.Player>(1);
+		TreeState state = new TreeState(3);
+		// one ply deep action 1 is best
+		state.value(10, 1);
+		state.value(5, 2);
+		state.value(1, 3);
+		// two plies deep action 2 is best
+		for (int reply = 1; reply <= 3; reply++)
+		{
+			state.value(reply == 1 ? 3 : 4, 1, reply);
+			state.value(reply == 1 ? 8 : 9, 2, reply);
+			state.value(0, 3, reply);
+		}
+		// the second iteration is cut off after actions 1 and 2 have completed
+		state.abortAt(search, 3, 1);
+		search.setCutoffDepth(2);
+		TreeState.Move move = search.minimaxDecision(MAX, MIN, state);
+		assertEquals(2, move.pack());
+	}
+
+	@Test
+	public void test_ponder_hit_searches_deeper ()
+	{
+		TranspositionTable table = new TranspositionTable(16);
+		MinimaxSearch<TreeState, TreeState.Move, TreeState.Player> ponder = new MinimaxSearch<TreeState, TreeState.Move, TreeState.Player>(1, table);
+		MinimaxSearch<TreeState, TreeState.Move, TreeState.Player> search = new MinimaxSearch<TreeState, TreeState.Move, TreeState.Player>(1, table);
+		TreeState state = new TreeState(3);
+		// action 1 is best at every depth, the table holds its exact value and bounds below it for the others
+		state.value(10, 1);
+		state.value(0, 2);
+		state.value(-10, 3);
+		// the ponder search fills the shared table, then the opponent's move arrives
+		ponder.setTimeControl(depthControl(5));
+		ponder.setCutoffDepth(2);
+		ponder.minimaxDecision(MAX, MIN, state);
+		int ponderDepth = ponder.getCutoffDepth();
+		// the main search resumes at the pondered depth, where the table answers every root action
+		search.setTimeControl(depthControl(8));
+		search.setCutoffDepth(ponderDepth);
+		search.minimaxDecision(MAX, MIN, state);
+		assertTrue(search.getCutoffDepth() > ponderDepth);
+	}
+
+	// searches until an iteration completes the depth
+	private static TimeControl depthControl (final int depth)
+	{
+		return new TimeControl()
+		{
+			@Override
+			public long hardLimit ()
+			{
+				return 60000;
+			}
+
+			@Override
+			public long target ()
+			{
+				return 60000;
+			}
+
+			@Override
+			public boolean nextIteration (int completed, int bestAction, long elapsed)
+			{
+				return completed < depth;
+			}
+		};
+	}
+}
@@ -0,0 +1,51 @@
+package com.pas.cosc322.amazon.search;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class NodePoolTest extends TestCase
+{
+	@Test
+	public void test_allocate_is_contiguous_until_full ()
+	{
+		NodePool nodes = new NodePool(8);
+		assertEquals(0, nodes.allocate(1));
+		assertEquals(1, nodes.allocate(4));
+		assertEquals(-1, nodes.allocate(4));
+		assertEquals(5, nodes.allocate(3));
+		assertEquals(8, nodes.size());
+		nodes.clear();
+		assertEquals(0, nodes.allocate(8));
+	}
+
+	@Test
+	public void test_reused_nodes_are_reset ()
+	{
+		NodePool nodes = new NodePool(4);
+		int root = nodes.allocate(1);
+		assertTrue(nodes.claim(root));
+		nodes.expand(root, nodes.allocate(2), 2);
+		nodes.visit(root);
+		nodes.addReward(root, 5);
+		nodes.clear();
+		root = nodes.allocate(1);
+		assertEquals(NodePool.UNEXPANDED, nodes.state(root));
+		assertEquals(0, nodes.visits(root));
+		assertEquals(0, nodes.reward(root));
+	}
+
+	@Test
+	public void test_only_one_claim_succeeds ()
+	{
+		NodePool nodes = new NodePool(4);
+		int node = nodes.allocate(1);
+		assertTrue(nodes.claim(node));
+		assertFalse(nodes.claim(node));
+		nodes.release(node);
+		assertTrue(nodes.claim(node));
+		nodes.expand(node, 0, 0);
+		assertEquals(NodePool.EXPANDED, nodes.state(node));
+		assertFalse(nodes.claim(node));
+	}
+}
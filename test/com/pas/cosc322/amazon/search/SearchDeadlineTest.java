@@ -0,0 +1,58 @@
+package com.pas.cosc322.amazon.search;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class SearchDeadlineTest extends TestCase
+{
+	@Test
+	public void test_flag_is_raised_at_the_deadline () throws InterruptedException
+	{
+		SearchDeadline deadline = new SearchDeadline();
+		deadline.start(50, 0);
+		assertFalse(deadline.isAborted());
+		long timeout = System.currentTimeMillis() + 5000;
+		while (!deadline.isAborted() && System.currentTimeMillis() < timeout)
+		{
+			Thread.sleep(5);
+		}
+		assertTrue(deadline.isAborted());
+		deadline.stop();
+	}
+	
+	@Test
+	public void test_stop_disarms_the_timer () throws InterruptedException
+	{
+		SearchDeadline deadline = new SearchDeadline();
+		deadline.start(500, 0);
+		deadline.stop();
+		Thread.sleep(1000);
+		assertFalse(deadline.isAborted());
+		deadline.start(60000, 0);
+		assertFalse(deadline.isAborted());
+		deadline.stop();
+	}
+	
+	@Test
+	public void test_reason_the_flag_was_raised () throws InterruptedException
+	{
+		SearchDeadline deadline = new SearchDeadline();
+		deadline.start(50, 0);
+		assertNull(deadline.getReason());
+		long timeout = System.currentTimeMillis() + 5000;
+		while (!deadline.isAborted() && System.currentTimeMillis() < timeout)
+		{
+			Thread.sleep(5);
+		}
+		assertEquals(SearchDeadline.TIME, deadline.getReason());
+		// a later abort does not change the reason
+		deadline.abort();
+		assertEquals(SearchDeadline.TIME, deadline.getReason());
+		deadline.start(60000, 0);
+		assertNull(deadline.getReason());
+		deadline.abort();
+		assertEquals(SearchDeadline.STOPPED, deadline.getReason());
+		deadline.stop();
+	}
+}
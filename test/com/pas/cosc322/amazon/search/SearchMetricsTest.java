@@ -0,0 +1,99 @@
+package com.pas.cosc322.amazon.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.pas.cosc322.amazon.board.AmazonBoard;
+import com.pas.cosc322.amazon.player.AmazonMove;
+import com.pas.cosc322.amazon.player.AmazonRole;
+
+public class SearchMetricsTest extends TestCase
+{
+	@Test
+	public void test_rates_and_dump ()
+	{
+		SearchMetrics metrics = new SearchMetrics();
+		for (int i = 0; i < 1000; i++)
+		{
+			metrics.node();
+		}
+		for (int i = 0; i < 10; i++)
+		{
+			metrics.expansion();
+		}
+		metrics.evaluation();
+		metrics.cutoff(true);
+		metrics.cutoff(true);
+		metrics.cutoff(false);
+		metrics.cutoff(true);
+		metrics.iteration(20, 0, 5);
+		metrics.iteration(400, 20, 15);
+		metrics.finish(new ForkJoinPool(1), 500);
+		assertEquals(2000.0, metrics.getNodesPerSecond(), 1e-9);
+		assertEquals(0.4, metrics.getCutoffRate(), 1e-9);
+		assertEquals(0.75, metrics.getFirstMoveCutoffRate(), 1e-9);
+		assertEquals(20.0, metrics.getEffectiveBranchingFactor(), 1e-9);
+		assertEquals(10.0, metrics.getMeanIterationTime(), 1e-9);
+		assertEquals(15, metrics.getLastIterationTime());
+		String dump = metrics.dump();
+		assertTrue(dump.contains("# TYPE amazons_search_nodes_total counter\namazons_search_nodes_total 1000\n"));
+		assertTrue(dump.contains("amazons_search_first_move_cutoff_ratio 0.75\n"));
+	}
+
+	@Test
+	public void test_dump_replaces_the_file () throws IOException
+	{
+		SearchMetrics metrics = new SearchMetrics();
+		File file = File.createTempFile("amazons", ".prom");
+		file.deleteOnExit();
+		metrics.node();
+		metrics.dump(file);
+		metrics.node();
+		// the second dump must replace the first, not fail on the file being there
+		metrics.dump(file);
+		String dump = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+		assertTrue(dump.contains("amazons_search_nodes_total 2\n"));
+		assertFalse(new File(file.getPath()+".tmp").exists());
+	}
+
+	@Test
+	public void test_search_is_counted ()
+	{
+		SearchMetrics metrics = SearchMetrics.get();
+		long nodes = metrics.getNodes(), searches = metrics.getSearches(), iterations = metrics.getIterations();
+		MinimaxSearch<AmazonBoard, AmazonMove, AmazonRole> search = new MinimaxSearch<AmazonBoard, AmazonMove, AmazonRole>(2);
+		search.setCutoffDepth(3);
+		search.setTimeControl(new TimeControl()
+		{
+			@Override
+			public long hardLimit ()
+			{
+				return 60000;
+			}
+
+			@Override
+			public long target ()
+			{
+				return 60000;
+			}
+
+			@Override
+			public boolean nextIteration (int depth, int best, long elapsed)
+			{
+				return false;
+			}
+		});
+		assertNotNull(search.minimaxDecision(AmazonRole.WHITE, AmazonRole.BLACK, new AmazonBoard()));
+		assertTrue(metrics.getNodes() > nodes);
+		assertEquals(searches + 1, metrics.getSearches());
+		assertEquals(iterations + 1, metrics.getIterations());
+		assertTrue(metrics.getEvaluations() > 0);
+		assertTrue(metrics.getThreadUtilization() >= 0 && metrics.getThreadUtilization() <= 1);
+	}
+}
@@ -0,0 +1,45 @@
+package com.pas.cosc322.amazon.search;
+
+import static com.pas.cosc322.amazon.search.TranspositionTable.*;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TranspositionTableTest extends TestCase
+{
+	@Test
+	public void test_probe_returns_stored_entry ()
+	{
+		TranspositionTable table = new TranspositionTable(4);
+		table.store(0x1234567890ABCDEFL, 3, LOWER, -42, 0x2ABCDE);
+		long entry = table.probe(0x1234567890ABCDEFL);
+		assertFalse(entry == 0);
+		assertEquals(3, depth(entry));
+		assertEquals(LOWER, bound(entry));
+		assertEquals(-42, score(entry));
+		assertEquals(0x2ABCDE, action(entry));
+	}
+	
+	@Test
+	public void test_probe_misses_other_keys_in_the_same_slot ()
+	{
+		TranspositionTable table = new TranspositionTable(4);
+		table.store(0x10L, 2, EXACT, 7, 1);
+		assertEquals(0, table.probe(0x20L));
+		assertEquals(0, table.probe(0x110L));
+	}
+	
+	@Test
+	public void test_deeper_entry_is_kept_for_the_same_key ()
+	{
+		TranspositionTable table = new TranspositionTable(4);
+		table.store(99L, 5, EXACT, Integer.MAX_VALUE, 1);
+		table.store(99L, 2, UPPER, 3, 2);
+		assertEquals(5, depth(table.probe(99L)));
+		assertEquals(Integer.MAX_VALUE, score(table.probe(99L)));
+		table.store(99L + 16, 1, UPPER, Integer.MIN_VALUE, 2);
+		assertEquals(0, table.probe(99L));
+		assertEquals(Integer.MIN_VALUE, score(table.probe(99L + 16)));
+	}
+}
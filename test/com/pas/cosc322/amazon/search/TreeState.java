@@ -0,0 +1,198 @@
+package com.pas.cosc322.amazon.search;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * A synthetic game tree for testing the searches.  Both players have the
+ * same actions, numbered 1 to the branching factor, at every node, and a
+ * node is known by the path of actions leading to it.  Nodes are valued
+ * from a table of paths, taking the value of their nearest valued ancestor,
+ * or by a hash of the path if no ancestor is valued.
+ * Applying the action that reaches the abort path aborts a search, so a
+ * test can cut an iteration off at an exact point.
+ */
+class TreeState implements PackedState<TreeState.Move, TreeState.Player>
+{
+	/** the players of the tree */
+	enum Player implements MinimaxPlayer
+	{
+		MAX, MIN
+	}
+
+	/** an action of the tree, its packed value is its number */
+	static class Move implements PackedAction
+	{
+		final int action;
+
+		Move (int action)
+		{
+			this.action = action;
+		}
+
+		@Override
+		public int pack ()
+		{
+			return action;
+		}
+	}
+
+	// each action takes 4 bits of the path
+	private static final int ACTION_BITS = 4;
+
+	private final int branching;
+	private final Map<Long, Integer> values;
+	private long abortPath = -1;
+	private MinimaxSearch<?, ?, ?> search;
+	private long path;
+
+	/**
+	 * Constructor
+	 *
+	 * @param branching the number of actions at every node, at most 15
+	 */
+	TreeState (int branching)
+	{
+		this(branching, new HashMap<Long, Integer>(), 0);
+	}
+
+	private TreeState (int branching, Map<Long, Integer> values, long path)
+	{
+		this.branching = branching;
+		this.values = values;
+		this.path = path;
+	}
+
+	/**
+	 * @param actions the actions from the root
+	 * @return the path reached by the actions
+	 */
+	static long path (int... actions)
+	{
+		long path = 0;
+		for (int action : actions)
+		{
+			path = path << ACTION_BITS | action;
+		}
+		return path;
+	}
+
+	/**
+	 * Values a node and every node below it that is not valued, for the MAX player.
+	 *
+	 * @param value the value
+	 * @param actions the actions from the root to the node
+	 */
+	void value (int value, int... actions)
+	{
+		values.put(path(actions), value);
+	}
+
+	/**
+	 * Aborts a search when the node is reached, in this state or its clones.
+	 *
+	 * @param search the search to abort
+	 * @param actions the actions from the root to the node
+	 */
+	void abortAt (MinimaxSearch<?, ?, ?> search, int... actions)
+	{
+		this.search = search;
+		this.abortPath = path(actions);
+	}
+
+	@Override
+	public Queue<Move> actions (Player minimaxPlayer)
+	{
+		Queue<Move> actions = new LinkedList<Move>();
+		for (int action = 1; action <= branching; action++)
+		{
+			actions.add(new Move(action));
+		}
+		return actions;
+	}
+
+	@Override
+	public int actions (Player minimaxPlayer, MoveStack moves)
+	{
+		return actions(minimaxPlayer, moves, branching);
+	}
+
+	@Override
+	public int actions (Player minimaxPlayer, MoveStack moves, int maxActions)
+	{
+		int count = Math.min(branching, maxActions);
+		for (int action = 1; action <= count; action++)
+		{
+			moves.add(action, branching - action);
+		}
+		return count;
+	}
+
+	@Override
+	public TreeState applyAction (Move action)
+	{
+		applyAction(action.pack());
+		return this;
+	}
+
+	@Override
+	public TreeState undoAction (Move action)
+	{
+		undoAction(action.pack());
+		return this;
+	}
+
+	@Override
+	public void applyAction (int action)
+	{
+		path = path << ACTION_BITS | action;
+		if (path == abortPath)
+		{
+			search.abort();
+		}
+	}
+
+	@Override
+	public void undoAction (int action)
+	{
+		path >>>= ACTION_BITS;
+	}
+
+	@Override
+	public Move unpack (int action)
+	{
+		return new Move(action);
+	}
+
+	@Override
+	public long hashKey ()
+	{
+		long key = (path + 1) * 0x9E3779B97F4A7C15L;
+		return key ^ key >>> 29;
+	}
+
+	@Override
+	public int evaluate (Player minimaxPlayer)
+	{
+		for (long node = path; node != 0; node >>>= ACTION_BITS)
+		{
+			Integer value = values.get(node);
+			if (value != null)
+			{
+				return value;
+			}
+		}
+		return (int) ((hashKey() >>> 1) % 201) - 100;
+	}
+
+	@Override
+	public TreeState clone ()
+	{
+		TreeState clone = new TreeState(branching, values, path);
+		clone.abortPath = abortPath;
+		clone.search = search;
+		return clone;
+	}
+}